@@ -0,0 +1,48 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PgbCpu.exec() on the cpu rom of PgbBenchmark: loads, ALU,
+ * shifts, jumps, calls and the stack, with the lcd off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgbCpuBenchmark {
+	@Param({"interpreter", "recompiler"})
+	public String	core;
+
+	private PgbCpu	cpu;
+
+	@Setup
+	public void setup() {
+		PgbSettings settings = new PgbSettings();
+		settings.recompiler = core.equals("recompiler");
+		cpu = PgbBenchmark.makeMachine(settings, new PgbCachedVideo(settings), false);
+	}
+
+	/**
+	 * A millisecond of emulated time.
+	 */
+	@Benchmark
+	public int exec() {
+		cpu.exec(4194);
+		return cpu.a;
+	}
+}
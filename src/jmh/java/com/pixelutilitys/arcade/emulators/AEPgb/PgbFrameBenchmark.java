@@ -0,0 +1,51 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole frames of PgbBenchmark's render rom, 70224 cycles of
+ * cpu, memory, timers and drawing together, like
+ * AEPgb.runFrame() runs them.  At 60 frames a second, a frame
+ * has 16.7 ms.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgbFrameBenchmark {
+	@Param({"interpreter", "recompiler"})
+	public String	core;
+
+	@Param({"basic", "cached"})
+	public String	video;
+
+	private PgbCpu	cpu;
+
+	@Setup
+	public void setup() {
+		PgbSettings settings = new PgbSettings();
+		settings.recompiler = core.equals("recompiler");
+		PgbVideo vid = video.equals("basic") ? new PgbBasicVideo(settings) : new PgbCachedVideo(settings);
+		cpu = PgbBenchmark.makeMachine(settings, vid, true);
+	}
+
+	@Benchmark
+	public long frame() {
+		cpu.exec(PgbHost.FRAME_CYCLES);
+		return cpu.mem.video.framecount;
+	}
+}
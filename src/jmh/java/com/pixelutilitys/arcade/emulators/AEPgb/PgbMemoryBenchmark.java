@@ -0,0 +1,60 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PgbMemory.read() and write() over the regions games touch
+ * most: the rom banks, wram, hram and vram.  The times are
+ * per access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgbMemoryBenchmark {
+	private PgbMemory	mem;
+
+	@Setup
+	public void setup() {
+		PgbSettings settings = new PgbSettings();
+		mem = PgbBenchmark.makeMachine(settings, new PgbCachedVideo(settings), false).mem;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(256)
+	public int read() {
+		int sum = 0;
+		for(int i = 0; i < 64; i++) {
+			sum += mem.read(0x0100 + i);
+			sum += mem.read(0x4000 + i);
+			sum += mem.read(0xC000 + i);
+			sum += mem.read(0xFF80 + i);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(192)
+	public void write() {
+		for(int i = 0; i < 64; i++) {
+			mem.write(0xC000 + i, i);
+			mem.write(0xFF80 + i, i);
+			// through the video, with the lcd off
+			mem.write(0x8000 + i, i);
+		}
+	}
+}
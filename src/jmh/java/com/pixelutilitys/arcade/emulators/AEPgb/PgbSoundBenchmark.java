@@ -0,0 +1,78 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SoundChip mixing a frame of all four channels at 44100 Hz,
+ * set up through the sound registers the way a game would.
+ * The time is per sample.
+ *
+ * "low" plays notes around middle C and slow noise, "high"
+ * plays the highest notes and the fastest noise, where most
+ * samples span more than one step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgbSoundBenchmark {
+	@Param({"low", "high"})
+	public String		notes;
+
+	private SoundChip	chip;
+
+	@Setup
+	public void setup() {
+		PgbSettings settings = new PgbSettings();
+		PgbMemory mem = PgbBenchmark.makeMachine(settings, new PgbCachedVideo(settings), false).mem;
+		chip = mem.soundChip;
+
+		boolean high = notes.equals("high");
+		int frequency = high ? 2047 : 1547;
+		// sound on, every channel on both sides
+		mem.write(0xFF26, 0x80);
+		mem.write(0xFF25, 0xFF);
+		// squares at half and quarter duty, full volume, no length
+		mem.write(0xFF11, 0x80);
+		mem.write(0xFF12, 0xF0);
+		mem.write(0xFF13, frequency & 0xFF);
+		mem.write(0xFF14, 0x80 | frequency >> 8);
+		mem.write(0xFF16, 0x40);
+		mem.write(0xFF17, 0xF0);
+		mem.write(0xFF18, (frequency - 100) & 0xFF);
+		mem.write(0xFF19, 0x80 | (frequency - 100) >> 8);
+		// a saw tooth on the wave channel
+		for(int i = 0; i < 16; i++) {
+			mem.write(0xFF30 + i, i * 0x11 ^ 0x0F);
+		}
+		mem.write(0xFF1A, 0x80);
+		mem.write(0xFF1C, 0x20);
+		mem.write(0xFF1D, frequency & 0xFF);
+		mem.write(0xFF1E, 0x80 | frequency >> 8);
+		// noise
+		mem.write(0xFF21, 0xF0);
+		mem.write(0xFF22, high ? 0x00 : 0x57);
+		mem.write(0xFF23, 0x80);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(735)
+	public void frame() {
+		chip.mix(735);
+	}
+}
@@ -0,0 +1,90 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drawing lines with PgbBasicVideo and PgbCachedVideo, on the
+ * screen of PgbBenchmark's render rom: background, window
+ * and 40 sprites.
+ *
+ * hblank draws every line of a frame, write streams a tile
+ * and a row of the map into vram, and tileUpdate does both,
+ * so PgbCachedVideo has to decode and redraw what changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgbVideoBenchmark {
+	@Param({"basic", "cached"})
+	public String		video;
+
+	private PgbVideo	vid;
+	private int			tile;
+
+	@Setup
+	public void setup() {
+		PgbSettings settings = new PgbSettings();
+		vid = video.equals("basic") ? new PgbBasicVideo(settings) : new PgbCachedVideo(settings);
+		PgbCpu cpu = PgbBenchmark.makeMachine(settings, vid, true);
+		// until the rom has turned the lcd on
+		for(int i = 0; i < 10; i++) {
+			cpu.exec(PgbHost.FRAME_CYCLES);
+		}
+	}
+
+	/**
+	 * Per line.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(144)
+	public void hblank() {
+		for(int line = 0; line < 144; line++) {
+			vid.ly = line;
+			vid.hblank();
+		}
+	}
+
+	/**
+	 * Per byte.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(48)
+	public void write() {
+		writeTile();
+	}
+
+	/**
+	 * Per frame.
+	 */
+	@Benchmark
+	public void tileUpdate() {
+		writeTile();
+		hblank();
+	}
+
+	private void writeTile() {
+		tile = (tile + 1) % 384;
+		for(int i = 0; i < 16; i++) {
+			vid.write(0x8000 + tile * 16 + i, (byte)(tile + i));
+		}
+		for(int i = 0; i < 32; i++) {
+			vid.write(0x9800 + (tile & 31) * 32 + i, (byte)(tile + i));
+		}
+	}
+}
@@ -17,17 +17,55 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
 public class AEPgb extends Applet
-	implements KeyListener, WindowListener, ActionListener, ItemListener, Runnable {
+	implements KeyListener, WindowListener, ActionListener, ItemListener {
 
-	public static boolean applet;
+	public boolean applet;
+	public PgbSettings settings;
 	public JFrame frame;
 	public Container container;
-	public Thread cpuThread;
+
+	// the emulation runs on the host's worker threads
+	public PgbHost host;
+	boolean scheduled;
+	private volatile boolean running;
+
+	// frames run on time and frames dropped, kept by the host
+	public volatile long framesDelivered;
+	public volatile long framesMissed;
+	// average distance between a frame's deadline and when it started, in ns
+	public volatile long frameJitter;
+
+	// adaptive frameskip: host time per frame, smoothed, in ns
+	public volatile long cpuNanos;
+	public volatile long renderNanos;
+	// never leave out more frames than this in a row
+	static final int MAX_AUTOSKIP = 4;
+
+	// rewind: states of the last few seconds, stepped back through while rewinding is set
+	public PgbRewind rewind;
+	public volatile boolean rewinding;
+	private int rewindTick;
+
+	// battery ram written is handed to the cart's PgbBattery this often, in frames
+	static final int BATTERY_FRAMES = 60;
+	private int batteryTick;
+
+	// a movie being recorded or played back, see PgbMovie
+	public PgbMovie movie;
+	private File movieFile;
+
+	// for the fps display in the title
+	private int titlecount;
+	private long titletime = System.nanoTime();
+	private long titleframe;
 
 	public PgbMemory mem;
 	public PgbCpu cpu;
@@ -38,6 +76,8 @@ public class AEPgb extends Applet
 
 	public PgbVideoOutput vidout;
 	public PgbDirectVideoOutput directvidout;
+	// set before go() to draw into a PgbFrameOutput instead of the window
+	public boolean headless;
 
 	public String curfile;
 	public String curpath;
@@ -49,7 +89,8 @@ public class AEPgb extends Applet
 		container = frame.getContentPane();
 
 		// load settings, if possible
-		PgbSettings.load();
+		settings = new PgbSettings();
+		settings.load();
 
 		// initialize...
 		curfile = "";
@@ -59,13 +100,19 @@ public class AEPgb extends Applet
 		menubar = new PgbMenuBar(this, this);
 
 		// init emulation
+		host = PgbHost.getShared();
 		cart = new PgbCart();
-		video = new PgbCachedVideo();
-		joy = new PgbJoypad();
-		net = new PgbNetplay();
+		video = new PgbCachedVideo(settings);
+		joy = new PgbJoypad(settings);
+		net = new PgbNetplay(settings);
 
-		mem = new PgbMemory(cart, video, joy, net);
+		mem = new PgbMemory(settings, cart, video, joy, net);
 		cpu = new PgbCpu(mem);
+		// without sound, the audio hardware isn't touched at all
+		setSoundOutput(settings.usesound ? new PgbLineSoundOutput() : new PgbNullSoundOutput());
+		if (settings.rewind) {
+			rewind = new PgbRewind(settings.rewindmemory << 20, settings.rewindframes);
+		}
 
 		vidout = getPgbVideoOutput(video);
 
@@ -92,7 +139,6 @@ public class AEPgb extends Applet
 	
 	public void start() {
 		applet = true;
-		Thread p = new Thread(this);
 		addKeyListener(this);
 		//runningAsApplet = true;
 		System.out.println(
@@ -101,56 +147,69 @@ public class AEPgb extends Applet
 				+ " (c) 2004 retroK & XTale(applet)");
 		this.requestFocus();
 		vidout = getPgbVideoOutput(video);
-		cpuThread = new Thread(this);
 		//conformToSettings();
 		
 		//frame.pack();
 		vidout.setGraphics();
 		//frame.setVisible(true);
-		PgbSettings.paused = true;
-		PgbSettings.active = true;
+		settings.paused = true;
+		settings.active = true;
+		running = true;
 		cart.loadApplet("file.gb",this);
 		
 		if (cart.loaded()) {
 			reset();
 			unpause();
 		}
-		System.out.println("starting cputhread");
-		p.start();
-		cpuThread.start();
+		System.out.println("starting cpu");
+		host.wake(this);
 	}
 
 	public void go() {
-		cpuThread = new Thread(this);
 		conformToSettings(); // once
 
 		frame.pack();
 		vidout.setGraphics();
 		frame.setVisible(true);
 
-		PgbSettings.paused = true;
-		PgbSettings.active = true;
+		settings.paused = true;
+		settings.active = true;
+		running = true;
 
 		cart.load(curpath, curfile);
 		if (cart.loaded()) {
-			setSystem(PgbSettings.desiredsystem);
-			PgbSettings.gamestring = cart.getName();
+			setSystem(settings.desiredsystem);
+			settings.gamestring = cart.getName();
 			reset();
 			unpause();
 		}
 
-		cpuThread.start();
+		host.wake(this);
+	}
+
+	/**
+	 * Sends the sound to out from now on, see PgbSoundOutput.
+	 * The output before is closed.
+	 */
+	public void setSoundOutput(PgbSoundOutput out) {
+		mem.soundChip.setOutput(out);
 	}
 
 	/**
 	 * Shuts down the emulator, killing off all threads and
-	 * saving the battery and settings, if needed.
+	 * saving the battery and settings, if needed.  Stopping
+	 * and saving hold the same lock as runFrame(), so the last
+	 * save sees whole frames and no frame runs after it.
 	 */
 	public void shutdown() {
-		cpuThread = null;
-		PgbSettings.save(frame);
+		synchronized (this) {
+			running = false;
+			stopMovie();
+			cart.saveBattery(curfile);
+		}
+		settings.save(frame);
 
-		cart.saveBattery(curfile);
+		mem.soundChip.close();
 
 //		System.exit(0);
 	}
@@ -159,21 +218,21 @@ public class AEPgb extends Applet
 	 * Pauses the cpu emulation process.
 	 */
 	public synchronized void pause() {
-		if (!PgbSettings.paused) {
-			PgbSettings.paused = true;
+		if (!settings.paused) {
+			settings.paused = true;
 		}
-		menubar.cpu_paused.setState(PgbSettings.paused);
+		menubar.cpu_paused.setState(settings.paused);
 	}
 
 	/**
 	 * Unpauses the cpu emulation process.
 	 */
 	public synchronized void unpause() {
-		if (PgbSettings.paused) {
-			PgbSettings.paused = false;
-			notifyAll();
+		if (settings.paused) {
+			settings.paused = false;
+			host.wake(this);
 		}
-		menubar.cpu_paused.setState(PgbSettings.paused);
+		menubar.cpu_paused.setState(settings.paused);
 	}
 
 	/**
@@ -188,6 +247,10 @@ public class AEPgb extends Applet
 		joy.reset();
 		mem.reset();
 		cpu.reset();
+		if (rewind != null) {
+			rewind.clear();
+		}
+		stopMovie();
 
 		unpause();
 	}
@@ -201,15 +264,18 @@ public class AEPgb extends Applet
 	}
 
 	public PgbVideoOutput getPgbVideoOutput(PgbVideo video) {
+		if (headless) {
+			return new PgbFrameOutput(video);
+		}
 		// check if they can use directx
 		if (applet) {
 			return new PgbDirectVideoOutput(video,this);
 		}
-		if (PgbSettings.videooutput == PgbSettings.VIDOUT_DIRECTX
+		if (settings.videooutput == PgbSettings.VIDOUT_DIRECTX
 			&& !PgbSettings.usedirectx) {
-			PgbSettings.videooutput = PgbSettings.VIDOUT_DEFAULT;
+			settings.videooutput = PgbSettings.VIDOUT_DEFAULT;
 		}
-		switch (PgbSettings.videooutput) {
+		switch (settings.videooutput) {
 			case PgbSettings.VIDOUT_DEFAULT :
 				return new PgbIndexedVideoOutput(video);
 			case PgbSettings.VIDOUT_DIRECT :
@@ -221,20 +287,21 @@ public class AEPgb extends Applet
 	}
 
 	public void conformToSettings() {
-		setSgbBorder(PgbSettings.sgbborder);
-		setColorMute(PgbSettings.colormute);
-		frame.setLocation(PgbSettings.winloc);
-		setDebugLevel(PgbSettings.debuglevel);
-		setFrameskip(PgbSettings.frameskip);
-		setPriority(PgbSettings.priority);
-		setVideoOutput(PgbSettings.videooutput);
-		setSystem(PgbSettings.desiredsystem);
-
-		setLcdSize(PgbSettings.lcdsize);
+		setSgbBorder(settings.sgbborder);
+		setColorMute(settings.colormute);
+		frame.setLocation(settings.winloc);
+		setDebugLevel(settings.debuglevel);
+		setFrameskip(settings.frameskip);
+		setPriority(settings.priority);
+		setVideoOutput(settings.videooutput);
+		setSystem(settings.desiredsystem);
+		setRecompiler(settings.recompiler);
+
+		setLcdSize(settings.lcdsize);
 	}
 
 	void setPriority(int priority) {
-		PgbSettings.priority = priority;
+		settings.priority = priority;
 
 		menubar.priority_low.setState(priority == Thread.MIN_PRIORITY);
 		menubar.priority_normal.setState(priority == Thread.NORM_PRIORITY);
@@ -242,12 +309,13 @@ public class AEPgb extends Applet
 			priority == ((Thread.NORM_PRIORITY + Thread.MAX_PRIORITY) / 2));
 		menubar.priority_max.setState(priority == Thread.MAX_PRIORITY);
 
-		cpuThread.setPriority(priority);
+		// the host's workers are shared by every emulator, so
+		// this is only remembered in the settings
 	}
 
 	// by retroK
 	void setSound(boolean usesound) {
-		PgbSettings.usesound = usesound;
+		settings.usesound = usesound;
 		menubar.sound.setState(usesound);
 		mem.soundChip.channel1Enable = menubar.sound.getState();
 		menubar.soundChannel1Enable.setState(menubar.sound.getState());
@@ -319,14 +387,14 @@ public class AEPgb extends Applet
 		// until it is visible and has been resized...
 
 		Dimension lcdsize;
-		PgbSettings.lcdsize = size;
+		settings.lcdsize = size;
 
 		menubar.size_1.setState(size == 1);
 		menubar.size_2.setState(size == 2);
 		menubar.size_3.setState(size == 3);
 		menubar.size_4.setState(size == 4);
 
-		if (PgbSettings.sgbborder) {
+		if (settings.sgbborder) {
 			lcdsize = new Dimension(256 * size, 224 * size);
 		} else {
 			lcdsize = new Dimension(160 * size, 144 * size);
@@ -345,7 +413,7 @@ public class AEPgb extends Applet
 			videooutput = PgbSettings.VIDOUT_DEFAULT;
 		}
 		// then set up the menus as normal
-		PgbSettings.videooutput = videooutput;
+		settings.videooutput = videooutput;
 		if (videooutput == PgbSettings.VIDOUT_DEFAULT) {
 			menubar.vidout_default.setState(true);
 			if (PgbSettings.usedirectx) {
@@ -392,20 +460,27 @@ public class AEPgb extends Applet
 		unpause();
 	}
 
+	void setRecompiler(boolean use) {
+		settings.recompiler = use;
+		menubar.cpu_recompiler.setState(use);
+		cpu.setRecompiler(use);
+	}
+
 	void setColorMute(boolean muted) {
-		PgbSettings.colormute = muted;
+		settings.colormute = muted;
 		menubar.color_mute.setState(muted);
 	}
 
 	void setSgbBorder(boolean border) {
-		PgbSettings.sgbborder = border;
+		settings.sgbborder = border;
 		menubar.sgb_border.setState(border);
 	}
 
 	void setFrameskip(int skip) {
-		PgbSettings.frameskip = skip;
+		settings.frameskip = skip;
 
-		menubar.auto_wait.setState(PgbSettings.autowait);
+		menubar.auto_wait.setState(settings.autowait);
+		menubar.auto_skip.setState(settings.autoskip);
 		menubar.fs_0.setState(skip == 0);
 		menubar.fs_1.setState(skip == 1);
 		menubar.fs_2.setState(skip == 2);
@@ -415,7 +490,7 @@ public class AEPgb extends Applet
 	}
 
 	void setDebugLevel(int level) {
-		PgbSettings.debuglevel = level;
+		settings.debuglevel = level;
 
 		menubar.debug_0.setState(level == 0);
 		menubar.debug_1.setState(level == 1);
@@ -426,7 +501,7 @@ public class AEPgb extends Applet
 	}
 
 	void setSystem(int sys) {
-		PgbSettings.desiredsystem = sys;
+		settings.desiredsystem = sys;
 
 		menubar.sys_gb.setState(sys == PgbSettings.SYS_GB);
 		menubar.sys_gbp.setState(sys == PgbSettings.SYS_GBP);
@@ -440,7 +515,7 @@ public class AEPgb extends Applet
 			sys = PgbSettings.SYS_GBP;
 		}
 
-		PgbSettings.system = sys;
+		settings.system = sys;
 	}
 
 	synchronized void loadCart() {
@@ -462,9 +537,9 @@ public class AEPgb extends Applet
 		//fd.dispose();
 
 		if (cart.load(curpath, curfile)) {
-			setSystem(PgbSettings.desiredsystem);
+			setSystem(settings.desiredsystem);
 
-			PgbSettings.gamestring = cart.getName();
+			settings.gamestring = cart.getName();
 			net.sendInfo();
 
 			reset();
@@ -484,28 +559,28 @@ public class AEPgb extends Applet
 	public void windowClosed(WindowEvent ev) {
 	}
 	public synchronized void windowDeiconified(WindowEvent ev) {
-		if (!PgbSettings.active) {
-			PgbSettings.active = true;
-			notifyAll();
+		if (!settings.active) {
+			settings.active = true;
+			host.wake(this);
 		}
 	}
 	public synchronized void windowActivated(WindowEvent ev) {
 		/*
-		if(!PgbSettings.active) {
-			PgbSettings.active = true;
+		if(!settings.active) {
+			settings.active = true;
 			notify();
 		}
 		*/
 	}
 	public synchronized void windowIconified(WindowEvent ev) {
-		if (PgbSettings.active) {
-			PgbSettings.active = false;
+		if (settings.active) {
+			settings.active = false;
 		}
 	}
 	public synchronized void windowDeactivated(WindowEvent ev) {
 		/*
-		if(PgbSettings.active) {
-			PgbSettings.active = false;
+		if(settings.active) {
+			settings.active = false;
 		}
 		*/
 	}
@@ -514,13 +589,20 @@ public class AEPgb extends Applet
 	 * KeyListener
 	 */
 	public void keyReleased(KeyEvent ev) {
+		if (ev.getKeyCode() == settings.key_rewind) {
+			rewinding = false;
+		}
 	}
 	public void keyPressed(KeyEvent ev) {
+		if (ev.getKeyCode() == settings.key_rewind) {
+			rewinding = true;
+		}
+
 		if (ev.getKeyCode() == KeyEvent.VK_SPACE) {
 			cpu.exec(1);
 		}
 		
-		if (ev.getKeyCode() == PgbSettings.key_screen) {
+		if (ev.getKeyCode() == settings.key_screen) {
 			vidout.makeScreenshot();
 		}
 	}
@@ -542,6 +624,18 @@ public class AEPgb extends Applet
                 loadCart();
                 break;
 
+            case "file_record":
+                recordMovie();
+                break;
+
+            case "file_play":
+                playMovie();
+                break;
+
+            case "file_stop":
+                stopMovie();
+                break;
+
             case "file_exit":
                 shutdown();
                 break;
@@ -551,7 +645,7 @@ public class AEPgb extends Applet
                 break;
 
             case "cpu_paused":
-                if (PgbSettings.paused) {
+                if (settings.paused) {
                     unpause();
                 } else {
                     pause();
@@ -563,7 +657,7 @@ public class AEPgb extends Applet
                 break;
 
             case "options_setkeys":
-                PgbSettings.popKeysDialog(frame);
+                settings.popKeysDialog(frame);
                 break;
 
         }
@@ -574,13 +668,17 @@ public class AEPgb extends Applet
 	 */
 	public synchronized void itemStateChanged(ItemEvent ev) {
 		if (ev.getItemSelectable().equals(menubar.cpu_paused)) {
-			if (PgbSettings.paused) {
+			if (settings.paused) {
 				unpause();
 			} else {
 				pause();
 			}
 			return;
 		}
+		if (ev.getItemSelectable().equals(menubar.cpu_recompiler)) {
+			setRecompiler(menubar.cpu_recompiler.getState());
+			return;
+		}
 		if (ev.getItemSelectable().equals(menubar.vidout_default)) {
 			setVideoOutput(PgbSettings.VIDOUT_DEFAULT);
 			return;
@@ -663,12 +761,17 @@ public class AEPgb extends Applet
 		}
 		if (ev.getItemSelectable().equals(menubar.sgb_border)) {
 			setSgbBorder(menubar.sgb_border.getState());
-			setLcdSize(PgbSettings.lcdsize);
+			setLcdSize(settings.lcdsize);
 			return;
 		}
 		if (ev.getItemSelectable().equals(menubar.auto_wait)) {
-			PgbSettings.autowait = !PgbSettings.autowait;
-			setFrameskip(PgbSettings.frameskip);
+			settings.autowait = !settings.autowait;
+			setFrameskip(settings.frameskip);
+			return;
+		}
+		if (ev.getItemSelectable().equals(menubar.auto_skip)) {
+			settings.autoskip = !settings.autoskip;
+			setFrameskip(settings.frameskip);
 			return;
 		}
 		if (ev.getItemSelectable().equals(menubar.fs_0)) {
@@ -754,63 +857,249 @@ public class AEPgb extends Applet
 	}
 
 	/**
-	 * Runnable
+	 * How many bytes a save state of this machine takes.
+	 */
+	public synchronized int getStateSize() {
+		return PgbState.size(cpu);
+	}
+
+	/**
+	 * Takes a save state, between two frames.  See PgbState.
+	 */
+	public synchronized ByteBuffer saveState() {
+		ByteBuffer buf = ByteBuffer.allocate(PgbState.size(cpu));
+		PgbState.save(cpu, buf);
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Writes a save state into buf, which needs
+	 * getStateSize() bytes left.
+	 */
+	public synchronized void saveState(ByteBuffer buf) {
+		PgbState.save(cpu, buf);
+	}
+
+	/**
+	 * Loads a save state taken by saveState(), between two
+	 * frames.  A state for another rom or system, or from
+	 * another version, is refused and nothing changes.
+	 */
+	public synchronized boolean loadState(ByteBuffer buf) {
+		String problem = PgbState.check(cpu, buf);
+		if (problem != null) {
+			System.out.println("Can't load state: " + problem);
+			return false;
+		}
+		PgbState.load(cpu, buf);
+		if (rewind != null) {
+			rewind.clear();
+		}
+		stopMovie();
+		video.redraw();
+		return true;
+	}
+
+	/**
+	 * Starts recording a movie of the game from where it is
+	 * now.  It is written to file when stopMovie() is called.
 	 */
-	public final void run() {
-		int cyclecount = 0;
-		long lasttime = System.currentTimeMillis(),
-			lastframe = video.framecount;
-		long interval = 1;
-		long thistime, time, frames;
-		int framereal, frametarget;
-
-		Thread currentThread = Thread.currentThread();
-		while (cpuThread == currentThread) {
+	public synchronized void recordMovie(File file) {
+		stopMovie();
+		movie = PgbMovie.record(cpu, frameCycles());
+		movieFile = file;
+		System.out.println("Recording movie to " + file);
+	}
+
+	/**
+	 * Plays back a movie recorded by recordMovie() for the
+	 * rom that is loaded now.
+	 */
+	public synchronized boolean playMovie(File file) {
+		stopMovie();
+		PgbMovie toplay;
+		try {
+			toplay = PgbMovie.read(file);
+		} catch (IOException e) {
+			System.out.println("Can't read movie: " + e.getMessage());
+			return false;
+		}
+		if (toplay.getSystem() != settings.system) {
+			setSystem(toplay.getSystem());
+			reset();
+		}
+		String problem = toplay.play(cpu);
+		if (problem != null) {
+			System.out.println("Can't play movie: " + problem);
+			return false;
+		}
+		if (rewind != null) {
+			rewind.clear();
+		}
+		video.redraw();
+		movie = toplay;
+		System.out.println("Playing movie " + file + ", " + movie.length() + " frames");
+		return true;
+	}
+
+	/**
+	 * Stops the movie being recorded or played back, if any.
+	 * A recording is written out.
+	 */
+	public synchronized void stopMovie() {
+		if (movie == null) {
+			return;
+		}
+		if (movie.isPlaying()) {
+			// let go of the movie's buttons
+			joy.setButtons(0);
+		} else {
 			try {
-				Thread.sleep(interval);
-				synchronized (this) {
-					while ((PgbSettings.paused || !PgbSettings.active)
-						&& cpuThread == currentThread) {
-						wait();
-					}
+				movie.write(movieFile);
+				System.out.println("Saved movie " + movieFile + ", " + movie.length() + " frames");
+			} catch (IOException e) {
+				System.out.println("Can't save movie: " + e.getMessage());
+			}
+		}
+		movie = null;
+		movieFile = null;
+	}
+
+	synchronized void recordMovie() {
+		File file = chooseMovie("Record Movie...", FileDialog.SAVE);
+		if (file != null) {
+			recordMovie(file);
+		}
+	}
+
+	synchronized void playMovie() {
+		File file = chooseMovie("Play Movie...", FileDialog.LOAD);
+		if (file != null) {
+			playMovie(file);
+		}
+	}
+
+	private File chooseMovie(String title, int mode) {
+		if (!cart.loaded()) {
+			return null;
+		}
+		FileDialog fd = new FileDialog(frame, title, mode);
+		fd.setDirectory(curpath);
+		if (curfile.lastIndexOf('.') > 0) {
+			fd.setFile(new File(curfile.substring(0, curfile.lastIndexOf('.')) + ".pgbm").getName());
+		}
+		fd.setVisible(true);
+		if (fd.getFile() == null) {
+			return null;
+		}
+		return new File(fd.getDirectory(), fd.getFile());
+	}
+
+	/**
+	 * The cpu cycles in one frame, 70224 at the normal clock
+	 * speed and twice that in gameboy color double speed.
+	 */
+	private int frameCycles() {
+		if ((mem.gbcGetSpeed() & 0x80) != 0) {
+			return PgbHost.FRAME_CYCLES * 2;
+		}
+		return PgbHost.FRAME_CYCLES;
+	}
+
+	/**
+	 * Can the host run frames for this emulator right now?
+	 */
+	boolean isRunnable() {
+		return running && !settings.paused && settings.active;
+	}
+
+	/**
+	 * The adaptive frameskip.  Called by the host after each
+	 * frame with the time left before the next one should
+	 * start, which is negative when running late.  The next
+	 * frame then has until a frame after that to finish.  If
+	 * it can't be run and drawn by then, going by what the
+	 * last frames cost, the emulator is falling behind real
+	 * time and the frame is run without drawing, so the game
+	 * keeps its speed.
+	 */
+	void planFrame(long slack) {
+		video.skipnext = settings.autoskip
+			&& settings.autowait
+			&& cpuNanos + renderNanos > slack + PgbHost.FRAME_NANOS
+			&& video.skiprun < MAX_AUTOSKIP;
+	}
+
+	/**
+	 * Runs exactly one frame worth of cpu cycles, 70224 at the
+	 * normal clock speed.  Called by the host, which takes care
+	 * of the timing.
+	 *
+	 * While rewinding is set the frame goes backwards instead:
+	 * every few frames the last rewind state is loaded and
+	 * shown, so the game plays back at about its own speed.
+	 * Not while a movie records or plays, it would lose its
+	 * place.
+	 *
+	 * About once a second the battery ram written is saved, in
+	 * the background.
+	 */
+	public final void runFrame() {
+		synchronized (this) {
+			// shut down since the host looked
+			if (!running) {
+				return;
+			}
+			if (++batteryTick >= BATTERY_FRAMES) {
+				batteryTick = 0;
+				if (cart.flushBattery()) {
+					mem.mapCart();
 				}
-			} catch (InterruptedException ex) {
-				// duh?
 			}
-			cpu.exec((int) (PgbSettings.clockspeed * 100000));
-			if (cyclecount++ == 10) {
-				// calculate
-				thistime = System.currentTimeMillis();
-				time = thistime - lasttime;
-				frames = video.framecount - lastframe;
-				framereal = (int) (frames * (1000.0 / time));
-				frametarget = 60;
-				// adjust
-				if (PgbSettings.autowait) {
-					// attempt to regulate speed...
-					// it doesn't adjust fast, but it doesn't overadjust
-					if (frametarget - framereal > 5) {
-						interval = Math.max(interval - 4, 1);
-					}
-					if (framereal - frametarget > 5) {
-						interval += 4;
+			if (rewinding && rewind != null && movie == null) {
+				if (++rewindTick >= rewind.getInterval()) {
+					rewindTick = 0;
+					if (rewind.stepBack(cpu)) {
+						video.redraw();
 					}
-				} else {
-					interval = 1;
 				}
-				// display
-				frame.setTitle(
-					"AEPgb : "
-						+ framereal
-						+ "/"
-						+ frametarget
-						+ " fps, wait="
-						+ interval);
-				// get ready for next time
-				cyclecount = 0;
-				lasttime = thistime;
-				lastframe = video.framecount;
+				return;
+			}
+			long start = System.nanoTime();
+			if (movie != null && !movie.frame(joy)) {
+				System.out.println("Movie finished, " + movie.length() + " frames");
+				stopMovie();
+			}
+			if (movie == null) {
+				joy.latch();
+			}
+			video.renderNanos = 0;
+			cpu.exec(movie != null ? movie.getFrameCycles() : frameCycles());
+			if (rewind != null) {
+				rewind.frame(cpu);
 			}
+			long render = video.renderNanos;
+			long cost = System.nanoTime() - start;
+			renderNanos += (render - renderNanos) / 8;
+			cpuNanos += (cost - render - cpuNanos) / 8;
+		}
+		if (titlecount++ == 60) {
+			long thistime = System.nanoTime();
+			int framereal = (int) ((video.framecount - titleframe) * 1000000000L / (thistime - titletime));
+			frame.setTitle(
+				"AEPgb : "
+					+ framereal
+					+ "/60 fps, missed="
+					+ framesMissed
+					+ ", jitter="
+					+ frameJitter / 1000
+					+ "us, skipped="
+					+ video.skipcount);
+			// get ready for next time
+			titlecount = 0;
+			titletime = thistime;
+			titleframe = video.framecount;
 		}
 	}
 }
@@ -22,11 +22,18 @@ Place - Suite 330, Boston, MA 02111-1307, USA.
 
 */
 
+import java.nio.ByteBuffer;
+
 /** This is a white noise generator.  It is used to emulate
  *  channel 4.
+ *
+ *  The noise comes from a shift register with feedback, 15 or
+ *  7 bits wide, which the Gameboy clocks at a rate set in
+ *  NR43.  Both sequences are worked out once, in LFSR15 and
+ *  LFSR7, and played like any other table.
  */
 
-class NoiseGenerator {
+class NoiseGenerator extends SoundGenerator {
 	/** Indicates sound is to be played on the left channel of a stereo sound */
 	public static final int CHAN_LEFT = 1;
 
@@ -36,12 +43,17 @@ class NoiseGenerator {
 	/** Indicates that sound is mono */
 	public static final int CHAN_MONO = 4;
 
+	/** The output of the 15 and 7 bit shift registers, a step each */
+	static final byte[] LFSR15 = lfsr(15);
+	static final byte[] LFSR7 = lfsr(7);
+	static final int[] LFSR15_SUMS = sums(LFSR15, new int[LFSR15.length + 1]);
+	static final int[] LFSR7_SUMS = sums(LFSR7, new int[LFSR7.length + 1]);
+
 	/** Indicates the length of the sound in frames */
 	int totalLength;
-	int cyclePos;
 
-	/** The length of one cycle, in samples */
-	int cycleLength;
+	/** The clock and width of the shift register, as written to NR43 */
+	int polynomial;
 
 	/** Amplitude of the wave function */
 	int amplitude;
@@ -62,27 +74,77 @@ class NoiseGenerator {
 
 	int counterEnvelope;
 
-	/** Creates a white noise generator with the specified wavelength, amplitude, channel, and sample rate */
-	public NoiseGenerator(int waveLength, int ampl, int chan, int rate) {
-		cycleLength = waveLength;
-		amplitude = ampl;
-		cyclePos = 0;
-		channel = chan;
-		sampleRate = rate;
-	}
-
 	/** Creates a white noise generator with the specified sample rate */
 	public NoiseGenerator(int rate) {
-		cyclePos = 0;
 		channel = CHAN_LEFT | CHAN_RIGHT;
-		cycleLength = 2;
 		totalLength = 0;
 		sampleRate = rate;
 		amplitude = 32;
+		setPolynomial(0);
+	}
+
+	/** The bits a shift register of width bits puts out, one
+	 *  per step, until it repeats
+	 */
+	private static byte[] lfsr(int width) {
+		byte[] bits = new byte[(1 << width) - 1];
+		int reg = (1 << width) - 1;
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] = (byte) (~reg & 1);
+			int feedback = (reg ^ (reg >> 1)) & 1;
+			reg = (reg >> 1) | (feedback << (width - 1));
+		}
+		return bits;
+	}
+
+	/** Write the channel's state for a save state.  The sample rate belongs to the host and is left out */
+	public void saveState(ByteBuffer buf) {
+		buf.putInt(totalLength).putInt(phase).putInt(polynomial).putInt(amplitude);
+		buf.putInt(channel).putInt(initialEnvelope).putInt(numStepsEnvelope).putInt(counterEnvelope);
+		buf.put((byte) (increaseEnvelope ? 1 : 0));
+	}
+
+	/** Read what saveState() wrote */
+	public void loadState(ByteBuffer buf) {
+		totalLength = buf.getInt();
+		int pos = buf.getInt();
+		setPolynomial(buf.getInt());
+		phase = pos;
+		amplitude = buf.getInt();
+		channel = buf.getInt();
+		initialEnvelope = buf.getInt();
+		numStepsEnvelope = buf.getInt();
+		counterEnvelope = buf.getInt();
+		increaseEnvelope = buf.get() != 0;
 	}
 
+	static final int STATE_SIZE = 8 * 4 + 1;
+
 	public void setSampleRate(int sr) {
 		sampleRate = sr;
+		setPolynomial(polynomial);
+	}
+
+	/** Set the shift register's clock and width from NR43 */
+	public void setPolynomial(int value) {
+		polynomial = value;
+		int ratio = value & 7;
+		int shift = (value >> 4) & 15;
+		if ((value & 8) != 0) {
+			levels = LFSR7;
+			sums = LFSR7_SUMS;
+		} else {
+			levels = LFSR15;
+			sums = LFSR15_SUMS;
+		}
+		phase %= levels.length << 16;
+		// 524288 / ratio / 2^(shift + 1) steps a second, a ratio of 0 counts as 0.5
+		setClock(1048576 >> (shift + 1), ratio == 0 ? 1 : ratio * 2, sampleRate);
+	}
+
+	/** Start the shift register over, as triggering the channel does */
+	public void restart() {
+		phase = 0;
 	}
 
 	/** Set the channel that the white noise is playing on */
@@ -111,12 +173,11 @@ class NoiseGenerator {
 		}
 	}
 
-	/** Output a single frame of samples, of specified length.  Start at position indicated in the
-	 *  output array.
+	/** Output a frame of sound data, length samples of it, as
+	 *  changes into deltas, see SoundGenerator.  With no deltas
+	 *  the channel runs as usual but nothing is played.
 	 */
-	public void play(byte[] b, int length, int offset) {
-		int val;
-
+	public void play(int[] deltas, int length) {
 		if (totalLength != 0) {
 			totalLength--;
 
@@ -133,20 +194,11 @@ class NoiseGenerator {
 					}
 				}
 			}
-			for (int r = offset; r < offset + length; r++) {
-				val = (int) ((Math.random() * amplitude * 2) - amplitude);
-
-				if ((channel & CHAN_LEFT) != 0)
-					b[r * 2] += val;
-				if ((channel & CHAN_RIGHT) != 0)
-					b[r * 2 + 1] += val;
-				if ((channel & CHAN_MONO) != 0)
-					b[r] += val;
-
-				//   System.out.print(val + " ");
-
-				cyclePos = (cyclePos + 256) % cycleLength;
-
+			if (deltas != null) {
+				// low is -amplitude, high is amplitude
+				synth(deltas, length, channel, amplitude * 512, amplitude * -256);
+			} else {
+				skip(length);
 			}
 		}
 	}
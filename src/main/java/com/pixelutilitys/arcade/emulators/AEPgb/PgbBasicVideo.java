@@ -5,6 +5,7 @@ package com.pixelutilitys.arcade.emulators.AEPgb;
  * Copyright (C) 2000-2001 Ben Mazur
  */
 
+import java.nio.ByteBuffer;
 
 /**
  * PgbBasicVideo extends PgbVideo by providing an array of
@@ -38,7 +39,17 @@ public class PgbBasicVideo extends PgbVideo {
 	
 	int[]					borderPalette;
 	
-	public PgbBasicVideo() {
+	// one tile line, for the tiles that are cut off at the edges
+	byte[]					tileLine;
+	
+	// the sprites on each line, at most 10, in drawing order
+	// from the top.  rebuilt when OAM or the sprite size changes
+	byte[]					lineSprites;
+	int[]					lineSpriteCount;
+	boolean					spritesDirty;
+	
+	public PgbBasicVideo(PgbSettings settings) {
+		super(settings);
 		// memory
 		screenMemory = new byte[160 * 144];
 		borderPixels = new byte[256 * 224];
@@ -48,6 +59,65 @@ public class PgbBasicVideo extends PgbVideo {
 		screenBPal = new byte[64];
 		screenPalette = new int[64];
 		borderPalette = new int[128];
+		tileLine = new byte[8];
+		lineSprites = new byte[144 * 10];
+		lineSpriteCount = new int[144];
+		spritesDirty = true;
+	}
+	
+	public void reset() {
+		super.reset();
+		spritesDirty = true;
+	}
+	
+	/**
+	 * Also saves the last drawn screen, so a restored game
+	 * has a picture before its first frame.
+	 */
+	public void saveState(ByteBuffer buf) {
+		super.saveState(buf);
+		buf.put(screenMemory);
+	}
+	
+	/**
+	 * Also rebuilds the colours and the SGB border, which
+	 * follow from the registers and palettes.
+	 */
+	public void loadState(ByteBuffer buf) {
+		super.loadState(buf);
+		buf.get(screenMemory);
+		if(settings.system == PgbSettings.SYS_GBC) {
+			for(int p = 0; p < 8; p++) {
+				for(int c = 0; c < 4; c++) {
+					setScreenPalette(false, p, 0, c, gbcPalette[0x00 + p * 8 + c * 2 + 1], gbcPalette[0x00 + p * 8 + c * 2 + 0]);
+					setScreenPalette(true, p, 0, c, gbcPalette[0x40 + p * 8 + c * 2 + 1], gbcPalette[0x40 + p * 8 + c * 2 + 0]);
+				}
+			}
+		}
+		if(settings.system == PgbSettings.SYS_SGB) {
+			updateSgbBorder();
+		}
+		spritesDirty = true;
+	}
+	
+	public int stateSize() {
+		return super.stateSize() + screenMemory.length;
+	}
+	
+	public void write(int address, byte towrite) {
+		super.write(address, towrite);
+		// OAM, by hand or by DMA
+		if(address >= 0xFE00 && address < 0xFEA0) {
+			spritesDirty = true;
+		}
+	}
+	
+	public void setLcdc(byte lval) {
+		int oldsiz = obj_siz;
+		super.setLcdc(lval);
+		if(obj_siz != oldsiz) {
+			spritesDirty = true;
+		}
 	}
 
 	public byte[] getScreenMemory() {
@@ -70,8 +140,9 @@ public class PgbBasicVideo extends PgbVideo {
 	}
 
 	public void hblank() {
-		super.hblank();
-		if(lcd_on && curframe == 0) {
+		if(lcd_on && drawing) {
+			long start = System.nanoTime();
+			super.hblank();
 			// background
 			if(bg_on) {
 				doBgLine(ly);
@@ -85,9 +156,10 @@ public class PgbBasicVideo extends PgbVideo {
 				doObjLine(ly);
 			}
 			// go thru each pixel, add SGB palette settings
-			if(PgbSettings.system == PgbSettings.SYS_SGB) {
+			if(settings.system == PgbSettings.SYS_SGB) {
 				doSgbPalette(ly);
 			}
+			renderNanos += System.nanoTime() - start;
 		}
 	}
 	
@@ -99,12 +171,13 @@ public class PgbBasicVideo extends PgbVideo {
 		tx = scx / 8 + 1;
 		ty = (line + scy) >> 3 & 0x1F;
 		tl = (line + scy) & 0x07;
-		System.arraycopy(getTileLineArray(tx - 1, ty, tl, bg_mode), sxo, screenMemory, ps, isxo);
+		copyTileLineArray(tx - 1, ty, tl, bg_mode, tileLine, 0);
+		System.arraycopy(tileLine, sxo, screenMemory, ps, isxo);
 		for(x = 0; x < 19; x++) {
 			copyTileLineArray((tx + x) & 0x1F, ty, tl, bg_mode, screenMemory, ps + x * 8 + isxo);
-			//System.arraycopy(getTileLineArray((tx + x) % 32, ty, tl, bg_mode), 0, screenMemory, ps + x * 8 + isxo, 8);
 		}
-		System.arraycopy(getTileLineArray((tx + 19) & 0x1F, ty, tl, bg_mode), 0, screenMemory, ps + 152 + isxo, sxo);
+		copyTileLineArray((tx + 19) & 0x1F, ty, tl, bg_mode, tileLine, 0);
+		System.arraycopy(tileLine, 0, screenMemory, ps + 152 + isxo, sxo);
 	}
 	void doWinLine(int line) {
 		int x, ps, ty, tl;
@@ -114,32 +187,77 @@ public class PgbBasicVideo extends PgbVideo {
 		ps = line * 160;
 		ty = (line - wy) >> 3 & 0x1F;
 		tl = (line - wy) & 0x07;
-		System.arraycopy(getTileLineArray(0, ty, tl, win_mode), 0, screenMemory, ps, 8);
-		for(x = 0; x < 19; x++) {
-			System.arraycopy(getTileLineArray(x + 1, ty, tl, win_mode), 0, screenMemory, ps + x * 8 + 8, 8);
+		for(x = 0; x < 20; x++) {
+			copyTileLineArray(x, ty, tl, win_mode, screenMemory, ps + x * 8);
+		}
+	}
+	
+	/**
+	 * Sorts the sprites into the lines they cover.  Like the
+	 * real thing, only the first 10 sprites in OAM that cover
+	 * a line are shown on it.  On the GBC the one first in OAM
+	 * is on top, on the others the one furthest left is.
+	 */
+	void indexSprites() {
+		int s, top, line, n, i, x;
+		byte sprite;
+		for(line = 0; line < 144; line++) {
+			lineSpriteCount[line] = 0;
 		}
-		//System.arraycopy(getWinArray(20, ty, tl), 0, screenMemory, ps + 152 + isxo, 8);
+		for(s = 0; s < 40; s++) {
+			top = (oam[s * 4] & 0xFF) - 16;
+			for(line = Math.max(top, 0); line < top + obj_siz && line < 144; line++) {
+				n = lineSpriteCount[line];
+				if(n < 10) {
+					lineSprites[line * 10 + n] = (byte)s;
+					lineSpriteCount[line] = n + 1;
+				}
+			}
+		}
+		if(settings.system != PgbSettings.SYS_GBC) {
+			for(line = 0; line < 144; line++) {
+				n = lineSpriteCount[line];
+				// insertion sort on x, keeps OAM order for equal x
+				for(i = line * 10 + 1; i < line * 10 + n; i++) {
+					sprite = lineSprites[i];
+					x = oam[sprite * 4 + 1] & 0xFF;
+					s = i;
+					while(s > line * 10 && (oam[lineSprites[s - 1] * 4 + 1] & 0xFF) > x) {
+						lineSprites[s] = lineSprites[s - 1];
+						s--;
+					}
+					lineSprites[s] = sprite;
+				}
+			}
+		}
+		spritesDirty = false;
 	}
 	
 	void doObjLine(int line) {
-		byte[] ta;
-		int s, so, sx, sy, p, spx;
+		byte[] ta = tileLine;
+		int i, s, so, sx, sy, p, spx, tl;
 		byte sp, pal;
 		boolean sflipx, sflipy, shidden;
-		for(s = 39; s >= 0; s--) {
+		if(spritesDirty) {
+			indexSprites();
+		}
+		for(i = line * 10 + lineSpriteCount[line] - 1; i >= line * 10; i--) {
+			s = lineSprites[i];
 			so = s * 4;
 			sx = oam[so + 1] & 0xFF;
 			sy = oam[so] & 0xFF;
-			if((sx != 0 && sy != 0) && sy <= line + 16 && sy > line + (16 - obj_siz)) {
+			if(sx != 0) {
 				sflipx = (oam[so + 3] & 0x20) == 0x20;
 				sflipy = (oam[so + 3] & 0x40) == 0x40;
-				shidden = ((oam[so + 3] | getBackgroundAttr(sx - 8, line)) & 0x80) == 0x80;
-				if(PgbSettings.system == PgbSettings.SYS_GBC) {
+				shidden = (oam[so + 3] & 0x80) == 0x80;
+				if(settings.system == PgbSettings.SYS_GBC) {
+					shidden |= (getBackgroundAttr(sx - 8, line) & 0x80) == 0x80;
 					pal = (byte)(0x04 | ((oam[so + 3] & 0x07) << 3));
 				} else {
 					pal = (byte)(0x04 | ((oam[so + 3] & 0x10) >> 1));
 				}
-				ta = getTileLineArray((oam[so + 3] & 0x08) >> 3, oam[so + 2] & (obj_mode ? 0xFE : 0xFF), sflipy ? obj_siz - (line - sy + 17) : line - sy + 16, sflipx, pal);
+				tl = sflipy ? obj_siz - (line - sy + 17) : line - sy + 16;
+				copyTileLineArray(((oam[so + 3] & 0x08) >> 3) * 0x2000 + (oam[so + 2] & (obj_mode ? 0xFE : 0xFF)) * 16 + tl * 2, sflipx, pal, ta, 0);
 				for(p = 0; p < 8; p++) {
 					// grrr... transparency...
 					spx = sx - 8 + p;
@@ -154,7 +272,7 @@ public class PgbBasicVideo extends PgbVideo {
 	}
 	
 	void doSgbBorder() {
-		int x, y;
+		int x, y, l;
 		boolean vflip, hflip;
 		byte flags, pal;
 		for(y = 0; y < 28; y++) {
@@ -163,19 +281,13 @@ public class PgbBasicVideo extends PgbVideo {
 				vflip = (flags & 0x80) == 0x80;
 				hflip = (flags & 0x40) == 0x40;
 				pal = (byte)((flags & 0x1C) << 2);
-				System.arraycopy(getSgbBorderArray(x, y, 0, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8    ) * 256 , 8);
-				System.arraycopy(getSgbBorderArray(x, y, 1, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8 + 1) * 256 , 8);
-				System.arraycopy(getSgbBorderArray(x, y, 2, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8 + 2) * 256 , 8);
-				System.arraycopy(getSgbBorderArray(x, y, 3, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8 + 3) * 256 , 8);
-				System.arraycopy(getSgbBorderArray(x, y, 4, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8 + 4) * 256 , 8);
-				System.arraycopy(getSgbBorderArray(x, y, 5, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8 + 5) * 256 , 8);
-				System.arraycopy(getSgbBorderArray(x, y, 6, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8 + 6) * 256 , 8);
-				System.arraycopy(getSgbBorderArray(x, y, 7, vflip, hflip, pal), 0, borderPixels, x * 8 + (y * 8 + 7) * 256 , 8);
+				for(l = 0; l < 8; l++) {
+					copySgbBorderLine(x, y, l, vflip, hflip, pal, borderPixels, x * 8 + (y * 8 + l) * 256);
+				}
 			}
 		}
 	}
-	byte[] getSgbBorderArray(int tx, int ty, int tl, boolean vflip, boolean hflip, byte pal) {
-		byte[] ta = new byte[8];
+	void copySgbBorderLine(int tx, int ty, int tl, boolean vflip, boolean hflip, byte pal, byte[] dest, int dest_pos) {
 		byte td0, td1, td2, td3;
 		int ts;
 		if(vflip) {
@@ -187,25 +299,24 @@ public class PgbBasicVideo extends PgbVideo {
 		td2 = sgbCharset[ts + 16];
 		td3 = sgbCharset[ts + 17];
 		if(hflip) {
-			ta[7] = (byte)(pal | (td2 >> 5 & 4) | (td3 >> 4 & 8) | (td0 >> 7 & 1) | (td1 >> 6 & 2));
-			ta[6] = (byte)(pal | (td2 >> 4 & 4) | (td3 >> 3 & 8) | (td0 >> 6 & 1) | (td1 >> 5 & 2));
-			ta[5] = (byte)(pal | (td2 >> 3 & 4) | (td3 >> 2 & 8) | (td0 >> 5 & 1) | (td1 >> 4 & 2));
-			ta[4] = (byte)(pal | (td2 >> 2 & 4) | (td3 >> 1 & 8) | (td0 >> 4 & 1) | (td1 >> 3 & 2));
-			ta[3] = (byte)(pal | (td2 >> 1 & 4) | (td3      & 8) | (td0 >> 3 & 1) | (td1 >> 2 & 2));
-			ta[2] = (byte)(pal | (td2      & 4) | (td3 << 1 & 8) | (td0 >> 2 & 1) | (td1 >> 1 & 2));
-			ta[1] = (byte)(pal | (td2 << 1 & 4) | (td3 << 2 & 8) | (td0 >> 1 & 1) | (td1      & 2));
-			ta[0] = (byte)(pal | (td2 << 2 & 4) | (td3 << 3 & 8) | (td0      & 1) | (td1 << 1 & 2));
+			dest[dest_pos + 7] = (byte)(pal | (td2 >> 5 & 4) | (td3 >> 4 & 8) | (td0 >> 7 & 1) | (td1 >> 6 & 2));
+			dest[dest_pos + 6] = (byte)(pal | (td2 >> 4 & 4) | (td3 >> 3 & 8) | (td0 >> 6 & 1) | (td1 >> 5 & 2));
+			dest[dest_pos + 5] = (byte)(pal | (td2 >> 3 & 4) | (td3 >> 2 & 8) | (td0 >> 5 & 1) | (td1 >> 4 & 2));
+			dest[dest_pos + 4] = (byte)(pal | (td2 >> 2 & 4) | (td3 >> 1 & 8) | (td0 >> 4 & 1) | (td1 >> 3 & 2));
+			dest[dest_pos + 3] = (byte)(pal | (td2 >> 1 & 4) | (td3      & 8) | (td0 >> 3 & 1) | (td1 >> 2 & 2));
+			dest[dest_pos + 2] = (byte)(pal | (td2      & 4) | (td3 << 1 & 8) | (td0 >> 2 & 1) | (td1 >> 1 & 2));
+			dest[dest_pos + 1] = (byte)(pal | (td2 << 1 & 4) | (td3 << 2 & 8) | (td0 >> 1 & 1) | (td1      & 2));
+			dest[dest_pos] = (byte)(pal | (td2 << 2 & 4) | (td3 << 3 & 8) | (td0      & 1) | (td1 << 1 & 2));
 		} else {
-			ta[0] = (byte)(pal | (td2 >> 5 & 4) | (td3 >> 4 & 8) | (td0 >> 7 & 1) | (td1 >> 6 & 2));
-			ta[1] = (byte)(pal | (td2 >> 4 & 4) | (td3 >> 3 & 8) | (td0 >> 6 & 1) | (td1 >> 5 & 2));
-			ta[2] = (byte)(pal | (td2 >> 3 & 4) | (td3 >> 2 & 8) | (td0 >> 5 & 1) | (td1 >> 4 & 2));
-			ta[3] = (byte)(pal | (td2 >> 2 & 4) | (td3 >> 1 & 8) | (td0 >> 4 & 1) | (td1 >> 3 & 2));
-			ta[4] = (byte)(pal | (td2 >> 1 & 4) | (td3      & 8) | (td0 >> 3 & 1) | (td1 >> 2 & 2));
-			ta[5] = (byte)(pal | (td2      & 4) | (td3 << 1 & 8) | (td0 >> 2 & 1) | (td1 >> 1 & 2));
-			ta[6] = (byte)(pal | (td2 << 1 & 4) | (td3 << 2 & 8) | (td0 >> 1 & 1) | (td1      & 2));
-			ta[7] = (byte)(pal | (td2 << 2 & 4) | (td3 << 3 & 8) | (td0      & 1) | (td1 << 1 & 2));
+			dest[dest_pos] = (byte)(pal | (td2 >> 5 & 4) | (td3 >> 4 & 8) | (td0 >> 7 & 1) | (td1 >> 6 & 2));
+			dest[dest_pos + 1] = (byte)(pal | (td2 >> 4 & 4) | (td3 >> 3 & 8) | (td0 >> 6 & 1) | (td1 >> 5 & 2));
+			dest[dest_pos + 2] = (byte)(pal | (td2 >> 3 & 4) | (td3 >> 2 & 8) | (td0 >> 5 & 1) | (td1 >> 4 & 2));
+			dest[dest_pos + 3] = (byte)(pal | (td2 >> 2 & 4) | (td3 >> 1 & 8) | (td0 >> 4 & 1) | (td1 >> 3 & 2));
+			dest[dest_pos + 4] = (byte)(pal | (td2 >> 1 & 4) | (td3      & 8) | (td0 >> 3 & 1) | (td1 >> 2 & 2));
+			dest[dest_pos + 5] = (byte)(pal | (td2      & 4) | (td3 << 1 & 8) | (td0 >> 2 & 1) | (td1 >> 1 & 2));
+			dest[dest_pos + 6] = (byte)(pal | (td2 << 1 & 4) | (td3 << 2 & 8) | (td0 >> 1 & 1) | (td1      & 2));
+			dest[dest_pos + 7] = (byte)(pal | (td2 << 2 & 4) | (td3 << 3 & 8) | (td0      & 1) | (td1 << 1 & 2));
 		}
-		return ta;
 	}
 
 	/**
@@ -232,29 +343,9 @@ public class PgbBasicVideo extends PgbVideo {
 		return vram[(map_mode ? 0x3C00 : 0x3800) + (ty * 32) + tx];
 	}
 	
-	byte[] getTileLineArray(int tx, int ty, int tileline, boolean map_mode) {
-		int tilenum = getTile(tx, ty, map_mode);
-		if(PgbSettings.system == PgbSettings.SYS_GBC) {
-			int attribute = getAttr(tx, ty, map_mode);
-			return getTileLineArray((attribute & 0x08) >> 3, tilenum, (attribute & 0x40) == 0x40 ? (7 - tileline) : tileline, (attribute & 0x20) == 0x20, (byte)((attribute & 0x07) << 3));
-		} else {
-			return getTileLineArray(0, tilenum, tileline);
-		}
-	}
-	byte[] getTileLineArray(int bank, int tilenum, int tileline) {
-		byte[] tla = new byte[8];
-		copyTileLineArray((bank * 0x2000) + (tilenum * 16) + (tileline * 2), tla, 0);
-		return tla;
-	}
-	byte[] getTileLineArray(int bank, int tilenum, int tileline, boolean hflip, byte orwith) {
-		byte[] tla = new byte[8];
-		copyTileLineArray((bank * 0x2000) + (tilenum * 16) + (tileline * 2), hflip, orwith, tla, 0);
-		return tla;
-	}
-	
 	void copyTileLineArray(int tx, int ty, int tileline, boolean map_mode, byte[] dest, int dest_pos) {
 		int tilenum = getTile(tx, ty, map_mode);
-		if(PgbSettings.system == PgbSettings.SYS_GBC) {
+		if(settings.system == PgbSettings.SYS_GBC) {
 			int attribute = getAttr(tx, ty, map_mode);
 			copyTileLineArray(((attribute & 0x08) >> 3) * 0x2000 + tilenum * 16 + ((attribute & 0x40) == 0x40 ? (7 - tileline) : tileline) * 2, (attribute & 0x20) == 0x20, (byte)((attribute & 0x07) << 3), dest, dest_pos);
 		} else {
@@ -328,7 +419,7 @@ public class PgbBasicVideo extends PgbVideo {
 		super.setBgPal(pval);
 		int i, j;
 		// super gameboy
-		if(PgbSettings.system == PgbSettings.SYS_SGB) {
+		if(settings.system == PgbSettings.SYS_SGB) {
 			for(j = 0; j < 4; j++) {
 				for(i = 0; i < 4; i++) {
 					setScreenPalette(false, 0, j, i, sgbPalette[j * 8 + (pval >> (i * 2) & 3) * 2 + 1], sgbPalette[j * 8 + (pval >> (i * 2) & 3) * 2 + 0]);
@@ -337,9 +428,9 @@ public class PgbBasicVideo extends PgbVideo {
 			return;
 		}
 		// mono gameboy
-		if(PgbSettings.system == PgbSettings.SYS_GB || PgbSettings.system == PgbSettings.SYS_GBP) {
+		if(settings.system == PgbSettings.SYS_GB || settings.system == PgbSettings.SYS_GBP) {
 			for(i = 0; i < 4; i++) {
-				setScreenPalette(i, PgbSettings.bgcolors[pval >> (i * 2) & 3]);
+				setScreenPalette(i, settings.bgcolors[pval >> (i * 2) & 3]);
 			}
 		}
 	}
@@ -349,7 +440,7 @@ public class PgbBasicVideo extends PgbVideo {
 		int i, j;
 		objpal0 = pval;
 		// super gameboy
-		if(PgbSettings.system == PgbSettings.SYS_SGB) {
+		if(settings.system == PgbSettings.SYS_SGB) {
 			for(j = 0; j < 4; j++) {
 				for(i = 0; i < 4; i++) {
 					setScreenPalette(true, 0, j, i, sgbPalette[j * 8 + (pval >> (i * 2) & 3) * 2 + 1], sgbPalette[j * 8 + (pval >> (i * 2) & 3) * 2 + 0]);
@@ -358,9 +449,9 @@ public class PgbBasicVideo extends PgbVideo {
 			return;
 		}
 		// mono gameboy
-		if(PgbSettings.system == PgbSettings.SYS_GB || PgbSettings.system == PgbSettings.SYS_GBP) {
+		if(settings.system == PgbSettings.SYS_GB || settings.system == PgbSettings.SYS_GBP) {
 			for(i = 0; i < 4; i++) {
-				setScreenPalette(0x04 | i, PgbSettings.obj0colors[pval >> (i * 2) & 3]);
+				setScreenPalette(0x04 | i, settings.obj0colors[pval >> (i * 2) & 3]);
 			}
 		}
 	}
@@ -369,7 +460,7 @@ public class PgbBasicVideo extends PgbVideo {
 		super.setObjPal1(pval);
 		int i, j;
 		// super gameboy
-		if(PgbSettings.system == PgbSettings.SYS_SGB) {
+		if(settings.system == PgbSettings.SYS_SGB) {
 			for(j = 0; j < 4; j++) {
 				for(i = 0; i < 4; i++) {
 					setScreenPalette(true, 1, j, i, sgbPalette[j * 8 + (pval >> (i * 2) & 3) * 2 + 1], sgbPalette[j * 8 + (pval >> (i * 2) & 3) * 2 + 0]);
@@ -378,9 +469,9 @@ public class PgbBasicVideo extends PgbVideo {
 			return;
 		}
 		// mono gameboy
-		if(PgbSettings.system == PgbSettings.SYS_GB || PgbSettings.system == PgbSettings.SYS_GBP) {
+		if(settings.system == PgbSettings.SYS_GB || settings.system == PgbSettings.SYS_GBP) {
 			for(i = 0; i < 4; i++) {
-				setScreenPalette(0x0D | i, PgbSettings.obj1colors[pval >> (i * 2) & 3]);
+				setScreenPalette(0x0D | i, settings.obj1colors[pval >> (i * 2) & 3]);
 			}
 		}
 	}
@@ -429,7 +520,7 @@ public class PgbBasicVideo extends PgbVideo {
 	
 	int colorAdjust(int color) {
 		int red, green , blue;
-		if(PgbSettings.colormute) {
+		if(settings.colormute) {
 			red = color >> 16 & 0xFF;
 			green = color >> 8 & 0xFF;
 			blue = color & 0xFF;
@@ -455,17 +546,24 @@ public class PgbBasicVideo extends PgbVideo {
 		setObjPal1(objpal1);
 	}
 	public void sgbPictureTransfer() {
-		int i;
 		super.sgbPictureTransfer();
+		updateSgbBorder();
+		/*
+		borderColorModel = new IndexColorModel(8, 256, borderRPal, borderGPal, borderBPal, 0);
+		borderMISrc.newPixels(borderPixels, borderColorModel, 0, 256);
+		*/
+	}
+	/**
+	 * Sets the border palette from the SGB picture and redraws
+	 * the border.
+	 */
+	void updateSgbBorder() {
+		int i;
 		// duhhh... set the border screenPalette
 		for(i = 0; i < 64; i++) {
 			setBorderPalette(i + 64, getColor32(sgbPicture[2048 + i * 2 + 1], sgbPicture[2048 + i * 2 + 0]));
 		}
 		doSgbBorder();
-		/*
-		borderColorModel = new IndexColorModel(8, 256, borderRPal, borderGPal, borderBPal, 0);
-		borderMISrc.newPixels(borderPixels, borderColorModel, 0, 256);
-		*/
 	}
 	void setBorderPalette(int cindex, int color) {
 		borderPalette[cindex] = color;
@@ -0,0 +1,283 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * PgbBattery keeps a cart's battery ram in its .sav file.
+ *
+ * The emulator only copies the pages that changed and hands
+ * them over, the file is written on a thread shared by all
+ * carts, so the emulator never waits for the disk.  Only the
+ * changed pages are written.
+ *
+ * To survive a crash in the middle of that, the pages first go
+ * to a journal next to the .sav, with a checksum, and only
+ * then into the .sav itself.  A journal left over is finished
+ * the next time the battery is loaded, or thrown away if it
+ * was cut short, in which case the .sav was never touched.
+ * A .sav that has to be written whole goes to a new file that
+ * then replaces the old one.
+ */
+public final class PgbBattery {
+	/** the size of a page, as tracked by PgbCart */
+	public static final int	PAGE		= 0x100;
+
+	private static ExecutorService	writer;
+
+	private final File		file;
+	private final File		journal;
+	private final File		temp;
+	/** what the file has or is about to have, only used by the writer */
+	private final byte[]	saved;
+	/** write the whole file next time, not just the pages */
+	private boolean			whole;
+	private Future<?>		last;
+
+	/**
+	 * Loads ram from file, finishing a journal a crash left
+	 * behind.  What is not in the file is left as it is.
+	 */
+	public PgbBattery(File file, byte[] ram) {
+		this.file = file;
+		journal = new File(file.getPath() + ".journal");
+		temp = new File(file.getPath() + ".new");
+
+		if(file.exists()) {
+			try {
+				InputStream is = new FileInputStream(file);
+				try {
+					int count = 0, n;
+					while(count < ram.length && (n = is.read(ram, count, ram.length - count)) != -1) {
+						count += n;
+					}
+				} finally {
+					is.close();
+				}
+			} catch(IOException e) {
+				System.out.println("File read error:");
+				System.out.println(e.getMessage());
+			}
+		}
+		boolean finish = false;
+		if(journal.exists()) {
+			finish = readJournal(ram);
+			if(!finish) {
+				journal.delete();
+			}
+		}
+		saved = ram.clone();
+		// a missing .sav is only written once there is something to save
+		// the journal stays until the .sav has its pages
+		if(finish) {
+			System.out.println("Finishing the last battery save...");
+			whole = true;
+			last = getWriter().submit(new Runnable() {
+				public void run() {
+					save(new int[0], new byte[0][]);
+				}
+			});
+		}
+	}
+
+	/**
+	 * The thread all batteries are saved on.
+	 */
+	private static synchronized ExecutorService getWriter() {
+		if(writer == null) {
+			writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Pgb battery");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return writer;
+	}
+
+	/**
+	 * Copies the pages of ram marked in dirty and has them
+	 * saved.  Returns at once.
+	 */
+	public synchronized void write(byte[] ram, boolean[] dirty) {
+		int count = 0;
+		for(int i = 0; i < dirty.length; i++) {
+			if(dirty[i]) {
+				count++;
+			}
+		}
+		final int[] pages = new int[count];
+		final byte[][] data = new byte[count][];
+		count = 0;
+		for(int i = 0; i < dirty.length; i++) {
+			if(dirty[i]) {
+				pages[count] = i;
+				data[count] = new byte[PAGE];
+				System.arraycopy(ram, i * PAGE, data[count], 0, PAGE);
+				count++;
+			}
+		}
+		last = getWriter().submit(new Runnable() {
+			public void run() {
+				save(pages, data);
+			}
+		});
+	}
+
+	/**
+	 * Waits until everything written so far is in the file.
+	 */
+	public void sync() {
+		Future<?> f;
+		synchronized(this) {
+			f = last;
+		}
+		if(f == null) {
+			return;
+		}
+		try {
+			f.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException e) {
+			System.out.println(e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * On the writer: puts the pages in the file.
+	 */
+	private void save(int[] pages, byte[][] data) {
+		for(int i = 0; i < pages.length; i++) {
+			System.arraycopy(data[i], 0, saved, pages[i] * PAGE, PAGE);
+		}
+		try {
+			if(whole || !file.exists() || file.length() != saved.length) {
+				saveWhole();
+			} else {
+				savePages(pages, data);
+			}
+			whole = false;
+		} catch(IOException e) {
+			System.out.println("Saving ram to file... error!");
+			System.out.println(e.getMessage());
+			// don't know what made it to the file
+			whole = true;
+		}
+	}
+
+	private void saveWhole() throws IOException {
+		FileOutputStream os = new FileOutputStream(temp);
+		try {
+			os.write(saved);
+			os.getFD().sync();
+		} finally {
+			os.close();
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		// whatever a journal left over had is in the file now
+		journal.delete();
+	}
+
+	private void savePages(int[] pages, byte[][] data) throws IOException {
+		if(pages.length == 0) {
+			return;
+		}
+		// the journal: the number of pages, each page with its
+		// number, then the CRC of all that
+		CRC32 crc = new CRC32();
+		FileOutputStream fos = new FileOutputStream(journal);
+		try {
+			DataOutputStream os = new DataOutputStream(fos);
+			os.writeInt(pages.length);
+			for(int i = 0; i < pages.length; i++) {
+				os.writeInt(pages[i]);
+				os.write(data[i]);
+				crc.update(pages[i] >> 24);
+				crc.update(pages[i] >> 16);
+				crc.update(pages[i] >> 8);
+				crc.update(pages[i]);
+				crc.update(data[i]);
+			}
+			os.writeLong(crc.getValue());
+			os.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			for(int i = 0; i < pages.length; i++) {
+				raf.seek((long)pages[i] * PAGE);
+				raf.write(data[i]);
+			}
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+		journal.delete();
+	}
+
+	/**
+	 * Puts the pages of a complete journal into ram.  Returns
+	 * false if the journal was cut short or is damaged.
+	 */
+	private boolean readJournal(byte[] ram) {
+		try {
+			DataInputStream is = new DataInputStream(new FileInputStream(journal));
+			try {
+				int count = is.readInt();
+				if(count < 0 || (long)count * (4 + PAGE) + 12 != journal.length()) {
+					return false;
+				}
+				int[] pages = new int[count];
+				byte[][] data = new byte[count][PAGE];
+				CRC32 crc = new CRC32();
+				for(int i = 0; i < count; i++) {
+					pages[i] = is.readInt();
+					is.readFully(data[i]);
+					if(pages[i] < 0 || (pages[i] + 1) * PAGE > ram.length) {
+						return false;
+					}
+					crc.update(pages[i] >> 24);
+					crc.update(pages[i] >> 16);
+					crc.update(pages[i] >> 8);
+					crc.update(pages[i]);
+					crc.update(data[i]);
+				}
+				if(is.readLong() != crc.getValue()) {
+					return false;
+				}
+				for(int i = 0; i < count; i++) {
+					System.arraycopy(data[i], 0, ram, pages[i] * PAGE, PAGE);
+				}
+				return true;
+			} finally {
+				is.close();
+			}
+		} catch(IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,388 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PgbBenchmark runs the cpu core flat out on a small
+ * synthetic rom and reports how many emulated MHz one host
+ * core manages.  No window, no sound, no real cartridge
+ * needed.
+ *
+ * The rom switches the lcd off so nearly all of the time is
+ * spent in PgbCpu.exec(), then loops over the usual suspects:
+ * 8-bit loads, LDI, ADD, SLA, XOR, CP, JR, PUSH/POP and
+ * CALL/RET.
+ *
+ * The wram checksum is taken after a fixed number of
+ * cycles, so it should be identical between two cpu cores
+ * that are meant to behave the same.
+ *
+ * With more than one instance, each emulator gets its own
+ * thread and settings and they all run at once, to see how
+ * well that scales over the host's cores.  They all run the
+ * same rom, so matching checksums say little about whether
+ * they are isolated from each other, PgbIsolationCheck checks
+ * that.
+ *
+ * The render mode runs a second rom instead, which keeps the
+ * lcd on with background, window and 40 sprites and scrolls
+ * every frame.  It reports frames per second and how many
+ * bytes the emulator allocated per frame, which should be 0
+ * once it is warm.  Its checksum is taken over the screen.
+ * "render" uses PgbCachedVideo like the emulator does,
+ * "render-basic" uses PgbBasicVideo.
+ *
+ * The state mode runs the render rom too, but takes and loads
+ * save states over and over and reports how long each takes.
+ * It then runs a second of frames from a state twice and
+ * checks both runs end on the same screen.
+ *
+ * The rewind mode runs the render rom a frame at a time with
+ * PgbRewind capturing states as the emulator does, and reports
+ * what that costs per frame and how full the ring gets.  Then
+ * it steps all the way back.
+ *
+ * usage: PgbBenchmark [seconds] [interpreter|recompiler|render|render-basic|state|rewind] [instances]
+ */
+public final class PgbBenchmark implements Runnable {
+
+	private static final int[] PROGRAM = {
+		// 0100: DI / XOR A / LDH (40),A (lcd off)
+		0xF3, 0xAF, 0xE0, 0x40,
+		// 0104: LD SP,FFFE / LD HL,C000
+		0x31, 0xFE, 0xFF, 0x21, 0x00, 0xC0,
+		// 010A: LD B,00
+		0x06, 0x00,
+		// 010C: LD A,B / LDI (HL),A / ADD A,B / SLA A / XOR C / LD C,A
+		0x78, 0x22, 0x80, 0xCB, 0x27, 0xA9, 0x4F,
+		// 0113: LD A,H / CP D0 / JR NZ,+3 / LD HL,C000
+		0x7C, 0xFE, 0xD0, 0x20, 0x03, 0x21, 0x00, 0xC0,
+		// 011B: PUSH BC / POP BC / CALL 0130
+		0xC5, 0xC1, 0xCD, 0x30, 0x01,
+		// 0120: DEC B / JR NZ,010C / JR 010A
+		0x05, 0x20, 0xE9, 0x18, 0xE5
+	};
+
+	private static final int[] SUBROUTINE = {
+		// 0130: LDI A,(HL) / INC DE / RET
+		0x2A, 0x13, 0xC9
+	};
+
+	private static final int[] RENDER_PROGRAM = {
+		// 0100: DI / LD A,F3 / LDH (40),A (lcd, window, sprites on)
+		0xF3, 0x3E, 0xF3, 0xE0, 0x40,
+		// 0105: LD A,40 / LDH (4A),A / LD A,57 / LDH (4B),A (window at 50,64)
+		0x3E, 0x40, 0xE0, 0x4A, 0x3E, 0x57, 0xE0, 0x4B,
+		// 010D: LDH A,(43) / INC A / LDH (43),A / JR 010D (scroll)
+		0xF0, 0x43, 0x3C, 0xE0, 0x43, 0x18, 0xF9
+	};
+
+	private PgbSettings settings;
+	private PgbVideo video;
+	private PgbMemory mem;
+	private PgbCpu cpu;
+	private int seconds;
+	private boolean render;
+	private boolean state;
+	private PgbRewind rewind;
+
+	private int checksum;
+	private long cycles;
+	private long nanos;
+	private long frames;
+	private long allocated = -1;
+	private int stateSize;
+	private long saveNanos;
+	private long loadNanos;
+	private boolean replayMatches;
+	private long rewindNanos;
+	private int rewindStates;
+	private int rewindUsed;
+	private long stepNanos;
+
+	private PgbBenchmark(int seconds, String mode) {
+		this.seconds = seconds;
+		state = mode.equals("state");
+		render = mode.startsWith("render") || state || mode.equals("rewind");
+
+		settings = new PgbSettings();
+		settings.recompiler = mode.equals("recompiler");
+		if(mode.equals("rewind")) {
+			rewind = new PgbRewind(settings.rewindmemory << 20, settings.rewindframes);
+		}
+
+		video = mode.equals("render-basic") ? new PgbBasicVideo(settings) : new PgbCachedVideo(settings);
+		cpu = makeMachine(settings, video, render);
+		mem = cpu.mem;
+	}
+
+	/**
+	 * Builds a machine around video with the cpu rom, or the
+	 * render rom, in its cart, resets it and returns its cpu.
+	 * Nothing is drawn or played.  The JMH benchmarks in
+	 * src/jmh build theirs with this too.
+	 */
+	static PgbCpu makeMachine(PgbSettings settings, PgbVideo video, boolean render) {
+		PgbCart cart = new PgbCart();
+		cart.romdata = new byte[0x8000];
+		cart.ramdata = new byte[0x2000];
+		if(render) {
+			for(int i = 0; i < RENDER_PROGRAM.length; i++) {
+				cart.romdata[0x0100 + i] = (byte)RENDER_PROGRAM[i];
+			}
+		} else {
+			for(int i = 0; i < PROGRAM.length; i++) {
+				cart.romdata[0x0100 + i] = (byte)PROGRAM[i];
+			}
+			for(int i = 0; i < SUBROUTINE.length; i++) {
+				cart.romdata[0x0130 + i] = (byte)SUBROUTINE[i];
+			}
+		}
+
+		discardOutput(video);
+		PgbMemory mem = new PgbMemory(settings, cart, video, new PgbJoypad(settings), new PgbNetplay(settings));
+		PgbCpu cpu = new PgbCpu(mem);
+
+		video.reset();
+		cart.reset();
+		mem.reset();
+		cpu.reset();
+
+		if(render) {
+			// tiles, both maps and the sprites, all made up
+			for(int i = 0x8000; i < 0xA000; i++) {
+				mem.write(i, (byte)(i * 7 ^ i >> 5));
+			}
+			for(int i = 0; i < 40; i++) {
+				mem.write(0xFE00 + i * 4, (byte)(16 + i * 3));
+				mem.write(0xFE01 + i * 4, (byte)(8 + i * 4));
+				mem.write(0xFE02 + i * 4, (byte)i);
+				mem.write(0xFE03 + i * 4, (byte)(i << 4 & 0xF0));
+			}
+		}
+		return cpu;
+	}
+
+	/**
+	 * Attaches an output to video that throws every line
+	 * away, for running without a screen.
+	 */
+	static void discardOutput(PgbVideo video) {
+		new PgbVideoOutput(video) {
+			public void setGraphics() {
+			}
+			public void reset() {
+			}
+			public void hblank(int line) {
+			}
+			public void vblank() {
+			}
+			public void makeScreenshot() {
+			}
+		};
+	}
+
+	public void run() {
+		int slice = (int)(settings.clockspeed * 100000);
+
+		// warm up, so the jit has compiled exec() before we time it
+		for(int i = 0; i < 200; i++) {
+			cpu.exec(slice);
+		}
+
+		// the warm up always runs the same number of slices,
+		// so this is a good point to take the checksum
+		if(render) {
+			byte[] screen = video.getScreenMemory();
+			for(int i = 0; i < screen.length; i++) {
+				checksum = checksum * 31 + screen[i];
+			}
+		} else {
+			for(int i = 0xC000; i < 0xD000; i++) {
+				checksum = checksum * 31 + (mem.read(i) & 0xFF);
+			}
+		}
+
+		if(state) {
+			runStates();
+			return;
+		}
+
+		if(rewind != null) {
+			// a frame at a time, like the emulator, warmed up too
+			slice = PgbHost.FRAME_CYCLES;
+			for(int i = 0; i < 1000; i++) {
+				cpu.exec(slice);
+				rewind.frame(cpu);
+			}
+			while(rewind.stepBack(cpu)) {
+			}
+			rewind.clear();
+		}
+
+		long startframe = video.framecount;
+		long startalloc = allocatedBytes();
+		long start = System.nanoTime();
+		long stop = start + seconds * 1000000000L;
+		long now;
+		do {
+			cpu.exec(slice);
+			cycles += slice;
+			if(rewind != null) {
+				long before = System.nanoTime();
+				rewind.frame(cpu);
+				rewindNanos += System.nanoTime() - before;
+			}
+			now = System.nanoTime();
+		} while(now < stop);
+		nanos = now - start;
+		// before stepping back, which rolls the frame count back too
+		frames = video.framecount - startframe;
+		if(startalloc >= 0) {
+			allocated = allocatedBytes() - startalloc;
+		}
+		if(rewind != null) {
+			rewindStates = rewind.size();
+			rewindUsed = rewind.used();
+			long before = System.nanoTime();
+			while(rewind.stepBack(cpu)) {
+			}
+			if(rewindStates > 0) {
+				stepNanos = (System.nanoTime() - before) / rewindStates;
+			}
+		}
+	}
+
+	/**
+	 * Runs the same second twice from a save state and
+	 * compares the screens, then times saving and loading.
+	 */
+	private void runStates() {
+		int frame = PgbHost.FRAME_CYCLES;
+		stateSize = PgbState.size(cpu);
+		ByteBuffer buf = ByteBuffer.allocate(stateSize);
+
+		// before the timing, which runs however many frames fit
+		PgbState.save(cpu, buf);
+		int first = runAndSum(frame);
+		buf.flip();
+		PgbState.load(cpu, buf);
+		replayMatches = runAndSum(frame) == first;
+		checksum = first;
+
+		long stop = System.nanoTime() + seconds * 1000000000L;
+		long count = 0;
+		do {
+			buf.clear();
+			long start = System.nanoTime();
+			PgbState.save(cpu, buf);
+			long middle = System.nanoTime();
+			buf.flip();
+			PgbState.load(cpu, buf);
+			loadNanos += System.nanoTime() - middle;
+			saveNanos += middle - start;
+			// keep the machine moving, so the jit sees real states
+			cpu.exec(frame);
+			count++;
+		} while(System.nanoTime() < stop);
+		saveNanos /= count;
+		loadNanos /= count;
+	}
+
+	private int runAndSum(int frame) {
+		for(int i = 0; i < 60; i++) {
+			cpu.exec(frame);
+		}
+		int sum = 0;
+		byte[] screen = video.getScreenMemory();
+		for(int i = 0; i < screen.length; i++) {
+			sum = sum * 31 + screen[i];
+		}
+		for(int i = 0xC000; i < 0xE000; i++) {
+			sum = sum * 31 + mem.read(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Bytes allocated by this thread so far, or -1 if the vm
+	 * can't tell.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int seconds = 10;
+		if(args.length > 0) {
+			seconds = Integer.parseInt(args[0]);
+		}
+		String mode = args.length > 1 ? args[1] : "interpreter";
+		int instances = 1;
+		if(args.length > 2) {
+			instances = Integer.parseInt(args[2]);
+		}
+
+		PgbBenchmark[] benchmarks = new PgbBenchmark[instances];
+		Thread[] threads = new Thread[instances];
+		for(int i = 0; i < instances; i++) {
+			benchmarks[i] = new PgbBenchmark(seconds, mode);
+			threads[i] = new Thread(benchmarks[i], "Pgb benchmark " + i);
+		}
+		for(int i = 0; i < instances; i++) {
+			threads[i].start();
+		}
+		for(int i = 0; i < instances; i++) {
+			threads[i].join();
+		}
+
+		long cycles = 0;
+		long nanos = 0;
+		long frames = 0;
+		long allocated = 0;
+		boolean match = true;
+		for(int i = 0; i < instances; i++) {
+			cycles += benchmarks[i].cycles;
+			nanos = Math.max(nanos, benchmarks[i].nanos);
+			frames += benchmarks[i].frames;
+			allocated += benchmarks[i].allocated;
+			match &= benchmarks[i].checksum == benchmarks[0].checksum;
+		}
+		double mhz = cycles / (nanos / 1000000000.0) / 1000000.0;
+		int cores = Math.min(instances, Runtime.getRuntime().availableProcessors());
+
+		System.out.println("mode: " + mode);
+		System.out.println("instances: " + instances);
+		if(benchmarks[0].state) {
+			System.out.println("state size: " + benchmarks[0].stateSize + " bytes");
+			System.out.println("save: " + benchmarks[0].saveNanos / 1000.0 + " us");
+			System.out.println("load: " + benchmarks[0].loadNanos / 1000.0 + " us");
+			System.out.println("replay from state: " + (benchmarks[0].replayMatches ? "identical" : "DIFFERS!"));
+			System.out.println("screen checksum: " + Integer.toHexString(benchmarks[0].checksum) + (match ? "" : " (instances differ!)"));
+			return;
+		}
+		System.out.println("emulated cycles: " + cycles);
+		System.out.println("emulated MHz per host core: " + Math.round(mhz / cores * 100) / 100.0);
+		System.out.println("realtime factor: " + Math.round(mhz / 4.194304 * 100) / 100.0 + "x");
+		if(benchmarks[0].rewind != null) {
+			PgbBenchmark b = benchmarks[0];
+			System.out.println("rewind capture per frame: " + Math.round((double)b.rewindNanos / b.frames / 100) / 10.0 + " us, "
+				+ Math.round(b.rewindNanos * 1000.0 / (b.nanos - b.rewindNanos)) / 10.0 + "% of emulation time");
+			System.out.println("rewind states held: " + b.rewindStates + ", " + b.rewindUsed / 1024 + " of " + b.settings.rewindmemory * 1024 + " KB");
+			System.out.println("rewind step back: " + b.stepNanos / 1000.0 + " us");
+		}
+		if(benchmarks[0].render) {
+			System.out.println("frames per second: " + Math.round(frames / (nanos / 1000000000.0) * 10) / 10.0);
+			if(benchmarks[0].allocated >= 0) {
+				System.out.println("bytes allocated per frame: " + Math.round((double)allocated / frames * 10) / 10.0);
+			}
+			System.out.println("screen checksum: " + Integer.toHexString(benchmarks[0].checksum) + (match ? "" : " (instances differ!)"));
+		} else {
+			System.out.println("wram checksum: " + Integer.toHexString(benchmarks[0].checksum) + (match ? "" : " (instances differ!)"));
+		}
+	}
+}
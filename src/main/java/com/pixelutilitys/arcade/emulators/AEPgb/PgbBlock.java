@@ -0,0 +1,19 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+/**
+ * A run of straight-line opcodes that PgbRecompiler has
+ * turned into JVM bytecode.  The subclasses are generated at
+ * runtime, one per block.
+ */
+public abstract class PgbBlock {
+	/** cycles used when the block runs through to its end */
+	public int			cycles;
+
+	/**
+	 * Executes the block and returns the number of cycles it
+	 * used.  PC is left at the next opcode to execute.  That
+	 * is before the end of the block if a write may have
+	 * switched rom banks or hit an i/o register.
+	 */
+	public abstract int run(PgbCpu cpu, PgbMemory mem);
+}
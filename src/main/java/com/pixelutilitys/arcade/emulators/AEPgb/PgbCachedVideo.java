@@ -5,57 +5,141 @@ package com.pixelutilitys.arcade.emulators.AEPgb;
  * Copyright (C) 2000-2001 Ben Mazur
  */
 
+import java.nio.ByteBuffer;
+
 /**
- * PgbCachedIndexedVideo is a subclass of PgbIndexedVideo
- * that keeps copies of the tiles, background maps and
- * sprites cached.
+ * PgbCachedVideo is a subclass of PgbBasicVideo that keeps
+ * the tiles and both background maps decoded.
  * 
  * It should be faster in most circumstances, as it does not
  * go back to the memory every time a tile is accessed.
  * Particularly, it does not have to blend the two display 
  * bytes together for each line in the tile.
+ * 
+ * VRAM writes only mark tiles and map entries dirty.  The
+ * caches are brought up to date just before a line is drawn,
+ * so a frame that isn't drawn costs nothing, and a tile that
+ * is written 16 times is decoded once.  On the GBC the maps
+ * are drawn with the attribute bytes from VRAM bank 1, so
+ * palettes, flips and tiles from either bank all come from
+ * the cache too.
  */
 public class PgbCachedVideo extends PgbBasicVideo {
 	
 	// here's the memory
 	byte[][][][]	tiles;
 	byte[][][]		map;
-	byte[][][]		sprites;
-	int				lastTile;
 	
-	public PgbCachedVideo() {
+	// what has been written since the caches were updated
+	boolean[][]		tileDirty;
+	boolean[]		mapDirty;
+	boolean			tilesDirty;
+	boolean			mapsDirty;
+	
+	public PgbCachedVideo(PgbSettings settings) {
+		super(settings);
 		tiles = new byte[2][384][8][8]; // [bank][num][y][x]
 		map = new byte[4][256][256];  // map, y, x
-		sprites = new byte[40][16][8];
+		tileDirty = new boolean[2][384];
+		mapDirty = new boolean[0x800];
+	}
+	
+	public void reset() {
+		super.reset();
+		invalidate();
+	}
+	
+	public void loadState(ByteBuffer buf) {
+		super.loadState(buf);
+		invalidate();
+	}
+	
+	/**
+	 * Marks every tile and map entry dirty, for when VRAM or
+	 * the system type has changed behind our back.
+	 */
+	public void invalidate() {
+		for(int i = 0; i < 384; i++) {
+			tileDirty[0][i] = true;
+			tileDirty[1][i] = true;
+		}
+		for(int i = 0; i < 0x800; i++) {
+			mapDirty[i] = true;
+		}
+		tilesDirty = true;
+		mapsDirty = true;
 	}
 	
 	/**
 	 * the heart of the operation.  monitors VRAM writes
-	 * and updates the appropriate caches
+	 * and marks the caches they touch
 	 */
 	public void write(int address, byte towrite) {
 		super.write(address, towrite);
-		// tile storage
+		// tile storage, in the current bank
 		if(address >= 0x8000 && address < 0x9800) {
-			// this updates tiles in almost all circumstances
-			checkTile(address);
+			tileDirty[gbcVram & 0x01][(address - 0x8000) >> 4] = true;
+			tilesDirty = true;
+		}
+		// tile maps at 9800 and 9C00, tile numbers in bank 0
+		// and GBC attributes in bank 1
+		else if(address >= 0x9800 && address < 0xA000) {
+			mapDirty[address - 0x9800] = true;
+			mapsDirty = true;
+		}
+	}
+	
+	public void hblank() {
+		if((tilesDirty || mapsDirty) && lcd_on && drawing) {
+			long start = System.nanoTime();
+			flush();
+			renderNanos += System.nanoTime() - start;
+		}
+		super.hblank();
+	}
+	
+	/**
+	 * Decodes the dirty tiles, then redraws the map entries
+	 * that were written or that show one of those tiles.
+	 */
+	void flush() {
+		int bank, i, x, y, tilenum, unsigned, signed;
+		boolean gbc = settings.system == PgbSettings.SYS_GBC;
+		if(tilesDirty) {
+			for(bank = 0; bank < 2; bank++) {
+				for(i = 0; i < 384; i++) {
+					if(tileDirty[bank][i]) {
+						doTile(i, bank);
+					}
+				}
+			}
 		}
-		// tile map at 9800
-		else if(address >= 0x9800 && address < 0x9C00) {
-			updateMap(0, (address - 0x9800) & 0x1F, (address - 0x9800) >> 5, vram[address - 0x8000] + 256);
-			updateMap(1, (address - 0x9800) & 0x1F, (address - 0x9800) >> 5, vram[address - 0x8000] & 0xFF);
+		for(i = 0; i < 0x800; i++) {
+			if(!tilesDirty && !mapDirty[i]) {
+				continue;
+			}
+			tilenum = vram[0x1800 + i];
+			unsigned = tilenum & 0xFF;
+			signed = tilenum + 256;
+			bank = gbc ? vram[0x3800 + i] >> 3 & 0x01 : 0;
+			x = i & 0x1F;
+			y = i >> 5 & 0x1F;
+			if(mapDirty[i] || tileDirty[bank][signed]) {
+				updateMap((i >> 9 & 0x02), x, y, signed);
+			}
+			if(mapDirty[i] || tileDirty[bank][unsigned]) {
+				updateMap((i >> 9 & 0x02) + 1, x, y, unsigned);
+			}
+			mapDirty[i] = false;
 		}
-		// tile map at 9C00
-		else if(address >= 0x9C00 && address < 0xA000) {
-			updateMap(2, (address - 0x9C00) & 0x1F, (address - 0x9C00) >> 5, vram[address - 0x8000] + 256);
-			updateMap(3, (address - 0x9C00) & 0x1F, (address - 0x9C00) >> 5, vram[address - 0x8000] & 0xFF);
-	    }
-		// OAM
-		else if(address >= 0xFE00 && address < 0xFEA0) {
-			if((address & 0x02) == 0x02) {
-				updateObj((address - 0xFE00) >> 2);
+		if(tilesDirty) {
+			for(i = 0; i < 384; i++) {
+				tileDirty[0][i] = false;
+				tileDirty[1][i] = false;
 			}
 		}
+		tilesDirty = false;
+		mapsDirty = false;
 	}
 	
 	/**
@@ -99,26 +183,49 @@ public class PgbCachedVideo extends PgbBasicVideo {
 	}
 	
 	/**
-	 * override to draw from cache
+	 * override to draw from the tile cache
 	 */
 	void doObjLine(int line) {
-		int s, so, sx, sy;
-		for(s = 39; s >= 0; s--) {
+		int i, s, so, sx, sy, row, tnum, bank, p, spx;
+		byte attr, pal, sp;
+		byte[] ssrc;
+		boolean gbc, hflip, shidden;
+		if(spritesDirty) {
+			indexSprites();
+		}
+		gbc = settings.system == PgbSettings.SYS_GBC;
+		for(i = line * 10 + lineSpriteCount[line] - 1; i >= line * 10; i--) {
+			s = lineSprites[i];
 			so = s * 4;
 			sx = oam[so + 1] & 0xFF;
 			sy = oam[so] & 0xFF;
-			if((sx > 0 && sy > 0) && sy <= line + 16 && sy > line + (16 - obj_siz)) {
+			if(sx > 0) {
+				attr = oam[so + 3];
+				row = line - sy + 16;
+				if((attr & 0x40) == 0x40) {
+					row = obj_siz - 1 - row;
+				}
+				// the lower half of a 8x16 sprite is the next tile
+				tnum = (oam[so + 2] & (obj_mode ? 0xFE : 0xFF)) + (row >> 3);
+				if(gbc) {
+					bank = attr >> 3 & 0x01;
+					pal = (byte)((attr << 3 & 0x38) | 0x04);
+				} else {
+					bank = 0;
+					pal = (byte)((attr >> 1 & 0x08) | 0x04);
+				}
+				hflip = (attr & 0x20) == 0x20;
+				shidden = (attr & 0x80) == 0x80;
+				ssrc = tiles[bank][tnum][row & 0x07];
 				// draw
-				boolean shidden = (oam[so + 3] & 0x80) == 0x80;
-				byte[] ssrc = sprites[s][line - sy + 16];
-				for(int p = 0; p < 8; p++) {
+				for(p = 0; p < 8; p++) {
 					// grrr... transparency...
-					int spx = sx - 8 + p;
-					byte sp = ssrc[p];
-					if((sp & 0x03) > 0  && spx < 160 && spx >= 0 
-					   && (!(shidden || (getBackgroundAttr(spx, line) & 0x80) == 0x80) 
+					spx = sx - 8 + p;
+					sp = ssrc[hflip ? 7 - p : p];
+					if(sp != 0 && spx < 160 && spx >= 0 
+					   && (!(shidden || gbc && (getBackgroundAttr(spx, line) & 0x80) == 0x80) 
 						   || ((screenMemory[line * 160 + spx] & 0x03) == 0))) {
-						screenMemory[line * 160 + spx] = sp;
+						screenMemory[line * 160 + spx] = (byte)(pal | sp);
 					}
 				}
 			}
@@ -130,7 +237,7 @@ public class PgbCachedVideo extends PgbBasicVideo {
 	 */
 	void updateMap(int which, int x, int y, int tilenum) {
 		// draw the tile on the map
-		if(PgbSettings.system == PgbSettings.SYS_GBC) {
+		if(settings.system == PgbSettings.SYS_GBC) {
 			// stupid GBC tile routine
 			int i, mx, my, ty;
 			int attribute = getAttr(x, y, (which & 2) == 2);//(which & 2) == 2 ? vram[0x3C00 + x + y * 32] : vram[0x3800 + x + y * 32];
@@ -177,68 +284,6 @@ public class PgbCachedVideo extends PgbBasicVideo {
 		}
 	}
 	
-	/**
-	 * updates the specified sprite cache
-	 */
-	public void updateObj(int onum) {
-		int tnum = oam[(onum << 2) + 2] & (obj_mode ? 0xFE : 0xFF);
-		byte attr = oam[(onum << 2) + 3];
-		int bank;
-		byte pal;
-		if(PgbSettings.system == PgbSettings.SYS_GBC) {
-			bank = attr >> 3 & 0x01;
-			pal = (byte)((attr << 3 & 0x38) | 0x04);
-		} else {
-			bank = 0;
-			pal = (byte)((attr >> 1 & 0x08) | 0x04);
-		}
-		boolean vflip = (attr & 0x40) == 0x40;
-		boolean hflip = (attr & 0x20) == 0x20;
-		int ts = (tnum * 16) + (0x2000 * bank);
-		for(int y = 0; y < obj_siz; y++) {
-			int ty = vflip ? obj_siz - y - 1 : y;
-			copyTileLineArray(ts + ty * 2, hflip, pal, sprites[onum][y], 0);
-		}
-		/*
-		tnum += vflip ? 1 : 0;
-		for(int y = 0; y < 8; y++) {
-			int ty = vflip ? 7 - y : y;
-			for(int x = 0; x < 8; x++) {
-				int tx = hflip ? 7 - x : x;
-				sprites[onum][y][x] = (byte)(pal | tiles[bank][tnum][ty][tx]);
-			}
-		}
-		if(obj_mode) {
-			tnum += vflip ? -1 : 1;
-			for(int y = 8; y < 16; y++) {
-				int ty = vflip ? 15 - y : y - 8;
-				for(int x = 0; x < 8; x++) {
-					int tx = hflip ? 7 - x : x;
-					sprites[onum][y][x] = (byte)(pal | tiles[bank][tnum][ty][tx]);
-				}
-			}
-		}
-		*/
-	}
-	
-	/**
-	 * check if we need to redraw this tile
-	 * this isn't exactly perfect, but it'll do.
-	 */
-	void checkTile(int address) {
-		int tilenum = (address - 0x8000) / 16;
-		if((address & 0x0F) == 0x0F) {
-			// if it's the last byte of a tile
-			doTile(tilenum, gbcVram & 0x01);
-		} else {
-			// if they've left one off in the middle
-			if(tilenum != lastTile) {
-				doTile(lastTile, gbcVram & 0x01);
-			}
-		}
-		lastTile = tilenum;
-	}
-	
 	/**
 	 * updates the tile cache
 	 */
@@ -252,40 +297,5 @@ public class PgbCachedVideo extends PgbBasicVideo {
 		copyTileLineArray(ts + 10, tiles[bank][tilenum][5], 0);
 		copyTileLineArray(ts + 12, tiles[bank][tilenum][6], 0);
 		copyTileLineArray(ts + 14, tiles[bank][tilenum][7], 0);
-
-		scanUpdateTile(tilenum);
-	}
-	
-	/**
-	 * Scans the screen maps and updates a tile when tile
-	 * data is changed.  
-	 * 
-	 * This is sort of the weakness of the tile/map caching 
-	 * scheme -- whenever a tile is changed, you must then
-	 * update all instances of the tile in the map.  This
-	 * makes it pretty easy, tho.
-	 */
-	void scanUpdateTile(int tilenum) {
-		byte tn = (byte)(tilenum);
-		for(int i = 0x1800; i < 0x1C00; i++) {
-			if(vram[i] == tn) {
-				if(tilenum > 127) {
-					updateMap(0, (i - 0x1800) & 0x1F, (i - 0x1800) >> 5, tilenum);
-				}
-				if(tilenum < 256) {
-					updateMap(1, (i - 0x1800) & 0x1F, (i - 0x1800) >> 5, tilenum);
-				}
-			}
-		}
-		for(int i = 0x1C00; i < 0x2000; i++) {
-			if(vram[i] == tn) {
-				if(tilenum > 127) {
-					updateMap(2, (i - 0x1C00) & 0x1F, (i - 0x1C00) >> 5, tilenum);
-				}
-				if(tilenum < 256) {
-					updateMap(3, (i - 0x1C00) & 0x1F, (i - 0x1C00) >> 5, tilenum);
-				}
-			}
-		}
 	}
 }
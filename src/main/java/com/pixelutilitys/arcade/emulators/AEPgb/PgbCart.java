@@ -9,12 +9,12 @@ import java.applet.Applet;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -40,9 +40,15 @@ public final class PgbCart implements FilenameFilter {
 	private static final int	CLOCK_DAYL	= 0x0B;
 	private static final int	CLOCK_DAYH	= 0x0C;
 	
+	/** may be shared with other carts, see PgbRomCache */
 	public byte[]				romdata;
 	public byte[]				ramdata;
 	
+	/** the battery ram pages written since the last flushBattery(), null without a battery */
+	private boolean[]			ramdirty;
+	private boolean				ramchanged;
+	private PgbBattery			battery;
+	
 	//public int					currom;
 	//public int					curram;
 	public int					romoffset;
@@ -65,6 +71,45 @@ public final class PgbCart implements FilenameFilter {
 		mbc3clockenabled = false;
 	}
 	
+	/**
+	 * Writes the bank state and the cart ram for a save
+	 * state.  The rom itself is not saved, AEPgb.loadState()
+	 * checks it is the same one by getChecksum().
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.putInt(romoffset).putInt(ramoffset);
+		buf.put((byte)((mbc1mode ? 1 : 0) | (mbc1ramenabled ? 2 : 0) | (mbc3clockenabled ? 4 : 0)));
+		buf.putLong(mbc3time).putInt(mbc3reg);
+		buf.put(ramdata);
+	}
+	
+	public void loadState(ByteBuffer buf) {
+		romoffset = buf.getInt();
+		ramoffset = buf.getInt();
+		int flags = buf.get();
+		mbc1mode = (flags & 1) != 0;
+		mbc1ramenabled = (flags & 2) != 0;
+		mbc3clockenabled = (flags & 4) != 0;
+		mbc3time = buf.getLong();
+		mbc3reg = buf.getInt();
+		buf.get(ramdata);
+		if(ramdirty != null) {
+			Arrays.fill(ramdirty, true);
+			ramchanged = true;
+		}
+	}
+	
+	public int stateSize() {
+		return 21 + ramdata.length;
+	}
+	
+	/**
+	 * The header and global checksums, to tell roms apart.
+	 */
+	public int getChecksum() {
+		return (romdata[0x014D] & 0xFF) << 16 | (romdata[0x014E] & 0xFF) << 8 | (romdata[0x014F] & 0xFF);
+	}
+	
 	public final byte read(int address) {
 		// ROM bank 0
 		if(address < 0x4000) {
@@ -168,7 +213,12 @@ public final class PgbCart implements FilenameFilter {
 		// cart RAM
 		if(address < 0xC000 && address >= 0xA000) {
 			if(mbc1ramenabled) {
-				ramdata[address + ramoffset] = (byte)towrite;
+				int index = address + ramoffset;
+				ramdata[index] = (byte)towrite;
+				if(ramdirty != null) {
+					ramdirty[index / PgbBattery.PAGE] = true;
+					ramchanged = true;
+				}
 			} else {
 				//System.out.println("attempted to write to disabled RAM");
 			}
@@ -177,6 +227,16 @@ public final class PgbCart implements FilenameFilter {
 		System.out.println("Write to unmapped cart memory:" + Integer.toHexString(address) + ", " + Integer.toHexString(towrite)); 
 	}
 	
+	/**
+	 * Can writes to the cart ram page at address go straight
+	 * to ramdata?  Only once it is dirty, until then they have
+	 * to come through write() to mark it.
+	 */
+	public boolean isRamDirty(int address) {
+		int page = (address + ramoffset) / PgbBattery.PAGE;
+		return ramdirty == null || page < 0 || page >= ramdirty.length || ramdirty[page];
+	}
+	
 	public boolean loaded() {
 		return romdata != null && romdata.length > 0;
 	}
@@ -333,9 +393,11 @@ public final class PgbCart implements FilenameFilter {
 		File romfile;
 		
 		romfile = new File(filename);
-		romdata = new byte[(int)romfile.length()];
 		
 		System.out.println("\nLoading cart '" + romfile.getName() + "', size:" + romfile.length() + "...");
+		if(loadCached(romfile)) {
+			return;
+		}
 		try {
 			is = new FileInputStream(romfile);
 		} catch(FileNotFoundException e) {
@@ -344,7 +406,9 @@ public final class PgbCart implements FilenameFilter {
 			romdata = new byte[0x8000];
 			return;
 		}
-		loadCart(is, (int)romfile.length());
+		if(loadCart(is, (int)romfile.length())) {
+			romdata = PgbRomCache.put(romfile, romdata);
+		}
 	}
 	
 	/**
@@ -358,6 +422,9 @@ public final class PgbCart implements FilenameFilter {
 		
 		romfile = new File(filename);
 		System.out.println("\nLoading zip file '" + romfile.getName() + "'...");
+		if(loadCached(romfile)) {
+			return true;
+		}
 		try {
 			zis = new ZipInputStream(new FileInputStream(romfile));
 			while((ze = zis.getNextEntry()) != null) {  // or until out of files
@@ -366,7 +433,9 @@ public final class PgbCart implements FilenameFilter {
 					break;
 				}
 			}
-			loadCart(zis, (int) ze.getSize());
+			if(loadCart(zis, (int) ze.getSize())) {
+				romdata = PgbRomCache.put(romfile, romdata);
+			}
 			return true;
  		} catch(Exception ex) {
 			System.out.println("File not found!");
@@ -377,9 +446,26 @@ public final class PgbCart implements FilenameFilter {
 	}
 	
 	/**
-	 * loads a cartridge from the InputStream it is given
+	 * Takes the rom from PgbRomCache if another cart has
+	 * already loaded this file.
 	 */
-	public void loadCart(InputStream is, int length) {
+	private boolean loadCached(File romfile) {
+		byte[] rom = PgbRomCache.get(romfile);
+		if(rom == null) {
+			return false;
+		}
+		romdata = rom;
+		System.out.println("Sharing the rom already loaded.");
+		printHeader();
+		return true;
+	}
+	
+	/**
+	 * loads a cartridge from the InputStream it is given,
+	 * returns whether all of it could be read
+	 */
+	public boolean loadCart(InputStream is, int length) {
+		boolean ok = true;
 		try {
 			romdata = new byte[length];
  			int nRead, count = 0;
@@ -387,12 +473,19 @@ public final class PgbCart implements FilenameFilter {
  				count += nRead;
  				length -= nRead;
  			}
+			ok = length == 0;
 			
  			is.close();
 		} catch(Exception e) {
 			System.out.println("File read error:");
 			System.out.println(e.getMessage());
+			ok = false;
 		}
+		printHeader();
+		return ok;
+	}
+	
+	private void printHeader() {
 		System.out.println("rom byte: " + Integer.toHexString(romdata[0x0148]) + ", banks: " + getRomBanks());
 		System.out.println("ram byte: " + Integer.toHexString(romdata[0x0149]) + ", banks: " + getRamBanks());
 		System.out.println("type byte: " + Integer.toHexString(romdata[0x0147]) + " (" + getTypeString() + ")" + ", SGB features: " + Integer.toHexString(romdata[0x146] & 0xFF) + " (" + getSgb() + "), GBC features: " + Integer.toHexString(romdata[0x143] & 0xFF) + " (" + getGbc() + ")");
@@ -400,37 +493,21 @@ public final class PgbCart implements FilenameFilter {
 	
 	/**
 	 * if there are any RAM banks, this allocates memory
-	 * for them and tries to load saved RAM from disk
+	 * for them and tries to load saved RAM from disk.
+	 * From then on the RAM is saved by flushBattery().
 	 */
 	public void loadBattery(String filename) {
-		InputStream is;
-		File ramfile;
-		String ramdesc;
 		// create & load ram
 		if(getRamBanks() > 0) {
 			ramdata = new byte[0x2000 * getRamBanks()];
-			ramfile = new File(filename);
-			ramdesc = "Looking for battery save... ";
-
-			try {
-				if(ramfile.exists()) {
-					ramdesc += "loading... ";
-					is = new FileInputStream(ramfile);
-					
-					loadBattery(is);
-					
-					ramdesc += "done.";
-				} else {
-					ramdesc += "not found.";
-				}
-			} catch(Exception e) {
-				System.out.println(e.getMessage());
-			}
-			// print some ram info
-			// System.out.println("ramdesc: "+ramdesc);
+			battery = new PgbBattery(new File(filename), ramdata);
+			ramdirty = new boolean[ramdata.length / PgbBattery.PAGE];
 		} else {
 			ramdata = new byte[0x2000];
+			battery = null;
+			ramdirty = null;
 		}
+		ramchanged = false;
 	}
 	
 	/**
@@ -447,31 +524,38 @@ public final class PgbCart implements FilenameFilter {
 	}
 	
 	/**
-	 * if there is any battery-backed save RAM allocated, this
-	 * saves it to the disk, in the save directory specified
-	 * in the settings
+	 * Hands the battery RAM pages written since the last time
+	 * to the battery, which saves them in the background.
+	 * Returns whether there were any; they are clean again, so
+	 * the memory map has to be redone.  Called every so often
+	 * by the emulator thread.
+	 */
+	public boolean flushBattery() {
+		if(battery == null || !ramchanged) {
+			return false;
+		}
+		battery.write(ramdata, ramdirty);
+		Arrays.fill(ramdirty, false);
+		ramchanged = false;
+		return true;
+	}
+	
+	/**
+	 * Saves whatever battery RAM hasn't been saved yet and
+	 * waits until it is on disk, for shutting down or loading
+	 * another cart.  The file is the one loadBattery() read,
+	 * next to romfilename.
 	 */
 	public void saveBattery(String romfilename) {
-		if(!loaded() || getRamBanks() == 0) {
+		if(!loaded() || battery == null) {
 			return;
 		}
-		OutputStream os;
-		File ramfile;
-		
-		ramfile = new File(romfilename.substring(0, romfilename.lastIndexOf('.')) + ".sav");
-		
-		try {
-			
-			os = new FileOutputStream(ramfile);
-			os.write(ramdata);
-			
-			os.close();
-			
-			System.out.println("Saving ram to file... done.");
-		} catch(Exception e) {
-			System.out.println("Saving ram to file... error!");
-			System.out.println(e.getMessage());
+		// the pages stay dirty, this may not be the emulator thread
+		if(ramchanged) {
+			battery.write(ramdata, ramdirty);
 		}
+		battery.sync();
+		System.out.println("Saving ram to file... done.");
 	}
 	
 	/**
@@ -6,6 +6,8 @@ package com.pixelutilitys.arcade.emulators.AEPgb;
  * modified by retroK, XTale and baka0815 2004 http://aepgb.aep-emu.de/
  */
 
+import java.nio.ByteBuffer;
+
 /**
  * PgbCpu keeps the state of the CPU registers and executes
  * the current opcode.
@@ -13,6 +15,16 @@ package com.pixelutilitys.arcade.emulators.AEPgb;
  * It is a closed-box type of architecture for performance
  * purposes.  Sorry for all the private final methods...
  * 
+ * The registers are kept as plain int fields rather than
+ * register objects, so that the opcode switch never has to
+ * go through an interface call.  A, F, B, C, D and E are
+ * stored as single bytes, HL, SP and PC as words, since
+ * those are almost always used as addresses.
+ * 
+ * The registers and the helpers the opcodes are built from
+ * are public, because the blocks generated by PgbRecompiler
+ * live in a class loader of their own and use them directly.
+ * 
  * The exec() method executes the current opcode and 
  * increases the program counter.  exec() also calls the 
  * memory cycle() function and processes any resulting 
@@ -27,16 +39,32 @@ public final class PgbCpu {
 	final static int				C_FLAG = 0x10;       /* 1: Carry/Borrow occured    */
 	
 	PgbMemory						mem;
+	PgbSettings						settings;
 	
 	// registers
-	private PgbRegister				BC;
-	private PgbRegister				DE;
-	private PgbRegister				HL;
-	private PgbRegisterW			SP;
-	private PgbRegisterW			PC;
-	private PgbRegisterB			AF;
+	public int						a;
+	public int						b;
+	public int						c;
+	public int						d;
+	public int						e;
+	public int						hl;
+	public int						sp;
+	public int						pc;
+	
+	// F isn't kept as such.  The ALU ops only store what
+	// the flags follow from, and getF() puts F together
+	// for the few things that need it whole: PUSH AF, save
+	// states and the debug output.
+	private int						zres;	// Z is set when this is 0
+	private boolean					nflag;
+	private int						cres;	// C is bit 8 of this
+	private int						fother;	// H and the unused low bits, only setAF() changes them
 	
 	private boolean					ime; // interrupt master enable
+	private boolean					halted; // waiting in HALT for an interrupt
+	
+	// compiled rom code, null when only interpreting
+	private PgbRecompiler			recompiler;
 	
 	// by retroK	
 	SoundChip soundChip;
@@ -44,26 +72,78 @@ public final class PgbCpu {
 	
 	public PgbCpu(PgbMemory mem) {
 		this.mem = mem;
+		this.settings = mem.settings;
 		//initOpcodes();
 	}
 	
 	public void reset() {
-		AF = new PgbRegisterB(0x0180);
-		if(PgbSettings.system == PgbSettings.SYS_GBP) {
-			AF = new PgbRegisterB(0xFF80);
+		setAF(0x0180);
+		if(settings.system == PgbSettings.SYS_GBP) {
+			setAF(0xFF80);
 		}
-		if(PgbSettings.system == PgbSettings.SYS_GBC) {
-			AF = new PgbRegisterB(0x1180);
+		if(settings.system == PgbSettings.SYS_GBC) {
+			setAF(0x1180);
 		}
-		BC = new PgbRegisterB(0x0013);
-		DE = new PgbRegisterB(0x00D8);
-		HL = new PgbRegisterW(0x014D);
-		SP = new PgbRegisterW(0xFFFE);
-		PC = new PgbRegisterW(0x0100);
+		setBC(0x0013);
+		setDE(0x00D8);
+		hl = 0x014D;
+		sp = 0xFFFE;
+		pc = 0x0100;
 		
 		ime = false;
+		halted = false;
+		
+		settings.clockspeed = 4.194304;
 		
-		PgbSettings.clockspeed = 4.194304;
+		setRecompiler(settings.recompiler);
+	}
+	
+	/**
+	 * Writes the registers and the clock speed for a save
+	 * state.  See AEPgb.saveState().
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.put((byte)a).put((byte)getF()).put((byte)b).put((byte)c).put((byte)d).put((byte)e);
+		buf.putShort((short)hl).putShort((short)sp).putShort((short)pc);
+		buf.put((byte)((ime ? 1 : 0) | (halted ? 2 : 0)));
+		buf.putDouble(settings.clockspeed);
+	}
+	
+	public void loadState(ByteBuffer buf) {
+		int af = (buf.get() & 0xFF) << 8;
+		setAF(af | buf.get() & 0xFF);
+		b = buf.get() & 0xFF;
+		c = buf.get() & 0xFF;
+		d = buf.get() & 0xFF;
+		e = buf.get() & 0xFF;
+		hl = buf.getShort() & 0xFFFF;
+		sp = buf.getShort() & 0xFFFF;
+		pc = buf.getShort() & 0xFFFF;
+		int flags = buf.get();
+		ime = (flags & 1) != 0;
+		halted = (flags & 2) != 0;
+		settings.clockspeed = buf.getDouble();
+	}
+	
+	public int stateSize() {
+		return 21;
+	}
+	
+	/**
+	 * Switches between plain interpretation and running
+	 * compiled blocks of rom code.  The block cache is
+	 * dropped either way, so this must be called again after
+	 * a new rom is loaded; reset() does that.
+	 */
+	public void setRecompiler(boolean use) {
+		recompiler = null;
+		if(use && mem.cart.romdata != null) {
+			try {
+				recompiler = new PgbRecompiler(mem.cart);
+			} catch(LinkageError e) {
+				System.out.println("recompiler not available: " + e);
+			}
+		}
 	}
 	
 	public final void exec(int cte) {
@@ -72,8 +152,8 @@ public final class PgbCpu {
 		/*
 		// debug halt
 		if(PgbSettings.DEBUG) {
-			if(PC.data == HALTON) {
-				PgbSettings.paused = true;
+			if(pc == HALTON) {
+				settings.paused = true;
 				System.out.println("PC hit HALTON:" + Integer.toHexString(HALTON));
 			}
 		}
@@ -81,20 +161,54 @@ public final class PgbCpu {
 		
 		
 		/*
-		if(PgbSettings.debuglevel == 5) {
-			System.out.print("op:" + Integer.toHexString(opcode) + " pc:" + Integer.toHexString(PC.getR() - 1) + " af:" + Integer.toHexString(AF.getR()) + " bc:" + Integer.toHexString(BC.getR()) + " de:" + Integer.toHexString(DE.getR()) + " hl:" + Integer.toHexString(HL.getR()) + " sp:" + Integer.toHexString(SP.getR()) + " ");
+		if(settings.debuglevel == 5) {
+			System.out.print("op:" + Integer.toHexString(opcode) + " pc:" + Integer.toHexString(pc - 1) + " af:" + Integer.toHexString(a << 8 | getF()) + " bc:" + Integer.toHexString(bc()) + " de:" + Integer.toHexString(de()) + " hl:" + Integer.toHexString(hl) + " sp:" + Integer.toHexString(sp) + " ");
 			System.out.println("LCD y:" + Integer.toHexString(mem.video.ly) + " IF:" + Integer.toBinaryString(mem.IF));
 		}
 		*/
 		
 		while(cte > 0) {
 			// process interrupts
-			if(ime && (mem.IF & mem.IE) != 0) {
-				interrupt(mem.IF & mem.IE);
+			if((mem.IF & mem.IE) != 0) {
+				if(ime) {
+					interrupt(mem.IF & mem.IE);
+				} else {
+					// HALT with interrupts off wakes up without
+					// calling the handler, the game checks IF itself
+					halted = false;
+				}
 			}
 			
+			// nothing runs while halted, so skip straight to
+			// the next timer, lcd or serial event (or the end of
+			// this slice, a joypad press can't be scheduled)
+			if(halted) {
+				cv = mem.cyclesLeft - mem.cycles;
+				if(cv >= cte) {
+					cv = cte;
+				} else if(cv < 0) {
+					cv = 0;
+				} else {
+					cv++;
+				}
+				mem.cycle(cv);
+				cte -= cv;
+				continue;
+			}
+			
+			// run a compiled block if there is one here and no
+			// timer, lcd or serial event can fall inside it
+			if(recompiler != null && pc < 0x8000) {
+				PgbBlock block = recompiler.getBlock(pc);
+				if(block != null && block.cycles <= cte && mem.cycles + block.cycles <= mem.cyclesLeft) {
+					cv = block.run(this, mem);
+					mem.cycle(cv);
+					cte -= cv;
+					continue;
+				}
+			}
 
-			int memread = mem.read(PC.data++) & 0xFF;
+			int memread = mem.read(pc++) & 0xFF;
 //			cv = 4;
 			
 			//System.out.println("memread: 0x" + Integer.toHexString(memread));
@@ -103,110 +217,110 @@ public final class PgbCpu {
 					cv = 4;
 					break;
 				case 0x01: // LD   BC,nnnn
-					BC.setR(readWord());
+					setBC(readWord());
 					cv = 20;
 					break;
 				case 0x02: // LD   (BC),A
-					mem.write(BC.getR(), AF.getH());
+					mem.write(bc(), a);
 					cv = 8;
 					break;
 				case 0x03: // INC  BC
-					incR(BC);
+					setBC(bc() + 1 & 0xFFFF);
 					cv = 8;
 					break;
 				case 0x04: // INC  B
-					incH(BC);
+					b = inc(b);
 					cv = 4;
 					break;
 				case 0x05: // DEC  B
-					decH(BC);
+					b = dec(b);
 					cv = 4;
 					break;
 				case 0x06: // LD   B,nn
-					BC.setH(readByte());
+					b = readByte();
 					cv = 8;
 					break;
 				case 0x07: // RLCA
-					rlcH(AF);
+					a = rlc(a);
 					setZ(false);
 					cv = 4;
 					break;
 				case 0x08: // LD   (nnnn),SP
-					mem.writeWord(readWord(), SP.getR());
+					mem.writeWord(readWord(), sp);
 					cv = 20;
 					break;
 				case 0x09: // LD   (nnnn),SP
-					addR(HL, BC);
+					addHL(bc());
 					cv = 12;
 					break;
 				case 0x0A: // LD   A,(BC)
-					AF.setH(BC.getI(mem));
+					a = mem.read(bc()) & 0xFF;
 					cv = 8;
 					break;
 				case 0x0B: // DEC  BC
-					decR(BC);
+					setBC(bc() - 1 & 0xFFFF);
 					cv = 8;
 					break;
 				case 0x0C: // INC  C
-					incL(BC);
+					c = inc(c);
 					cv = 4;
 					break;
 				case 0x0D: // DEC C
-					decL(BC);
+					c = dec(c);
 					cv = 4;
 					break;
 				case 0x0E: // LD   C,nn
-					BC.setL(readByte());
+					c = readByte();
 					cv = 8;
 					break;
 				case 0x0F: // RRCA
-					rrcH(AF);
+					a = rrc(a);
 					setZ(false);
 					cv = 4;
 					break;
 				case 0x10: // STOP
 					readByte();
-					if(PgbSettings.system == PgbSettings.SYS_GBC) {
+					if(settings.system == PgbSettings.SYS_GBC) {
 						// change speed
 						if((mem.gbcGetSpeed() & 0x01) == 0x01) {
-							PgbSettings.clockspeed = 8.388;
+							settings.clockspeed = 8.388;
 							mem.gbcSetSpeed((byte)0x80);
 						} else {
-							PgbSettings.clockspeed = 4.194;
+							settings.clockspeed = 4.194;
 							mem.gbcSetSpeed((byte)0x00);
 						}
-						//System.out.println("speed change : " + PgbSettings.clockspeed);
+						//System.out.println("speed change : " + settings.clockspeed);
 					} else {
 						unsupported(0x10);
 					}
 					cv = 4;
 					break;
 				case 0x11: // LD   DE,nnnn
-					DE.setR(readWord());
+					setDE(readWord());
 					cv = 12;
 					break;
 				case 0x12: // LD   (DE),A
-					DE.setI(AF.getH(), mem);
+					mem.write(de(), a);
 					cv = 8;
 					break;
 				case 0x13: // INC  DE
-					incR(DE);
+					setDE(de() + 1 & 0xFFFF);
 					cv = 8;
 					break;
 				case 0x14: // INC  D
-					incH(DE);
+					d = inc(d);
 					cv = 4;
 					break;
 				case 0x15: // DEC  D
-					decH(DE);
+					d = dec(d);
 					cv = 4;
 					break;
 				case 0x16: // LD   D,nn
-					DE.setH(readByte());
+					d = readByte();
 					cv = 8;
 					break;
 				case 0x17: // RLA
-					rlH(AF);
+					a = rl(a);
 					setZ(false);
 					cv = 4;
 					break;
@@ -215,31 +329,31 @@ public final class PgbCpu {
 					cv = 12;
 					break;
 				case 0x19: // ADD  HL,DE
-					addR(HL, DE);
+					addHL(de());
 					cv = 16;
 					break;
 				case 0x1A: // LD   A,(DE)
-					AF.setH(DE.getI(mem));
+					a = mem.read(de()) & 0xFF;
 					cv = 8;
 					break;
 				case 0x1B: // DEC  DE
-					decR(DE);
-					cv = 8; 
+					setDE(de() - 1 & 0xFFFF);
+					cv = 8;
 					break;
 				case 0x1C: // INC  E
-					incL(DE);
+					e = inc(e);
 					cv = 4;
 					break;
 				case 0x1D: // DEC  E
-					decL(DE);
+					e = dec(e);
 					cv = 4;
 					break;
 				case 0x1E: // LD   E,nn
-					DE.setL(readByte());
+					e = readByte();
 					cv = 8;
 					break;
 				case 0x1F: // RRA
-					rrH(AF);
+					a = rr(a);
 					setZ(false);
 					cv = 4;
 					break;
@@ -253,28 +367,28 @@ public final class PgbCpu {
 					}
 					break;
 				case 0x21: // LD   HL,nnnn
-					HL.setR(readWord());
+					hl = readWord();
 					cv = 12;
 					break;
 				case 0x22: // LDI  (HL),A
-					HL.setI(AF.getH(), mem);
-					incR(HL);
+					mem.write(hl, a);
+					hl = hl + 1 & 0xFFFF;
 					cv = 16;
 					break;
 				case 0x23: // INC  HL
-					incR(HL);
+					hl = hl + 1 & 0xFFFF;
 					cv = 8;
 					break;
 				case 0x24: // INC  H
-					incH(HL);
+					hl = inc(hl >> 8) << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x25: // DEC  H
-					decH(HL);
+					hl = dec(hl >> 8) << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x26: // LD   H,nn
-					HL.setH(readByte());
+					hl = readByte() << 8 | hl & 0xFF;
 					cv = 8;
 					break;
 				case 0x27: // DAA
@@ -291,35 +405,35 @@ public final class PgbCpu {
 					}
 					break;
 				case 0x29: // ADD  HL,HL
-					addR(HL, HL);
+					addHL(hl);
 					cv = 12;
 					break;
 				case 0x2A: // LDI  A,(HL)
-					AF.setH(HL.getI(mem));
-					incR(HL);
+					a = mem.read(hl) & 0xFF;
+					hl = hl + 1 & 0xFFFF;
 					cv = 16;
 					break;
 				case 0x2B: // DEC HL
-					decR(HL);
+					hl = hl - 1 & 0xFFFF;
 					cv = 8;
 					break;
 				case 0x2C: // INC  L
-					incL(HL);
+					hl = hl & 0xFF00 | inc(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0x2D: // DEC  L
-					decL(HL);
+					hl = hl & 0xFF00 | dec(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0x2E: // LD   L,nn
-					HL.setL(readByte());
+					hl = hl & 0xFF00 | readByte();
 					cv = 8;
 					break;
 				case 0x2F: // CPL
 					cpl();
 					cv = 4;
 					break;
-				case 0x30: // JR   NC,disp  
+				case 0x30: // JR   NC,disp
 					if(!getC()) {
 						jr(readByte());
 						cv = 12;
@@ -329,28 +443,28 @@ public final class PgbCpu {
 					}
 					break;
 				case 0x31: // LD   SP,nnnn
-					SP.setR(readWord());
+					sp = readWord();
 					cv = 12;
 					break;
 				case 0x32: // LDD  (HL),A
-					HL.setI(AF.getH(), mem);
-					decR(HL);
+					mem.write(hl, a);
+					hl = hl - 1 & 0xFFFF;
 					cv = 16;
 					break;
 				case 0x33: // INC  SP
-					incR(SP);
+					sp = sp + 1 & 0xFFFF;
 					cv = 8;
 					break;
 				case 0x34: // INC  (HL)
-					incI(HL);
+					mem.write(hl, inc(mem.read(hl) & 0xFF));
 					cv = 12;
 					break;
 				case 0x35: // DEC  (HL)
-					decI(HL);
+					mem.write(hl, dec(mem.read(hl) & 0xFF));
 					cv = 12;
 					break;
 				case 0x36: // LD   (HL),nn
-					HL.setI(readByte(), mem);
+					mem.write(hl, readByte());
 					cv = 12;
 					break;
 				case 0x37: // SCF
@@ -367,28 +481,28 @@ public final class PgbCpu {
 					}
 					break;
 				case 0x39: // ADD  HL,SP
-					addR(HL, SP);
+					addHL(sp);
 					cv = 12;
 					break;
 				case 0x3A: // LDD  A,(HL)
-					AF.setH(HL.getI(mem));
-					decR(HL);
+					a = mem.read(hl) & 0xFF;
+					hl = hl - 1 & 0xFFFF;
 					cv = 16;
 					break;
 				case 0x3B: // DEC  SP
-					decR(SP);
+					sp = sp - 1 & 0xFFFF;
 					cv = 8;
 					break;
 				case 0x3C: // INC  A
-					incH(AF);
+					a = inc(a);
 					cv = 4;
 					break;
 				case 0x3D: // DEC  A
-					decH(AF);
+					a = dec(a);
 					cv = 4;
 					break;
 				case 0x3E: // LD   A,nn
-					AF.setH(readByte());
+					a = readByte();
 					cv = 8;
 					break;
 				case 0x3F: // CCF
@@ -397,528 +511,516 @@ public final class PgbCpu {
 					break;
 				case 0x40: // LD   B,B
 					//XXX senseless (B -> B)
-					//BC.setH(BC.getH());
 					cv = 4;
 					break;
 				case 0x41: // LD   B,C
-					BC.setH(BC.getL());
+					b = c;
 					cv = 4;
 					break;
 				case 0x42: // LD   B,D
-					BC.setH(DE.getH());
+					b = d;
 					cv = 4;
 					break;
 				case 0x43: // LD   B,E
-					BC.setH(DE.getL());
+					b = e;
 					cv = 4;
 					break;
 				case 0x44: // LD   B,H
-					BC.setH(HL.getH());
+					b = hl >> 8;
 					cv = 4;
 					break;
 				case 0x45: // LD   B,L
-					BC.setH(HL.getL());
+					b = hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x46: // LD   B,(HL)
-					BC.setH(HL.getI(mem));
+					b = mem.read(hl) & 0xFF;
 					cv = 8;
 					break;
 				case 0x47: // LD   B,A
-					BC.setH(AF.getH());
+					b = a;
 					cv = 4;
 					break;
 				case 0x48: // LD   C,B
-					BC.setL(BC.getH());
+					c = b;
 					cv = 4;
 					break;
 				case 0x49: // LD   C,C
 					//XXX senseless (C -> C)
-					//BC.setL(BC.getL());
 					cv = 4;
 					break;
 				case 0x4A: // LD   C,D
-					BC.setL(DE.getH());
+					c = d;
 					cv = 4;
 					break;
 				case 0x4B: // LD   C,E
-					BC.setL(DE.getL());
+					c = e;
 					cv = 4;
 					break;
 				case 0x4C: // LD   C,H
-					BC.setL(HL.getH());
+					c = hl >> 8;
 					cv = 4;
 					break;
 				case 0x4D: // LD   C,L
-					BC.setL(HL.getL());
+					c = hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x4E: // LD   C,(HL)
-					BC.setL(HL.getI(mem));
+					c = mem.read(hl) & 0xFF;
 					cv = 8;
 					break;
 				case 0x4F: // LD   C,A
-					BC.setL(AF.getH());
+					c = a;
 					cv = 4;
 					break;
 				case 0x50: // LD   D,B
-					DE.setH(BC.getH());
+					d = b;
 					cv = 4;
 					break;
 				case 0x51: // LD   D,C
-					DE.setH(BC.getL());
+					d = c;
 					cv = 4;
 					break;
 				case 0x52: // LD   D,D
 					//XXX senseless (D -> D)
-					//DE.setH(DE.getH());
 					cv = 4;
 					break;
 				case 0x53: // LD   D,E
-					DE.setH(DE.getL());
+					d = e;
 					cv = 4;
 					break;
 				case 0x54: // LD   D,H
-					DE.setH(HL.getH());
+					d = hl >> 8;
 					cv = 4;
 					break;
 				case 0x55: // LD   D,L
-					DE.setH(HL.getL());
+					d = hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x56: // LD   D,(HL)
-					DE.setH(HL.getI(mem));
+					d = mem.read(hl) & 0xFF;
 					cv = 8;
 					break;
 				case 0x57: // LD   D,A
-					DE.setH(AF.getH());
+					d = a;
 					cv = 4;
 					break;
 				case 0x58: // LD   E,B
-					DE.setL(BC.getH());
+					e = b;
 					cv = 4;
 					break;
 				case 0x59: // LD   E,C
-					DE.setL(BC.getL());
+					e = c;
 					cv = 4;
 					break;
 				case 0x5A: // LD   E,D
-					DE.setL(DE.getH());
+					e = d;
 					cv = 4;
 					break;
 				case 0x5B: // LD   E,E
 					//XXX senseless (E -> E)
-					//DE.setL(DE.getL());
 					cv = 4;
 					break;
 				case 0x5C: // LD   E,H
-					DE.setL(HL.getH());
+					e = hl >> 8;
 					cv = 4;
 					break;
 				case 0x5D: // LD   E,L
-					DE.setL(HL.getL());
+					e = hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x5E: // LD   E,(HL)
-					DE.setL(HL.getI(mem));
+					e = mem.read(hl) & 0xFF;
 					cv = 8;
 					break;
 				case 0x5F: // LD   E,A
-					DE.setL(AF.getH());
+					e = a;
 					cv = 4;
 					break;
 				case 0x60: // LD   H,B
-					HL.setH(BC.getH());
+					hl = b << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x61: // LD   H,C
-					HL.setH(BC.getL());
+					hl = c << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x62: // LD   H,D
-					HL.setH(DE.getH());
+					hl = d << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x63: // LD   H,E
-					HL.setH(DE.getL());
+					hl = e << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x64: // LD   H,H
 					//XXX senseless (H -> H)
-					//HL.setH(HL.getH()); 
 					cv = 4;
 					break;
 				case 0x65: // LD   H,L
-					HL.setH(HL.getL());
+					hl = (hl & 0xFF) << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x66: // LD   H,(HL)
-					HL.setH(HL.getI(mem));
+					hl = (mem.read(hl) & 0xFF) << 8 | hl & 0xFF;
 					cv = 8;
 					break;
 				case 0x67: // LD   H,A
-					HL.setH(AF.getH());
+					hl = a << 8 | hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x68: // LD   L,B
-					HL.setL(BC.getH());
+					hl = hl & 0xFF00 | b;
 					cv = 4;
 					break;
 				case 0x69: // LD   L,C
-					HL.setL(BC.getL());
+					hl = hl & 0xFF00 | c;
 					cv = 4;
 					break;
 				case 0x6A: // LD   L,D
-					HL.setL(DE.getH());
+					hl = hl & 0xFF00 | d;
 					cv = 4;
 					break;
 				case 0x6B: // LD   L,E
-					HL.setL(DE.getL());
+					hl = hl & 0xFF00 | e;
 					cv = 4;
 					break;
 				case 0x6C: // LD   L,H
-					HL.setL(HL.getH());
+					hl = hl & 0xFF00 | (hl >> 8);
 					cv = 4;
 					break;
 				case 0x6D: // LD   L,L
 					//XXX senseless (L -> L)
-					//HL.setL(HL.getL());
 					cv = 4;
 					break;
 				case 0x6E: // LD   L,(HL)
-					HL.setL(HL.getI(mem));
+					hl = hl & 0xFF00 | (mem.read(hl) & 0xFF);
 					cv = 8;
 					break;
 				case 0x6F: // LD   L,A
-					HL.setL(AF.getH());
+					hl = hl & 0xFF00 | a;
 					cv = 4;
 					break;
 				case 0x70: // LD   (HL),B
-					mem.write(HL.getR(), BC.getH());
+					mem.write(hl, b);
 					cv = 8;
 					break;
 				case 0x71: // LD   (HL),C
-					mem.write(HL.getR(), BC.getL());
+					mem.write(hl, c);
 					cv = 8;
 					break;
 				case 0x72: // LD   (HL),D
-					mem.write(HL.getR(), DE.getH());
+					mem.write(hl, d);
 					cv = 8;
 					break;
 				case 0x73: // LD   (HL),E
-					mem.write(HL.getR(), DE.getL());
+					mem.write(hl, e);
 					cv = 8;
 					break;
 				case 0x74: // LD   (HL),H
-					mem.write(HL.getR(), HL.getH());
+					mem.write(hl, hl >> 8);
 					cv = 8;
 					break;
 				case 0x75: // LD   (HL),L
-					mem.write(HL.getR(), HL.getL());
+					mem.write(hl, hl & 0xFF);
 					cv = 8;
 					break;
 				case 0x76: // HALT
-					if(ime) {
-						//decR(PC);
-						//System.out.println("cpu HALTed.");
-						mem.recalcCyclesLeft();
-						cv = mem.cyclesLeft;
-					} else {
-						//System.out.println("cpu not HALTed because IME=" + ime + " and IE=" + mem.IE);
-						cv = 4;
-					}
+					// with IME=0 too: DI / HALT waits for IF & IE
+					// just the same, it only doesn't call the handler
+					halted = true;
+					cv = 4;
 					break;
 				case 0x77: // LD   (HL),A
-					mem.write(HL.getR(), AF.getH());
+					mem.write(hl, a);
 					cv = 8;
 					break;
 				case 0x78: // LD   A,B
-					AF.setH(BC.getH());
+					a = b;
 					cv = 4;
 					break;
 				case 0x79: // LD   A,C
-					AF.setH(BC.getL());
+					a = c;
 					cv = 4;
 					break;
 				case 0x7A: // LD   A,D
-					AF.setH(DE.getH());
+					a = d;
 					cv = 4;
 					break;
 				case 0x7B: // LD   A,E
-					AF.setH(DE.getL());
+					a = e;
 					cv = 4;
 					break;
 				case 0x7C: // LD   A,H
-					AF.setH(HL.getH());
+					a = hl >> 8;
 					cv = 4;
 					break;
 				case 0x7D: // LD   A,L
-					AF.setH(HL.getL());
+					a = hl & 0xFF;
 					cv = 4;
 					break;
 				case 0x7E: // LD   A,(HL)
-					AF.setH(HL.getI(mem));
+					a = mem.read(hl) & 0xFF;
 					cv = 8;
 					break;
 				case 0x7F: // LD   A,A
 					//XXX senseless (A -> A)
-					//AF.setH(AF.getH()); 
 					cv = 4;
 					break;
 				case 0x80: // ADD  A,B
-					add(BC.getH());
+					add(b);
 					cv = 4;
 					break;
 				case 0x81: // ADD  A,C
-					add(BC.getL());
+					add(c);
 					cv = 4;
 					break;
 				case 0x82: // ADD  A,D
-					add(DE.getH());
+					add(d);
 					cv = 4;
 					break;
 				case 0x83: // ADD  A,E
-					add(DE.getL());
+					add(e);
 					cv = 4;
 					break;
 				case 0x84: // ADD  A,H
-					add(HL.getH());
+					add(hl >> 8);
 					cv = 4;
 					break;
 				case 0x85: // ADD  A,L
-					add(HL.getL());
+					add(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0x86: // ADD  A,(HL)
-					add(HL.getI(mem));
-					cv = 8; 
+					add(mem.read(hl) & 0xFF);
+					cv = 8;
 					break;
 				case 0x87: // ADD  A,A
-					add(AF.getH());
+					add(a);
 					cv = 4;
 					break;
 				case 0x88: // ADC  A,B
-					adc(BC.getH());
+					adc(b);
 					cv = 4;
 					break;
 				case 0x89: // ADC  A,C
-					adc(BC.getL());
+					adc(c);
 					cv = 4;
 					break;
 				case 0x8A: // ADC  A,D
-					adc(DE.getH());
+					adc(d);
 					cv = 4;
 					break;
 				case 0x8B: // ADC  A,E
-					adc(DE.getL());
+					adc(e);
 					cv = 4;
 					break;
 				case 0x8C: // ADC  A,H
-					adc(HL.getH());
+					adc(hl >> 8);
 					cv = 4;
 					break;
 				case 0x8D: // ADC  A,L
-					adc(HL.getL());
+					adc(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0x8E: // ADC  A,(HL)
-					adc(HL.getI(mem));
-					cv = 8; 
+					adc(mem.read(hl) & 0xFF);
+					cv = 8;
 					break;
 				case 0x8F: // ADC A,A
-					adc(AF.getH());
+					adc(a);
 					cv = 4;
 					break;
 				case 0x90: // SUB  B
-					sub(BC.getH());
+					sub(b);
 					cv = 4;
 					break;
 				case 0x91: // SUB  C
-					sub(BC.getL());
+					sub(c);
 					cv = 4;
 					break;
 				case 0x92: // SUB  D
-					sub(DE.getH());
+					sub(d);
 					cv = 4;
 					break;
 				case 0x93: // SUB  E
-					sub(DE.getL());
+					sub(e);
 					cv = 4;
 					break;
 				case 0x94: // SUB  H
-					sub(HL.getH());
+					sub(hl >> 8);
 					cv = 4;
 					break;
 				case 0x95: // SUB  L
-					sub(HL.getL());
+					sub(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0x96: // SUB  (HL)
-					sub(HL.getI(mem));
+					sub(mem.read(hl) & 0xFF);
 					cv = 8;
 					break;
 				case 0x97: // SUB  A
-					sub(AF.getH());
+					sub(a);
 					cv = 4;
 					break;
 				case 0x98: // SBC  A,B
-					sbc(BC.getH());
+					sbc(b);
 					cv = 4;
 					break;
 				case 0x99: // SBC  A,C
-					sbc(BC.getL());
+					sbc(c);
 					cv = 4;
 					break;
 				case 0x9A: // SBC  A,D
-					sbc(DE.getH());
+					sbc(d);
 					cv = 4;
 					break;
 				case 0x9B: // SBC  A,E
-					sbc(DE.getL());
+					sbc(e);
 					cv = 4;
 					break;
 				case 0x9C: // SBC  A,H
-					sbc(HL.getH());
+					sbc(hl >> 8);
 					cv = 4;
 					break;
 				case 0x9D: // SBC  A,L
-					sbc(HL.getL());
+					sbc(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0x9E: // SBC  A,(HL)
-					sbc(HL.getI(mem));
+					sbc(mem.read(hl) & 0xFF);
 					cv = 8;
 					break;
 				case 0x9F: // SBC  A,A
-					sbc(AF.getH());
+					sbc(a);
 					cv = 4;
 					break;
 				case 0xA0: // AND  B
-					and(BC.getH());
+					and(b);
 					cv = 4;
 					break;
 				case 0xA1: // AND  C
-					and(BC.getL());
+					and(c);
 					cv = 4;
 					break;
 				case 0xA2: // AND  D
-					and(DE.getH());
+					and(d);
 					cv = 4;
 					break;
 				case 0xA3: // AND  E
-					and(DE.getL());
+					and(e);
 					cv = 4;
 					break;
 				case 0xA4: // AND  H
-					and(HL.getH());
+					and(hl >> 8);
 					cv = 4;
 					break;
 				case 0xA5: // AND  L
-					and(HL.getL());
+					and(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0xA6: // AND  (HL)
-					and(HL.getI(mem));
+					and(mem.read(hl) & 0xFF);
 					cv = 8;
 					break;
 				case 0xA7: // AND  A
-					and(AF.getH());
+					and(a);
 					cv = 4;
 					break;
 				case 0xA8: // XOR  B
-					xor(BC.getH());
+					xor(b);
 					cv = 4;
 					break;
 				case 0xA9: // XOR  C
-					xor(BC.getL());
+					xor(c);
 					cv = 4;
 					break;
 				case 0xAA: // XOR  D
-					xor(DE.getH());
+					xor(d);
 					cv = 4;
 					break;
 				case 0xAB: // XOR  E
-					xor(DE.getL());
+					xor(e);
 					cv = 4;
 					break;
 				case 0xAC: // XOR  H
-					xor(HL.getH());
+					xor(hl >> 8);
 					cv = 4;
 					break;
 				case 0xAD: // XOR  L
-					xor(HL.getL());
+					xor(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0xAE: // XOR  (HL)
-					xor(HL.getI(mem));
+					xor(mem.read(hl) & 0xFF);
 					cv = 8;
 					break;
 				case 0xAF: // XOR  A
-					xor(AF.getH());
+					xor(a);
 					cv = 4;
 					break;
 				case 0xB0: // OR   B
-					or(BC.getH());
+					or(b);
 					cv = 4;
 					break;
 				case 0xB1: // OR   C
-					or(BC.getL());
+					or(c);
 					cv = 4;
 					break;
 				case 0xB2: // OR   D
-					or(DE.getH());
+					or(d);
 					cv = 4;
 					break;
 				case 0xB3: // OR   E
-					or(DE.getL());
+					or(e);
 					cv = 4;
 					break;
 				case 0xB4: // OR   H
-					or(HL.getH());
+					or(hl >> 8);
 					cv = 4;
 					break;
 				case 0xB5: // OR   L
-					or(HL.getL());
+					or(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0xB6: // OR   (HL)
-					or(HL.getI(mem));
+					or(mem.read(hl) & 0xFF);
 					cv = 8;
 					break;
 				case 0xB7: // OR   A
-					or(AF.getH());
+					or(a);
 					cv = 4;
 					break;
 				case 0xB8: // CP   B
-					cp(BC.getH());
+					cp(b);
 					cv = 4;
 					break;
 				case 0xB9: // CP   C
-					cp(BC.getL());
+					cp(c);
 					cv = 4;
 					break;
 				case 0xBA: // CP   D
-					cp(DE.getH());
+					cp(d);
 					cv = 4;
 					break;
 				case 0xBB: // CP   E
-					cp(DE.getL());
+					cp(e);
 					cv = 4;
 					break;
 				case 0xBC: // CP   H
-					cp(HL.getH());
+					cp(hl >> 8);
 					cv = 4;
 					break;
 				case 0xBD: // CP   L
-					cp(HL.getL());
+					cp(hl & 0xFF);
 					cv = 4;
 					break;
 				case 0xBE: // CP   (HL)
-					cp(HL.getI(mem));
+					cp(mem.read(hl) & 0xFF);
 					cv = 8;
 					break;
 				case 0xBF: // CP   A
-					cp(AF.getH());
+					cp(a);
 					cv = 4;
 					break;
 				case 0xC0: // RET  NZ
@@ -930,7 +1032,7 @@ public final class PgbCpu {
 					}
 					break;
 				case 0xC1: // POP  BC
-					pop(BC);
+					setBC(pop());
 					cv = 12;
 					break;
 				case 0xC2: // JP   NZ,nnnn
@@ -956,7 +1058,7 @@ public final class PgbCpu {
 					}
 					break;
 				case 0xC5: // PUSH BC
-					push(BC);
+					push(bc());
 					cv = 16;
 					break;
 				case 0xC6: // ADD  A,nn
@@ -989,1038 +1091,1038 @@ public final class PgbCpu {
 					}
 					break;
 				case 0xCB: // -- special --
-					int b = readByte();
+					int cb = readByte();
 					if (PgbSettings.DEBUG)
-						System.out.println("0xCB, executing SubOpCode 0x" + Integer.toHexString(b));
+						System.out.println("0xCB, executing SubOpCode 0x" + Integer.toHexString(cb));
 					//cv = cbcodes[b].exec();
-					switch(b) {
+					switch(cb) {
 						case 0x00: // RLC  B
-							rlcH(BC);
-							cv = 8; 
+							b = rlc(b);
+							cv = 8;
 							break;
 						case 0x01: // RLC  C
-							rlcL(BC);
+							c = rlc(c);
 							cv = 8;
 							break;
 						case 0x02: // RLC  D
-							rlcH(DE);
+							d = rlc(d);
 							cv = 8;
 							break;
 						case 0x03: // RLC  E
-							rlcL(DE);
+							e = rlc(e);
 							cv = 8;
 							break;
 						case 0x04: // RLC  H
-							rlcH(HL);
+							hl = rlc(hl >> 8) << 8 | hl & 0xFF;
 							cv = 8;
 							break;
 						case 0x05: // RLC  L
-							rlcL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | rlc(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x06: // RLC  (HL)
-							rlcI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, rlc(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x07: // RLC  A
-							rlcH(AF);
-							cv = 8; 
+							a = rlc(a);
+							cv = 8;
 							break;
 						case 0x08: // RRC  B
-							rrcH(BC);
-							cv = 8; 
+							b = rrc(b);
+							cv = 8;
 							break;
 						case 0x09: // RRC  C
-							rrcL(BC);
-							cv = 8; 
+							c = rrc(c);
+							cv = 8;
 							break;
 						case 0x0A: // RRC  D
-							rrcH(DE);
-							cv = 8; 
+							d = rrc(d);
+							cv = 8;
 							break;
 						case 0x0B: // RRC  E
-							rrcL(DE);
-							cv = 8; 
+							e = rrc(e);
+							cv = 8;
 							break;
 						case 0x0C: // RRC  H
-							rrcH(HL);
-							cv = 8; 
+							hl = rrc(hl >> 8) << 8 | hl & 0xFF;
+							cv = 8;
 							break;
 						case 0x0D: // RRC  L
-							rrcL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | rrc(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x0E: // RRC  (HL)
-							rrcI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, rrc(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x0F: // RRC  A
-							rrcH(AF);
-							cv = 8; 
+							a = rrc(a);
+							cv = 8;
 							break;
 						case 0x10: // RL   B
-							rlH(BC);
-							cv = 8; 
+							b = rl(b);
+							cv = 8;
 							break;
 						case 0x11: // RL   C
-							rlL(BC);
-							cv = 8; 
+							c = rl(c);
+							cv = 8;
 							break;
 						case 0x12: // RL   D
-							rlH(DE);
-							cv = 8; 
+							d = rl(d);
+							cv = 8;
 							break;
 						case 0x13: // RL   E
-							rlL(DE);
-							cv = 8; 
+							e = rl(e);
+							cv = 8;
 							break;
 						case 0x14: // RL   H
-							rlH(HL);
-							cv = 8; 
+							hl = rl(hl >> 8) << 8 | hl & 0xFF;
+							cv = 8;
 							break;
 						case 0x15: // RL   L
-							rlL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | rl(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x16: // RL   (HL)
-							rlI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, rl(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x17: // RL   A
-							rlH(AF);
-							cv = 8; 
+							a = rl(a);
+							cv = 8;
 							break;
 						case 0x18: // RR   B
-							rrH(BC);
-							cv = 8; 
+							b = rr(b);
+							cv = 8;
 							break;
 						case 0x19: // RR   C
-							rrL(BC);
-							cv = 8; 
+							c = rr(c);
+							cv = 8;
 							break;
 						case 0x1A: // RR   D
-							rrH(DE);
-							cv = 8; 
+							d = rr(d);
+							cv = 8;
 							break;
 						case 0x1B: // RR   E
-							rrL(DE);
-							cv = 8; 
+							e = rr(e);
+							cv = 8;
 							break;
 						case 0x1C: // RR   H
-							rrH(HL);
-							cv = 8; 
+							hl = rr(hl >> 8) << 8 | hl & 0xFF;
+							cv = 8;
 							break;
 						case 0x1D: // RR   L
-							rrL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | rr(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x1E: // RR   (HL)
-							rrI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, rr(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x1F: // RR   A
-							rrH(AF);
-							cv = 8; 
+							a = rr(a);
+							cv = 8;
 							break;
 						case 0x20: // SLA  B
-							slaH(BC);
-							cv = 8; 
+							b = sla(b);
+							cv = 8;
 							break;
 						case 0x21: // SLA  C
-							slaL(BC);
-							cv = 8; 
+							c = sla(c);
+							cv = 8;
 							break;
 						case 0x22: // SLA  D
-							slaH(DE);
-							cv = 8; 
+							d = sla(d);
+							cv = 8;
 							break;
 						case 0x23: // SLA  E
-							slaL(DE);
-							cv = 8; 
+							e = sla(e);
+							cv = 8;
 							break;
 						case 0x24: // SLA  H
-							slaH(HL);
-							cv = 8; 
+							hl = sla(hl >> 8) << 8 | hl & 0xFF;
+							cv = 8;
 							break;
 						case 0x25: // SLA  L
-							slaL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | sla(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x26: // SLA  (HL)
-							slaI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, sla(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x27: // SLA  A
-							slaH(AF);
-							cv = 8; 
+							a = sla(a);
+							cv = 8;
 							break;
 						case 0x28: // SRA  B
-							sraH(BC);
-							cv = 8; 
+							b = sra(b);
+							cv = 8;
 							break;
 						case 0x29: // SRA  C
-							sraL(BC);
-							cv = 8; 
+							c = sra(c);
+							cv = 8;
 							break;
 						case 0x2A: // SRA  D
-							sraH(DE);
-							cv = 8; 
+							d = sra(d);
+							cv = 8;
 							break;
 						case 0x2B: // SRA  E
-							sraL(DE);
-							cv = 8; 
+							e = sra(e);
+							cv = 8;
 							break;
 						case 0x2C: // SRA  H
-							sraH(HL);
-							cv = 8; 
+							hl = sra(hl >> 8) << 8 | hl & 0xFF;
+							cv = 8;
 							break;
 						case 0x2D: // SRA  L
-							sraL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | sra(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x2E: // SRA  (HL)
-							sraI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, sra(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x2F: // SRA  A
-							sraH(AF);
-							cv = 8; 
+							a = sra(a);
+							cv = 8;
 							break;
 						case 0x30: // SWAP B
-							swapH(BC);
-							cv = 8; 
+							b = swap(b);
+							cv = 8;
 							break;
 						case 0x31: // SWAP C
-							swapL(BC);
-							cv = 8; 
+							c = swap(c);
+							cv = 8;
 							break;
 						case 0x32: // SWAP D
-							swapH(DE);
-							cv = 8; 
+							d = swap(d);
+							cv = 8;
 							break;
 						case 0x33: // SWAP E
-							swapL(DE);
-							cv = 8; 
+							e = swap(e);
+							cv = 8;
 							break;
 						case 0x34: // SWAP H
-							swapH(HL);
-							cv = 8; 
+							hl = swap(hl >> 8) << 8 | hl & 0xFF;
+							cv = 8;
 							break;
 						case 0x35: // SWAP L
-							swapL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | swap(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x36: // SWAP (HL)
-							swapI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, swap(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x37: // SWAP A
-							swapH(AF);
-							cv = 8; 
+							a = swap(a);
+							cv = 8;
 							break;
 						case 0x38: // SRL  B
-							srlH(BC);
-							cv = 8; 
+							b = srl(b);
+							cv = 8;
 							break;
 						case 0x39: // SRL  C
-							srlL(BC);
-							cv = 8; 
+							c = srl(c);
+							cv = 8;
 							break;
 						case 0x3A: // SRL  D
-							srlH(DE);
-							cv = 8; 
+							d = srl(d);
+							cv = 8;
 							break;
 						case 0x3B: // SRL  E
-							srlL(DE);
-							cv = 8; 
+							e = srl(e);
+							cv = 8;
 							break;
 						case 0x3C: // SRL  H
-							srlH(HL);
-							cv = 8; 
+							hl = srl(hl >> 8) << 8 | hl & 0xFF;
+							cv = 8;
 							break;
 						case 0x3D: // SRL  L
-							srlL(HL);
-							cv = 8; 
+							hl = hl & 0xFF00 | srl(hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x3E: // SRL  (HL)
-							srlI(HL.getR()); 
-							cv = 16; 
+							mem.write(hl, srl(mem.read(hl) & 0xFF));
+							cv = 16;
 							break;
 						case 0x3F: // SRL  A
-							srlH(AF);
-							cv = 8; 
+							a = srl(a);
+							cv = 8;
 							break;
 						case 0x40: // BIT  0,B
-							bit(0, BC.getH());
-							cv = 8; 
+							bit(0, b);
+							cv = 8;
 							break;
 						case 0x41: // BIT  0,C
-							bit(0, BC.getL());
-							cv = 8; 
+							bit(0, c);
+							cv = 8;
 							break;
 						case 0x42: // BIT  0,D
-							bit(0, DE.getH());
-							cv = 8; 
+							bit(0, d);
+							cv = 8;
 							break;
 						case 0x43: // BIT  0,E
-							bit(0, DE.getL());
-							cv = 8; 
+							bit(0, e);
+							cv = 8;
 							break;
 						case 0x44: // BIT  0,H
-							bit(0, HL.getH());
-							cv = 8; 
+							bit(0, hl >> 8);
+							cv = 8;
 							break;
 						case 0x45: // BIT  0,L
-							bit(0, HL.getL());
-							cv = 8; 
+							bit(0, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x46: // BIT  0,(HL)
-							bit(0, HL.getI(mem));
-							cv = 16; 
+							bit(0, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x47: // BIT  0,A
-							bit(0, AF.getH());
-							cv = 8; 
+							bit(0, a);
+							cv = 8;
 							break;
 						case 0x48: // BIT  1,B
-							bit(1, BC.getH());
-							cv = 8; 
+							bit(1, b);
+							cv = 8;
 							break;
 						case 0x49: // BIT  1,C
-							bit(1, BC.getL());
-							cv = 8; 
+							bit(1, c);
+							cv = 8;
 							break;
 						case 0x4A: // BIT  1,D
-							bit(1, DE.getH());
-							cv = 8; 
+							bit(1, d);
+							cv = 8;
 							break;
 						case 0x4B: // BIT  1,E
-							bit(1, DE.getL());
-							cv = 8; 
+							bit(1, e);
+							cv = 8;
 							break;
 						case 0x4C: // BIT  1,H
-							bit(1, HL.getH());
-							cv = 8; 
+							bit(1, hl >> 8);
+							cv = 8;
 							break;
 						case 0x4D: // BIT  1,L
-							bit(1, HL.getL());
-							cv = 8; 
+							bit(1, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x4E: // BIT  1,(HL)
-							bit(1, HL.getI(mem)); 
-							cv = 16; 
+							bit(1, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x4F: // BIT  1,A
-							bit(1, AF.getH());
-							cv = 8; 
+							bit(1, a);
+							cv = 8;
 							break;
 						case 0x50: // BIT  2,B
-							bit(2, BC.getH());
-							cv = 8; 
+							bit(2, b);
+							cv = 8;
 							break;
 						case 0x51: // BIT  2,C
-							bit(2, BC.getL());
-							cv = 8; 
+							bit(2, c);
+							cv = 8;
 							break;
 						case 0x52: // BIT  2,D
-							bit(2, DE.getH());
-							cv = 8; 
+							bit(2, d);
+							cv = 8;
 							break;
 						case 0x53: // BIT  2,E
-							bit(2, DE.getL());
-							cv = 8; 
+							bit(2, e);
+							cv = 8;
 							break;
 						case 0x54: // BIT  2,H
-							bit(2, HL.getH());
-							cv = 8; 
+							bit(2, hl >> 8);
+							cv = 8;
 							break;
 						case 0x55: // BIT  2,L
-							bit(2, HL.getL());
-							cv = 8; 
+							bit(2, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x56: // BIT  2,(HL)
-							bit(2, HL.getI(mem)); 
-							cv = 16; 
+							bit(2, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x57: // BIT  2,A
-							bit(2, AF.getH());
-							cv = 8; 
+							bit(2, a);
+							cv = 8;
 							break;
 						case 0x58: // BIT  3,B
-							bit(3, BC.getH());
-							cv = 8; 
+							bit(3, b);
+							cv = 8;
 							break;
 						case 0x59: // BIT  3,C
-							bit(3, BC.getL());
-							cv = 8; 
+							bit(3, c);
+							cv = 8;
 							break;
 						case 0x5A: // BIT  3,D
-							bit(3, DE.getH());
-							cv = 8; 
+							bit(3, d);
+							cv = 8;
 							break;
 						case 0x5B: // BIT  3,E
-							bit(3, DE.getL());
-							cv = 8; 
+							bit(3, e);
+							cv = 8;
 							break;
 						case 0x5C: // BIT  3,H
-							bit(3, HL.getH());
-							cv = 8; 
+							bit(3, hl >> 8);
+							cv = 8;
 							break;
 						case 0x5D: // BIT  3,L
-							bit(3, HL.getL());
-							cv = 8; 
+							bit(3, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x5E: // BIT  3,(HL)
-							bit(3, HL.getI(mem)); 
-							cv = 16; 
+							bit(3, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x5F: // BIT  3,A
-							bit(3, AF.getH());
-							cv = 8; 
+							bit(3, a);
+							cv = 8;
 							break;
 						case 0x60: // BIT  4,B
-							bit(4, BC.getH());
-							cv = 8; 
+							bit(4, b);
+							cv = 8;
 							break;
 						case 0x61: // BIT  4,C
-							bit(4, BC.getL());
-							cv = 8; 
+							bit(4, c);
+							cv = 8;
 							break;
 						case 0x62: // BIT  4,D
-							bit(4, DE.getH());
-							cv = 8; 
+							bit(4, d);
+							cv = 8;
 							break;
 						case 0x63: // BIT  4,E
-							bit(4, DE.getL());
-							cv = 8; 
+							bit(4, e);
+							cv = 8;
 							break;
 						case 0x64: // BIT  4,H
-							bit(4, HL.getH());
-							cv = 8; 
+							bit(4, hl >> 8);
+							cv = 8;
 							break;
 						case 0x65: // BIT  4,L
-							bit(4, HL.getL());
-							cv = 8; 
+							bit(4, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x66: // BIT  4,(HL)
-							bit(4, HL.getI(mem)); 
-							cv = 16; 
+							bit(4, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x67: // BIT  4,A
-							bit(4, AF.getH());
-							cv = 8; 
+							bit(4, a);
+							cv = 8;
 							break;
 						case 0x68: // BIT  5,B
-							bit(5, BC.getH());
-							cv = 8; 
+							bit(5, b);
+							cv = 8;
 							break;
 						case 0x69: // BIT  5,C
-							bit(5, BC.getL());
-							cv = 8; 
+							bit(5, c);
+							cv = 8;
 							break;
 						case 0x6A: // BIT  5,D
-							bit(5, DE.getH());
-							cv = 8; 
+							bit(5, d);
+							cv = 8;
 							break;
 						case 0x6B: // BIT  5,E
-							bit(5, DE.getL());
-							cv = 8; 
+							bit(5, e);
+							cv = 8;
 							break;
 						case 0x6C: // BIT  5,H
-							bit(5, HL.getH());
-							cv = 8; 
+							bit(5, hl >> 8);
+							cv = 8;
 							break;
 						case 0x6D: // BIT  5,L
-							bit(5, HL.getL());
-							cv = 8; 
+							bit(5, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x6E: // BIT  5,(HL)
-							bit(5, HL.getI(mem)); 
-							cv = 16; 
+							bit(5, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x6F: // BIT  5,A
-							bit(5, AF.getH());
-							cv = 8; 
+							bit(5, a);
+							cv = 8;
 							break;
 						case 0x70: // BIT  6,B
-							bit(6, BC.getH());
-							cv = 8; 
+							bit(6, b);
+							cv = 8;
 							break;
 						case 0x71: // BIT  6,C
-							bit(6, BC.getL());
-							cv = 8; 
+							bit(6, c);
+							cv = 8;
 							break;
 						case 0x72: // BIT  6,D
-							bit(6, DE.getH());
-							cv = 8; 
+							bit(6, d);
+							cv = 8;
 							break;
 						case 0x73: // BIT  6,E
-							bit(6, DE.getL());
-							cv = 8; 
+							bit(6, e);
+							cv = 8;
 							break;
 						case 0x74: // BIT  6,H
-							bit(6, HL.getH());
-							cv = 8; 
+							bit(6, hl >> 8);
+							cv = 8;
 							break;
 						case 0x75: // BIT  6,L
-							bit(6, HL.getL());
-							cv = 8; 
+							bit(6, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x76: // BIT  6,(HL)
-							bit(6, HL.getI(mem)); 
-							cv = 16; 
+							bit(6, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x77: // BIT  6,A
-							bit(6, AF.getH());
-							cv = 8; 
+							bit(6, a);
+							cv = 8;
 							break;
 						case 0x78: // BIT  7,B
-							bit(7, BC.getH());
-							cv = 8; 
+							bit(7, b);
+							cv = 8;
 							break;
 						case 0x79: // BIT  7,C
-							bit(7, BC.getL());
-							cv = 8; 
+							bit(7, c);
+							cv = 8;
 							break;
 						case 0x7A: // BIT  7,D
-							bit(7, DE.getH());
-							cv = 8; 
+							bit(7, d);
+							cv = 8;
 							break;
 						case 0x7B: // BIT  7,E
-							bit(7, DE.getL());
-							cv = 8; 
+							bit(7, e);
+							cv = 8;
 							break;
 						case 0x7C: // BIT  7,H
-							bit(7, HL.getH());
-							cv = 8; 
+							bit(7, hl >> 8);
+							cv = 8;
 							break;
 						case 0x7D: // BIT  7,L
-							bit(7, HL.getL());
-							cv = 8; 
+							bit(7, hl & 0xFF);
+							cv = 8;
 							break;
 						case 0x7E: // BIT  7,(HL)
-							bit(7, HL.getI(mem)); 
-							cv = 16; 
+							bit(7, mem.read(hl) & 0xFF);
+							cv = 16;
 							break;
 						case 0x7F: // BIT  7,A
-							bit(7, AF.getH());
-							cv = 8; 
+							bit(7, a);
+							cv = 8;
 							break;
 						case 0x80: // RES  0,B
-							resH(0, BC);
-							cv = 8; 
+							b &= ~0x01;
+							cv = 8;
 							break;
 						case 0x81: // RES  0,C
-							resL(0, BC);
-							cv = 8; 
+							c &= ~0x01;
+							cv = 8;
 							break;
 						case 0x82: // RES  0,D
-							resH(0, DE);
-							cv = 8; 
+							d &= ~0x01;
+							cv = 8;
 							break;
 						case 0x83: // RES  0,E
-							resL(0, DE);
-							cv = 8; 
+							e &= ~0x01;
+							cv = 8;
 							break;
 						case 0x84: // RES  0,H
-							resH(0, HL);
-							cv = 8; 
+							hl &= ~0x0100;
+							cv = 8;
 							break;
 						case 0x85: // RES  0,L
-							resL(0, HL);
-							cv = 8; 
+							hl &= ~0x01;
+							cv = 8;
 							break;
 						case 0x86: // RES  0,(HL)
-							resI(0, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x01);
+							cv = 16;
 							break;
 						case 0x87: // RES  0,A
-							resH(0, AF);
-							cv = 8; 
+							a &= ~0x01;
+							cv = 8;
 							break;
 						case 0x88: // RES  1,B
-							resH(1, BC);
-							cv = 8; 
+							b &= ~0x02;
+							cv = 8;
 							break;
 						case 0x89: // RES  1,C
-							resL(1, BC);
-							cv = 8; 
+							c &= ~0x02;
+							cv = 8;
 							break;
 						case 0x8A: // RES  1,D
-							resH(1, DE);
-							cv = 8; 
+							d &= ~0x02;
+							cv = 8;
 							break;
 						case 0x8B: // RES  1,E
-							resL(1, DE);
-							cv = 8; 
+							e &= ~0x02;
+							cv = 8;
 							break;
 						case 0x8C: // RES  1,H
-							resH(1, HL);
-							cv = 8; 
+							hl &= ~0x0200;
+							cv = 8;
 							break;
 						case 0x8D: // RES  1,L
-							resL(1, HL);
-							cv = 8; 
+							hl &= ~0x02;
+							cv = 8;
 							break;
 						case 0x8E: // RES  1,(HL)
-							resI(1, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x02);
+							cv = 16;
 							break;
 						case 0x8F: // RES  1,A
-							resH(1, AF);
-							cv = 8; 
+							a &= ~0x02;
+							cv = 8;
 							break;
 						case 0x90: // RES  2,B
-							resH(2, BC);
-							cv = 8; 
+							b &= ~0x04;
+							cv = 8;
 							break;
 						case 0x91: // RES  2,C
-							resL(2, BC);
-							cv = 8; 
+							c &= ~0x04;
+							cv = 8;
 							break;
 						case 0x92: // RES  2,D
-							resH(2, DE);
-							cv = 8; 
+							d &= ~0x04;
+							cv = 8;
 							break;
 						case 0x93: // RES  2,E
-							resL(2, DE);
-							cv = 8; 
+							e &= ~0x04;
+							cv = 8;
 							break;
 						case 0x94: // RES  2,H
-							resH(2, HL);
-							cv = 8; 
+							hl &= ~0x0400;
+							cv = 8;
 							break;
 						case 0x95: // RES  2,L
-							resL(2, HL);
-							cv = 8; 
+							hl &= ~0x04;
+							cv = 8;
 							break;
 						case 0x96: // RES  2,(HL)
-							resI(2, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x04);
+							cv = 16;
 							break;
 						case 0x97: // RES  2,A
-							resH(2, AF);
-							cv = 8; 
+							a &= ~0x04;
+							cv = 8;
 							break;
 						case 0x98: // RES  3,B
-							resH(3, BC);
-							cv = 8; 
+							b &= ~0x08;
+							cv = 8;
 							break;
 						case 0x99: // RES  3,C
-							resL(3, BC);
-							cv = 8; 
+							c &= ~0x08;
+							cv = 8;
 							break;
 						case 0x9A: // RES  3,D
-							resH(3, DE);
-							cv = 8; 
+							d &= ~0x08;
+							cv = 8;
 							break;
 						case 0x9B: // RES  3,E
-							resL(3, DE);
-							cv = 8; 
+							e &= ~0x08;
+							cv = 8;
 							break;
 						case 0x9C: // RES  3,H
-							resH(3, HL);
-							cv = 8; 
+							hl &= ~0x0800;
+							cv = 8;
 							break;
 						case 0x9D: // RES  3,L
-							resL(3, HL);
-							cv = 8; 
+							hl &= ~0x08;
+							cv = 8;
 							break;
 						case 0x9E: // RES  3,(HL)
-							resI(3, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x08);
+							cv = 16;
 							break;
 						case 0x9F: // RES  3,A
-							resH(3, AF);
-							cv = 8; 
+							a &= ~0x08;
+							cv = 8;
 							break;
 						case 0xA0: // RES  4,B
-							resH(4, BC);
-							cv = 8; 
+							b &= ~0x10;
+							cv = 8;
 							break;
 						case 0xA1: // RES  4,C
-							resL(4, BC);
-							cv = 8; 
+							c &= ~0x10;
+							cv = 8;
 							break;
 						case 0xA2: // RES  4,D
-							resH(4, DE);
-							cv = 8; 
+							d &= ~0x10;
+							cv = 8;
 							break;
 						case 0xA3: // RES  4,E
-							resL(4, DE);
-							cv = 8; 
+							e &= ~0x10;
+							cv = 8;
 							break;
 						case 0xA4: // RES  4,H
-							resH(4, HL);
-							cv = 8; 
+							hl &= ~0x1000;
+							cv = 8;
 							break;
 						case 0xA5: // RES  4,L
-							resL(4, HL);
-							cv = 8; 
+							hl &= ~0x10;
+							cv = 8;
 							break;
 						case 0xA6: // RES  4,(HL)
-							resI(4, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x10);
+							cv = 16;
 							break;
 						case 0xA7: // RES  4,A
-							resH(4, AF);
-							cv = 8; 
+							a &= ~0x10;
+							cv = 8;
 							break;
 						case 0xA8: // RES  5,B
-							resH(5, BC);
-							cv = 8; 
+							b &= ~0x20;
+							cv = 8;
 							break;
 						case 0xA9: // RES  5,C
-							resL(5, BC);
-							cv = 8; 
+							c &= ~0x20;
+							cv = 8;
 							break;
 						case 0xAA: // RES  5,D
-							resH(5, DE);
-							cv = 8; 
+							d &= ~0x20;
+							cv = 8;
 							break;
 						case 0xAB: // RES  5,E
-							resL(5, DE);
-							cv = 8; 
+							e &= ~0x20;
+							cv = 8;
 							break;
 						case 0xAC: // RES  5,H
-							resH(5, HL);
-							cv = 8; 
+							hl &= ~0x2000;
+							cv = 8;
 							break;
 						case 0xAD: // RES  5,L
-							resL(5, HL);
-							cv = 8; 
+							hl &= ~0x20;
+							cv = 8;
 							break;
 						case 0xAE: // RES  5,(HL)
-							resI(5, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x20);
+							cv = 16;
 							break;
 						case 0xAF: // RES  5,A
-							resH(5, AF);
-							cv = 8; 
+							a &= ~0x20;
+							cv = 8;
 							break;
 						case 0xB0: // RES  6,B
-							resH(6, BC);
-							cv = 8; 
+							b &= ~0x40;
+							cv = 8;
 							break;
 						case 0xB1: // RES  6,C
-							resL(6, BC);
-							cv = 8; 
+							c &= ~0x40;
+							cv = 8;
 							break;
 						case 0xB2: // RES  6,D
-							resH(6, DE);
-							cv = 8; 
+							d &= ~0x40;
+							cv = 8;
 							break;
 						case 0xB3: // RES  6,E
-							resL(6, DE);
-							cv = 8; 
+							e &= ~0x40;
+							cv = 8;
 							break;
 						case 0xB4: // RES  6,H
-							resH(6, HL);
-							cv = 8; 
+							hl &= ~0x4000;
+							cv = 8;
 							break;
 						case 0xB5: // RES  6,L
-							resL(6, HL);
-							cv = 8; 
+							hl &= ~0x40;
+							cv = 8;
 							break;
 						case 0xB6: // RES  6,(HL)
-							resI(6, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x40);
+							cv = 16;
 							break;
 						case 0xB7: // RES  6,A
-							resH(6, AF);
-							cv = 8; 
+							a &= ~0x40;
+							cv = 8;
 							break;
 						case 0xB8: // RES  7,B
-							resH(7, BC);
-							cv = 8; 
+							b &= ~0x80;
+							cv = 8;
 							break;
 						case 0xB9: // RES  7,C
-							resL(7, BC);
-							cv = 8; 
+							c &= ~0x80;
+							cv = 8;
 							break;
 						case 0xBA: // RES  7,D
-							resH(7, DE);
-							cv = 8; 
+							d &= ~0x80;
+							cv = 8;
 							break;
 						case 0xBB: // RES  7,E
-							resL(7, DE);
-							cv = 8; 
+							e &= ~0x80;
+							cv = 8;
 							break;
 						case 0xBC: // RES  7,H
-							resH(7, HL);
-							cv = 8; 
+							hl &= ~0x8000;
+							cv = 8;
 							break;
 						case 0xBD: // RES  7,L
-							resL(7, HL);
-							cv = 8; 
+							hl &= ~0x80;
+							cv = 8;
 							break;
 						case 0xBE: // RES  7,(HL)
-							resI(7, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) & ~0x80);
+							cv = 16;
 							break;
 						case 0xBF: // RES  7,A
-							resH(7, AF);
-							cv = 8; 
+							a &= ~0x80;
+							cv = 8;
 							break;
 						case 0xC0: // SET  0,B
-							setH(0, BC);
-							cv = 8; 
+							b |= 0x01;
+							cv = 8;
 							break;
 						case 0xC1: // SET  0,C
-							setL(0, BC);
-							cv = 8; 
+							c |= 0x01;
+							cv = 8;
 							break;
 						case 0xC2: // SET  0,D
-							setH(0, DE);
-							cv = 8; 
+							d |= 0x01;
+							cv = 8;
 							break;
 						case 0xC3: // SET  0,E
-							setL(0, DE);
-							cv = 8; 
+							e |= 0x01;
+							cv = 8;
 							break;
 						case 0xC4: // SET  0,H
-							setH(0, HL);
-							cv = 8; 
+							hl |= 0x0100;
+							cv = 8;
 							break;
 						case 0xC5: // SET  0,L
-							setL(0, HL);
-							cv = 8; 
+							hl |= 0x01;
+							cv = 8;
 							break;
 						case 0xC6: // SET  0,(HL)
-							setI(0, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) | 0x01);
+							cv = 16;
 							break;
 						case 0xC7: // SET  0,A
-							setH(0, AF);
-							cv = 8; 
+							a |= 0x01;
+							cv = 8;
 							break;
 						case 0xC8: // SET  1,B
-							setH(1, BC);
-							cv = 8; 
+							b |= 0x02;
+							cv = 8;
 							break;
 						case 0xC9: // SET  1,C
-							setL(1, BC);
-							cv = 8; 
+							c |= 0x02;
+							cv = 8;
 							break;
 						case 0xCA: // SET  1,D
-							setH(1, DE);
-							cv = 8; 
+							d |= 0x02;
+							cv = 8;
 							break;
 						case 0xCB: // SET  1,E
-							setL(1, DE);
-							cv = 8; 
+							e |= 0x02;
+							cv = 8;
 							break;
 						case 0xCC: // SET  1,H
-							setH(1, HL);
-							cv = 8; 
+							hl |= 0x0200;
+							cv = 8;
 							break;
 						case 0xCD: // SET  1,L
-							setL(1, HL);
-							cv = 8; 
+							hl |= 0x02;
+							cv = 8;
 							break;
 						case 0xCE: // SET  1,(HL)
-							setI(1, HL.getR()); 
-							cv = 8; 
+							mem.write(hl, mem.read(hl) | 0x02);
+							cv = 8;
 							break;
 						case 0xCF: // SET  1,A
-							setH(1, AF);
-							cv = 8; 
+							a |= 0x02;
+							cv = 8;
 							break;
 						case 0xD0: // SET  2,B
-							setH(2, BC);
-							cv = 8; 
+							b |= 0x04;
+							cv = 8;
 							break;
 						case 0xD1: // SET  2,C
-							setL(2, BC);
-							cv = 8; 
+							c |= 0x04;
+							cv = 8;
 							break;
 						case 0xD2: // SET  2,D
-							setH(2, DE);
-							cv = 8; 
+							d |= 0x04;
+							cv = 8;
 							break;
 						case 0xD3: // SET  2,E
-							setL(2, DE);
-							cv = 8; 
+							e |= 0x04;
+							cv = 8;
 							break;
 						case 0xD4: // SET  2,H
-							setH(2, HL);
-							cv = 8; 
+							hl |= 0x0400;
+							cv = 8;
 							break;
 						case 0xD5: // SET  2,L
-							setL(2, HL);
-							cv = 8; 
+							hl |= 0x04;
+							cv = 8;
 							break;
 						case 0xD6: // SET  2,(HL)
-							setI(2, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) | 0x04);
+							cv = 16;
 							break;
 						case 0xD7: // SET  2,A
-							setH(2, AF);
-							cv = 8; 
+							a |= 0x04;
+							cv = 8;
 							break;
 						case 0xD8: // SET  3,B
-							setH(3, BC);
-							cv = 8; 
+							b |= 0x08;
+							cv = 8;
 							break;
 						case 0xD9: // SET  3,C
-							setL(3, BC);
-							cv = 8; 
+							c |= 0x08;
+							cv = 8;
 							break;
 						case 0xDA: // SET  3,D
-							setH(3, DE);
-							cv = 8; 
+							d |= 0x08;
+							cv = 8;
 							break;
 						case 0xDB: // SET  3,E
-							setL(3, DE);
-							cv = 8; 
+							e |= 0x08;
+							cv = 8;
 							break;
 						case 0xDC: // SET  3,H
-							setH(3, HL);
-							cv = 8; 
+							hl |= 0x0800;
+							cv = 8;
 							break;
 						case 0xDD: // SET  3,L
-							setL(3, HL);
-							cv = 8; 
+							hl |= 0x08;
+							cv = 8;
 							break;
 						case 0xDE: // SET  3,(HL)
-							setI(3, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) | 0x08);
+							cv = 16;
 							break;
 						case 0xDF: // SET  3,A
-							setH(3, AF);
-							cv = 8; 
+							a |= 0x08;
+							cv = 8;
 							break;
 						case 0xE0: // SET  4,B
-							setH(4, BC);
-							cv = 8; 
+							b |= 0x10;
+							cv = 8;
 							break;
 						case 0xE1: // SET  4,C
-							setL(4, BC);
-							cv = 8; 
+							c |= 0x10;
+							cv = 8;
 							break;
 						case 0xE2: // SET  4,D
-							setH(4, DE);
-							cv = 8; 
+							d |= 0x10;
+							cv = 8;
 							break;
 						case 0xE3: // SET  4,E
-							setL(4, DE);
-							cv = 8; 
+							e |= 0x10;
+							cv = 8;
 							break;
 						case 0xE4: // SET  4,H
-							setH(4, HL);
-							cv = 8; 
+							hl |= 0x1000;
+							cv = 8;
 							break;
 						case 0xE5: // SET  4,L
-							setL(4, HL);
-							cv = 8; 
+							hl |= 0x10;
+							cv = 8;
 							break;
 						case 0xE6: // SET  4,(HL)
-							setI(4, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) | 0x10);
+							cv = 16;
 							break;
 						case 0xE7: // SET  4,A
-							setH(4, AF);
-							cv = 8; 
+							a |= 0x10;
+							cv = 8;
 							break;
 						case 0xE8: // SET  5,B
-							setH(5, BC);
-							cv = 8; 
+							b |= 0x20;
+							cv = 8;
 							break;
 						case 0xE9: // SET  5,C
-							setL(5, BC);
-							cv = 8; 
+							c |= 0x20;
+							cv = 8;
 							break;
 						case 0xEA: // SET  5,D
-							setH(5, DE);
-							cv = 8; 
+							d |= 0x20;
+							cv = 8;
 							break;
 						case 0xEB: // SET  5,E
-							setL(5, DE);
-							cv = 8; 
+							e |= 0x20;
+							cv = 8;
 							break;
 						case 0xEC: // SET  5,H
-							setH(5, HL);
-							cv = 8; 
+							hl |= 0x2000;
+							cv = 8;
 							break;
 						case 0xED: // SET  5,L
-							setL(5, HL);
-							cv = 8; 
+							hl |= 0x20;
+							cv = 8;
 							break;
 						case 0xEE: // SET  5,(HL)
-							setI(5, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) | 0x20);
+							cv = 16;
 							break;
 						case 0xEF: // SET  5,A
-							setH(5, AF);
-							cv = 8; 
+							a |= 0x20;
+							cv = 8;
 							break;
 						case 0xF0: // SET  6,B
-							setH(6, BC);
-							cv = 8; 
+							b |= 0x40;
+							cv = 8;
 							break;
 						case 0xF1: // SET  6,C
-							setL(6, BC);
-							cv = 8; 
+							c |= 0x40;
+							cv = 8;
 							break;
 						case 0xF2: // SET  6,D
-							setH(6, DE);
-							cv = 8; 
+							d |= 0x40;
+							cv = 8;
 							break;
 						case 0xF3: // SET  6,E
-							setL(6, DE);
-							cv = 8; 
+							e |= 0x40;
+							cv = 8;
 							break;
 						case 0xF4: // SET  6,H
-							setH(6, HL);
-							cv = 8; 
+							hl |= 0x4000;
+							cv = 8;
 							break;
 						case 0xF5: // SET  6,L
-							setL(6, HL);
-							cv = 8; 
+							hl |= 0x40;
+							cv = 8;
 							break;
 						case 0xF6: // SET  6,(HL)
-							setI(6, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) | 0x40);
+							cv = 16;
 							break;
 						case 0xF7: // SET  6,A
-							setH(6, AF);
-							cv = 8; 
+							a |= 0x40;
+							cv = 8;
 							break;
 						case 0xF8: // SET  7,B
-							setH(7, BC);
-							cv = 8; 
+							b |= 0x80;
+							cv = 8;
 							break;
 						case 0xF9: // SET  7,C
-							setL(7, BC);
-							cv = 8; 
+							c |= 0x80;
+							cv = 8;
 							break;
 						case 0xFA: // SET  7,D
-							setH(7, DE);
-							cv = 8; 
+							d |= 0x80;
+							cv = 8;
 							break;
 						case 0xFB: // SET  7,E
-							setL(7, DE);
-							cv = 8; 
+							e |= 0x80;
+							cv = 8;
 							break;
 						case 0xFC: // SET  7,H
-							setH(7, HL);
-							cv = 8; 
+							hl |= 0x8000;
+							cv = 8;
 							break;
 						case 0xFD: // SET  7,L
-							setL(7, HL);
-							cv = 8; 
+							hl |= 0x80;
+							cv = 8;
 							break;
 						case 0xFE: // SET  7,(HL)
-							setI(7, HL.getR()); 
-							cv = 16; 
+							mem.write(hl, mem.read(hl) | 0x80);
+							cv = 16;
 							break;
 						case 0xFF: // SET  7,A
-							setH(7, AF);
-							cv = 8; 
+							a |= 0x80;
+							cv = 8;
 							break;
 						default:
 							//cv = cbcodes[b].exec();
-							unsupportedCB(b);
+							unsupportedCB(cb);
 							cv = 4;
 					}
 					break;
@@ -2054,7 +2156,7 @@ public final class PgbCpu {
 					}
 					break;
 				case 0xD1: // POP  DE
-					pop(DE);
+					setDE(pop());
 					cv = 10;
 					break;
 				case 0xD2: // JP   NC,nnnn
@@ -2080,7 +2182,7 @@ public final class PgbCpu {
 					}
 					break;
 				case 0xD5: // PUSH DE
-					push(DE);
+					push(de());
 					cv = 16;
 					break;
 				case 0xD6: // SUB  nn
@@ -2139,15 +2241,15 @@ public final class PgbCpu {
 					cv = 16;
 					break;
 				case 0xE0: // LD   ($FF00+nn),A
-					mem.write(0xFF00 + readByte(), AF.getH());
+					mem.write(0xFF00 + readByte(), a);
 					cv = 12;
 					break;
 				case 0xE1: // POP  HL
-					pop(HL);
+					hl = pop();
 					cv = 12;
 					break;
 				case 0xE2: // LD   ($FF00+C),A
-					mem.write(0xFF00 + BC.getL(), AF.getH());
+					mem.write(0xFF00 + c, a);
 					cv = 8;
 					break;
 				case 0xE3: // -
@@ -2159,7 +2261,7 @@ public final class PgbCpu {
 					cv = 4;
 					break;
 				case 0xE5: // PUSH HL
-					push(HL);
+					push(hl);
 					cv = 16;
 					break;
 				case 0xE6: // AND  nn
@@ -2171,16 +2273,16 @@ public final class PgbCpu {
 					cv = 16;
 					break;
 				case 0xE8: // ADD  SP,dd
-					SP.setR(SP.getR() + (byte)readByte());
+					sp = sp + (byte)readByte() & 0xFFFF;
 					setZ(false);
 					cv = 16;
 					break;
 				case 0xE9: // JP   (HL)
-					jp(HL.getR());
+					jp(hl);
 					cv = 4;
 					break;
 				case 0xEA: // LD   (nnnn),A
-					mem.write(readWord(), AF.getH());
+					mem.write(readWord(), a);
 					cv = 16;
 					break;
 				case 0xEB: // -
@@ -2204,15 +2306,15 @@ public final class PgbCpu {
 					cv = 16;
 					break;
 				case 0xF0: // LD   A,($FF00+nn)
-					AF.setH(mem.read(0xFF00 + readByte()));
+					a = mem.read(0xFF00 + readByte()) & 0xFF;
 					cv = 12;
 					break;
 				case 0xF1: // POP  AF
-					pop(AF);
+					setAF(pop());
 					cv = 12;
 					break;
 				case 0xF2: // LD   A,(C) [same as LD   A,($FF00+C)]
-					AF.setH(mem.read(0xFF00 + BC.getL()));
+					a = mem.read(0xFF00 + c) & 0xFF;
 					cv = 8;
 					break;
 				case 0xF3: // DI
@@ -2224,7 +2326,7 @@ public final class PgbCpu {
 					cv = 4;
 					break;
 				case 0xF5: // PUSH AF
-					push(AF);
+					push(a << 8 | getF());
 					cv = 16;
 					break;
 				case 0xF6: // OR   nn
@@ -2236,15 +2338,15 @@ public final class PgbCpu {
 					cv = 16;
 					break;
 				case 0xF8: // LD   HL,SP+dd
-					HL.setR(SP.getR() + (byte)readByte());
+					hl = sp + (byte)readByte() & 0xFFFF;
 					cv = 12;
 					break;
 				case 0xF9: // LD   SP,HL
-					SP.setR(HL.getR());
+					sp = hl;
 					cv = 8;
 					break;
 				case 0xFA: // LD   A,(nnnn)
-					AF.setH(mem.read(readWord()));
+					a = mem.read(readWord()) & 0xFF;
 					cv = 16;
 					break;
 				case 0xFB: // EI
@@ -2276,11 +2378,12 @@ public final class PgbCpu {
 			mem.cycle(cv);
 			
 			// loop
-			cte -= cv;		
+			cte -= cv;
 		}
 	}
 	
 	private void interrupt(int i) {
+		halted = false;
 		if((i & PgbMemory.INT_VBLANK) == PgbMemory.INT_VBLANK) {
 			// vBlank
 			mem.IF &= ~PgbMemory.INT_VBLANK;
@@ -2326,6 +2429,31 @@ public final class PgbCpu {
 		ime = true;
 	}
 	
+	/**
+	 * register pairs
+	 */
+	public int bc() {
+		return b << 8 | c;
+	}
+	public int de() {
+		return d << 8 | e;
+	}
+	public void setAF(int val) {
+		a = val >> 8;
+		zres = ~val & Z_FLAG;
+		nflag = (val & N_FLAG) != 0;
+		cres = (val & C_FLAG) << 4;
+		fother = val & (H_FLAG | 0x0F);
+	}
+	public void setBC(int val) {
+		b = val >> 8;
+		c = val & 0xFF;
+	}
+	public void setDE(int val) {
+		d = val >> 8;
+		e = val & 0xFF;
+	}
+	
 	/**
 	 * 8-bit acumulator arithmetic functions
 	 */
@@ -2334,170 +2462,113 @@ public final class PgbCpu {
 	 * add
 	 * @param val
 	 */
-	private void add(int val) {
-		int res = AF.getH() + val;
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		AF.setH(res);
+	public void add(int val) {
+		int res = a + val;
+		cres = res;
+		a = zres = res & 0xFF;
+		nflag = false;
 	}
 	
 	/**
 	 * add with carrier
 	 * @param val
 	 */
-	private void adc(int val) {
-		int res = AF.getH() + val + (getC() ? 1 : 0);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		AF.setH(res);
+	public void adc(int val) {
+		int res = a + val + (cres >> 8 & 1);
+		cres = res;
+		a = zres = res & 0xFF;
+		nflag = false;
 	}
 	
 	/**
 	 * substract
 	 * @param val
 	 */
-	private void sub(int val) {
-		int res = AF.getH() - val;
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(true);
-		AF.setH(res);
+	public void sub(int val) {
+		int res = a - val;
+		cres = res;
+		a = zres = res & 0xFF;
+		nflag = true;
 	}
 	
 	/**
 	 * substract with carrier
 	 * @param val
 	 */
-	private void sbc(int val) {
-		int res = AF.getH() - val - (getC() ? 1 : 0);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(true);
-		AF.setH(res);
+	public void sbc(int val) {
+		int res = a - val - (cres >> 8 & 1);
+		cres = res;
+		a = zres = res & 0xFF;
+		nflag = true;
 	}
 	
 	/**
 	 * logical and
 	 * @param val
 	 */
-	private void and(int val) {
-		int res = AF.getH() & val;
-		setC(false);
-		setZ(res);
-		setN(false);
-		AF.setH(res);
+	public void and(int val) {
+		a = zres = a & val;
+		cres = 0;
+		nflag = false;
 	}	
 	
 	/**
 	 * or
 	 * @param val
 	 */
-	private void or(int val) {
-		int res = AF.getH() | val;
-		setC(false);
-		setZ(res);
-		setN(false);
-		AF.setH(res);
+	public void or(int val) {
+		a = zres = a | val;
+		cres = 0;
+		nflag = false;
 	}
 	
 	/**
 	 * exclusive or
 	 * @param val
 	 */
-	private void xor(int val) {
-		int res = AF.getH() ^ val;
-		setC(false);
-		setZ(res);
-		setN(false);
-		AF.setH(res);
+	public void xor(int val) {
+		a = zres = a ^ val;
+		cres = 0;
+		nflag = false;
 	}	
 	
 	/**
 	 * compare
 	 * @param val
 	 */
-	private void cp(int val) {
-		setC(AF.getH() < val);
-		setZ(AF.getH() == val);
-		setN(true);
+	public void cp(int val) {
+		// negative, so bit 8 set, when a < val
+		cres = zres = a - val;
+		nflag = true;
 	}
 	
 	/**
-	 * 8-bit register arithmetic functions
+	 * 8-bit register arithmetic functions.  These take the
+	 * current value of a register (or memory location) and
+	 * return the new one, so the caller stores it wherever
+	 * it belongs.
 	 */
 	
 	/**
-	 * increase higher
-	 * @param reg
-	 */
-	private void incH(PgbRegister reg) {
-		int res = (reg.getH() + 1);
-		res &= 0xFF;
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	
-	/**
-	 * increase lower
-	 * @param reg
-	 */
-	private void incL(PgbRegister reg) {
-		int res = (reg.getL() + 1);
-		res &= 0xFF;
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	
-	/**
-	 * increase memory location (?)
-	 * @param reg
-	 */
-	private void incI(PgbRegister reg) {
-		int res = reg.getI(mem) + 1;
-		res &= 0xFF;
-		setZ(res);
-		setN(false);
-		reg.setI(res, mem);
-	}
-
-	/**
-	 * decrease higher
-	 * @param reg
-	 */
-	private void decH(PgbRegister reg) {
-		int res = reg.getH() - 1;
-		res &= 0xFF;
-		setZ(res);
-		setN(true);
-		reg.setH(res);
-	}
-	
-	/**
-	 * decrease lower
-	 * @param reg
+	 * increase
+	 * @param val
 	 */
-	private void decL(PgbRegister reg) {
-		int res = reg.getL() - 1;
-		res &= 0xFF;
-		setZ(res);
-		setN(true);
-		reg.setL(res);
+	public int inc(int val) {
+		int res = (val + 1) & 0xFF;
+		zres = res;
+		nflag = false;
+		return res;
 	}
 	
 	/**
-	 * decrease memory location(?)
-	 * @param reg
+	 * decrease
+	 * @param val
 	 */
-	private void decI(PgbRegister reg) {
-		int res = reg.getI(mem) - 1;
-		res &= 0xFF;
-		setZ(res);
-		setN(true);
-		reg.setI(res, mem);
+	public int dec(int val) {
+		int res = (val - 1) & 0xFF;
+		zres = res;
+		nflag = true;
+		return res;
 	}
 
 	/**
@@ -2505,279 +2576,135 @@ public final class PgbCpu {
 	 */
 	
 	/**
-	 * increase register
-	 * @param reg
-	 */
-	private void incR(PgbRegister reg) {
-		reg.setR(reg.getR() + 1 & 0xFFFF);
-	}
-	
-	/**
-	 * decrease register
-	 * @param reg
-	 */
-	private void decR(PgbRegister reg) {
-		reg.setR(reg.getR() - 1 & 0xFFFF);
-	}
-	
-	/**
-	 * add register reg1 to register reg0
-	 * @param reg0
-	 * @param reg1
+	 * add a register word to HL
+	 * @param val
 	 */
-	private void addR(PgbRegister reg0, PgbRegister reg1) {
-		int res = reg0.getR() + reg1.getR();
-		setC(res != (res &= 0xFFFF));
-		reg0.setR(res);
+	public void addHL(int val) {
+		int res = hl + val;
+		// the carry out of bit 15 lands on bit 8
+		cres = res >> 8;
+		hl = res & 0xFFFF;
 	}
 	
 	/**
 	 * stack
 	 */
-	private void pop(PgbRegister reg) {
-		reg.setL(mem.read(SP.data++));
-		reg.setH(mem.read(SP.data++));
+	public int pop() {
+		int lo = mem.read(sp++) & 0xFF;
+		return (mem.read(sp++) & 0xFF) << 8 | lo;
 	}
-	private void push(PgbRegister reg) {
+	public void push(int val) {
 		// arggh. some roms push with SP == 0x0000,
 		// totally ruining the elegance of this expression
-		mem.write(--SP.data & 0xFFFF, reg.getH());
-		SP.data &= 0xFFFF;
-		mem.write(--SP.data, reg.getL());
+		sp = (sp - 1) & 0xFFFF;
+		mem.write(sp, val >> 8);
+		mem.write(--sp, val & 0xFF);
 	}
 	
 	/**
 	 * jumping around...
 	 */
 	private void jp(int address) {
-		PC.setR(address);
+		pc = address;
 	}
 	private void jr(int offset) {
-		PC.setR(PC.getR() + (byte)offset);
+		pc = pc + (byte)offset;
 	}
 	private void call(int address) {
-		push(PC);
-		PC.setR(address);
+		push(pc);
+		pc = address;
 	}
 	private void rst(int address) {
-		push(PC);
-		PC.setR(address);
+		push(pc);
+		pc = address;
 	}
 	private void ret() {
-		pop(PC);
+		pc = pop();
 	}
 	
 	/**
 	 * bitwise operators
 	 */
-	private void bit(int bit, int val) {
-		int res = val & 1 << bit;
-		setZ(res);
-		setN(false);
-	}
-	private void resH(int bit, PgbRegister reg) {
-		int res = reg.getH() & ~(1 << bit);
-		reg.setH(res);
-	}
-	private void resL(int bit, PgbRegister reg) {
-		int res = reg.getL() & ~(1 << bit);
-		reg.setL(res);
-	}
-	private void resI(int bit, int address) {
-		int res = unsign(mem.read(address)) & ~(1 << bit);
-		mem.write(address, res);
-	}
-	private void setH(int bit, PgbRegister reg) {
-		int res = reg.getH() | 1 << bit;
-		reg.setH(res);
-	}
-	private void setL(int bit, PgbRegister reg) {
-		int res = reg.getL() | 1 << bit;
-		reg.setL(res);
-	}
-	private void setI(int bit, int address) {
-		int res = unsign(mem.read(address)) | 1 << bit;
-		mem.write(address, res);
+	public void bit(int bit, int val) {
+		zres = val & 1 << bit;
+		nflag = false;
 	}
 	
 	/**
-	 * rotates and shifts
+	 * rotates and shifts.  The ones going right put the bit
+	 * shifted out on bit 8 of cres, the ones going left
+	 * find it there already.
 	 */
-	private void rrcH(PgbRegister reg) {
-		int res = reg.getH();
-		setC((res & 0x01) == 1);
-		res = (res >> 1) | ((res & 0x01) << 7);
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void rrcL(PgbRegister reg) {
-		int res = reg.getL();
-		setC((res & 0x01) == 1);
-		res = (res >> 1) | ((res & 0x01) << 7);
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	private void rrcI(int address) {
-		int res = unsign(mem.read(address));
-		setC((res & 0x01) == 1);
-		res = (res >> 1) | ((res & 0x01) << 7);
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
-	}
-	private void rrH(PgbRegister reg) {
-		int res = reg.getH();
-		res = (res >> 1) | (getC() ? 0x80 : 0);
-		setC((reg.getH() & 0x01) == 1);
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void rrL(PgbRegister reg) {
-		int res = reg.getL();
-		res = (res >> 1) | (getC() ? 0x80 : 0);
-		setC((reg.getL() & 0x01) == 1);
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	private void rrI(int address) {
-		int res = unsign(mem.read(address));
-		res = (res >> 1) | (getC() ? 0x80 : 0);
-		setC((unsign(mem.read(address)) & 0x01) == 1);
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
-	}
-	private void rlcH(PgbRegister reg) {
-		int res = reg.getH();
-		res = (res << 1) | (res >> 7);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void rlcL(PgbRegister reg) {
-		int res = reg.getL();
-		res = (res << 1) | (res >> 7);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	private void rlcI(int address) {
-		int res = unsign(mem.read(address));
-		res = (res << 1) | (res >> 7);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
-	}
-	private void rlH(PgbRegister reg) {
-		int res = (reg.getH() << 1) | (getC() ? 1 : 0);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void rlL(PgbRegister reg) {
-		int res = (reg.getL() << 1) | (getC() ? 1 : 0);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	private void rlI(int address) {
-		int res = (unsign(mem.read(address)) << 1) | (getC() ? 1 : 0);
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
-	}
-	private void sraH(PgbRegister reg) {
-		int res = reg.getH();
-		setC((res & 1) == 1);
-		res = (res >> 1) | (res & 0x80);
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void sraL(PgbRegister reg) {
-		int res = reg.getL();
-		setC((res & 1) == 1);
-		res = (res >> 1) | (res & 0x80);
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	private void sraI(int address) {
-		int res = unsign(mem.read(address));
-		setC((res & 1) == 1);
-		res = (res >> 1) | (res & 0x80);
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
-	}
-	private void slaH(PgbRegister reg) {
-		int res = reg.getH() << 1;
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void slaL(PgbRegister reg) {
-		int res = reg.getL() << 1;
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	private void slaI(int address) {
-		int res = unsign(mem.read(address));
-		res *= 2;
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
-	}
-	private void srlH(PgbRegister reg) {
-		int res = reg.getH();
-		setC((res & 1) == 1);
-		res >>= 1;
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void srlL(PgbRegister reg) {
-		int res = reg.getL();
-		setC((res & 1) == 1);
-		res >>= 1;
-		setZ(res);
-		setN(false);
-		reg.setL(res);
+	public int rrc(int val) {
+		cres = val << 8;
+		int res = (val >> 1) | ((val & 0x01) << 7);
+		zres = res;
+		nflag = false;
+		return res;
+	}
+	public int rr(int val) {
+		int res = (val >> 1) | (cres >> 1 & 0x80);
+		cres = val << 8;
+		zres = res;
+		nflag = false;
+		return res;
+	}
+	public int rlc(int val) {
+		int res = (val << 1) | (val >> 7);
+		cres = res;
+		res &= 0xFF;
+		zres = res;
+		nflag = false;
+		return res;
 	}
-	private void srlI(int address) {
-		int res = unsign(mem.read(address));
-		setC((res & 1) == 1);
-		res >>= 1;
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
+	public int rl(int val) {
+		int res = (val << 1) | (cres >> 8 & 1);
+		cres = res;
+		res &= 0xFF;
+		zres = res;
+		nflag = false;
+		return res;
+	}
+	public int sra(int val) {
+		cres = val << 8;
+		int res = (val >> 1) | (val & 0x80);
+		zres = res;
+		nflag = false;
+		return res;
+	}
+	public int sla(int val) {
+		int res = val << 1;
+		cres = res;
+		res &= 0xFF;
+		zres = res;
+		nflag = false;
+		return res;
+	}
+	public int srl(int val) {
+		cres = val << 8;
+		int res = val >> 1;
+		zres = res;
+		nflag = false;
+		return res;
+	}
+	public int swap(int val) {
+		int res = ((val << 4) & 0xF0) | (val >> 4);
+		cres = 0;
+		zres = res;
+		nflag = false;
+		return res;
 	}
 	
 	/**
 	 * misc operations
 	 */
-	private void cpl() {
-		int res = ~AF.getH() & 0xFF;
-		setN(true);
-		AF.setH(res);
+	public void cpl() {
+		a = ~a & 0xFF;
+		nflag = true;
 	}
-	private void daa() {
-		int res = AF.getH();
-		if(getN()) {
+	public void daa() {
+		int res = a;
+		if(nflag) {
 			if(res / 16 > 9) {
 				res -= 0x60;
 			}
@@ -2792,87 +2719,50 @@ public final class PgbCpu {
 				res += 0x06;
 			}
 		}
-		setC(res != (res &= 0xFF));
-		setZ(res);
-		AF.setH(res);
-	}
-	private void swapH(PgbRegister reg) {
-		int res = ((reg.getH() << 4) & 0xF0) | (reg.getH() >> 4);
-		setC(false);
-		setZ(res);
-		setN(false);
-		reg.setH(res);
-	}
-	private void swapL(PgbRegister reg) {
-		int res = ((reg.getL() << 4) & 0xF0) | (reg.getL() >> 4);
-		setC(false);
-		setZ(res);
-		setN(false);
-		reg.setL(res);
-	}
-	private void swapI(int address) {
-		int res = ((unsign(mem.read(address)) << 4) & 0xF0) | (unsign(mem.read(address)) >> 4);
-		setC(false);
-		setZ(res);
-		setN(false);
-		mem.write(address, res);
+		cres = (res & ~0xFF) != 0 ? 0x100 : 0;
+		a = zres = res & 0xFF;
 	}
 	
 	/**
 	 * flaggies?
 	 */
-	private void setZ(boolean zval) {
-		AF.lo &= ~Z_FLAG;
-		if(zval) {
-			AF.lo |= Z_FLAG;
-		}
+	public int getF() {
+		return (zres == 0 ? Z_FLAG : 0)
+			| (nflag ? N_FLAG : 0)
+			| (cres & 0x100) >> 4
+			| fother;
 	}
-	private void setZ(int zval) {
-		AF.lo &= ~Z_FLAG;
-		if(zval == 0) {
-			AF.lo |= Z_FLAG;
-		}
-	}
-	private void setN(boolean nval) {
-		AF.lo &= ~N_FLAG;
-		if(nval) {
-			AF.lo |= N_FLAG;
-		}
+	public void setZ(boolean zval) {
+		zres = zval ? 0 : 1;
 	}
 	private void setH(boolean hval) {
-		AF.lo &= ~H_FLAG;
-		if(hval) {
-			AF.lo |= H_FLAG;
-		}
+		fother = hval ? fother | H_FLAG : fother & ~H_FLAG;
 	}
-	private void setC(boolean cval) {
-		AF.lo &= ~C_FLAG;
-		if(cval) {
-			AF.lo |= C_FLAG;
-		}
+	public void setC(boolean cval) {
+		cres = cval ? 0x100 : 0;
 	}
 	private boolean getZ() {
-		return (AF.getL() & Z_FLAG) == Z_FLAG;
+		return zres == 0;
 	}
 	private boolean getN() {
-		return (AF.getL() & N_FLAG) == N_FLAG;
+		return nflag;
 	}
 	private boolean getH() {
-		return (AF.getL() & H_FLAG) == H_FLAG;
+		return (fother & H_FLAG) == H_FLAG;
 	}
-	private boolean getC() {
-		return (AF.getL() & C_FLAG) == C_FLAG;
+	public boolean getC() {
+		return (cres & 0x100) != 0;
 	}
 	
 	/**
 	 * reads
 	 */
 	private int readWord() {
-		return unsign(mem.read(PC.data++)) | unsign(mem.read(PC.data++)) << 8;
+		return unsign(mem.read(pc++)) | unsign(mem.read(pc++)) << 8;
 	}
 	
 	private int readByte() {
-		return unsign(mem.read(PC.data++));
+		return unsign(mem.read(pc++));
 	}
 	
 	/**
@@ -2880,12 +2770,12 @@ public final class PgbCpu {
 	 */
 	private void unsupportedCB(int cb) {
 		System.out.println("unsupported CB code: " + Integer.toHexString(cb));
-		//PgbSettings.paused = true;
+		//settings.paused = true;
 	}
 	
 	private void unsupported(int op) {
-		System.out.println(Integer.toHexString(PC.data - 1) + " unsupported opcode: " + Integer.toHexString(op));
-		//PgbSettings.paused = true;;
+		System.out.println(Integer.toHexString(pc - 1) + " unsupported opcode: " + Integer.toHexString(op));
+		//settings.paused = true;;
 	}
 	
 	/**
@@ -75,16 +75,16 @@ public class PgbDirectVideoOutput extends PgbVideoOutput {
 	public void update(Graphics g) {
 
         //TODO - update stuff in ere
-		if(PgbSettings.sgbborder) {
-			g.drawImage(screenMImg, 48 * PgbSettings.lcdsize, 40 * PgbSettings.lcdsize, 160 * PgbSettings.lcdsize, 144 * PgbSettings.lcdsize, this);
-			//g.drawImage(borderMImg, 0, 0, 256 * PgbSettings.lcdsize, 224 * PgbSettings.lcdsize, this);
+		if(video.settings.sgbborder) {
+			g.drawImage(screenMImg, 48 * video.settings.lcdsize, 40 * video.settings.lcdsize, 160 * video.settings.lcdsize, 144 * video.settings.lcdsize, this);
+			//g.drawImage(borderMImg, 0, 0, 256 * video.settings.lcdsize, 224 * video.settings.lcdsize, this);
 			// don't trust the border transparency
-			g.drawImage(borderMImg, 0, 0, 256 * PgbSettings.lcdsize, 40 * PgbSettings.lcdsize, 0, 0, 256, 40, this);
-			g.drawImage(borderMImg, 0, 40 * PgbSettings.lcdsize, 48 * PgbSettings.lcdsize, 184 * PgbSettings.lcdsize, 0, 40, 48, 184, this);
-			g.drawImage(borderMImg, 208 * PgbSettings.lcdsize, 40 * PgbSettings.lcdsize, 256 * PgbSettings.lcdsize, 184 * PgbSettings.lcdsize, 208, 40, 256, 184, this);
-			g.drawImage(borderMImg, 0, 184 * PgbSettings.lcdsize, 256 * PgbSettings.lcdsize, 224 * PgbSettings.lcdsize, 0, 184, 256, 224, this);
+			g.drawImage(borderMImg, 0, 0, 256 * video.settings.lcdsize, 40 * video.settings.lcdsize, 0, 0, 256, 40, this);
+			g.drawImage(borderMImg, 0, 40 * video.settings.lcdsize, 48 * video.settings.lcdsize, 184 * video.settings.lcdsize, 0, 40, 48, 184, this);
+			g.drawImage(borderMImg, 208 * video.settings.lcdsize, 40 * video.settings.lcdsize, 256 * video.settings.lcdsize, 184 * video.settings.lcdsize, 208, 40, 256, 184, this);
+			g.drawImage(borderMImg, 0, 184 * video.settings.lcdsize, 256 * video.settings.lcdsize, 224 * video.settings.lcdsize, 0, 184, 256, 224, this);
 		} else {
-			g.drawImage(screenMImg, 0, 0, 160 * PgbSettings.lcdsize, 144 * PgbSettings.lcdsize, this);
+			g.drawImage(screenMImg, 0, 0, 160 * video.settings.lcdsize, 144 * video.settings.lcdsize, this);
 		}
 
         if(super.tempGraphics == null)
@@ -0,0 +1,91 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+/**
+ * PgbFrameOutput is a video output without a screen.  It
+ * turns each line into 32-bit ARGB pixels as it is drawn, and
+ * at vblank hands the finished frame over to whoever wants to
+ * show it, usually a render thread that isn't the emulator's.
+ *
+ * There are three frames: the one being drawn, the last
+ * finished one, and the one the reader is showing.  Handing
+ * them over is a single atomic swap on either side, so the
+ * emulator never waits for the reader and the reader never
+ * sees a half drawn frame.  Nothing is allocated per frame.
+ */
+public class PgbFrameOutput extends PgbVideoOutput {
+	public static final int		WIDTH = 160;
+	public static final int		HEIGHT = 144;
+
+	/**
+	 * One frame of ARGB pixels, WIDTH * HEIGHT of them.
+	 */
+	public static final class Frame {
+		public final int[]		pixels = new int[WIDTH * HEIGHT];
+		/** counts up from 1 with every finished frame */
+		public long				number;
+	}
+
+	// owned by the emulator
+	private Frame				back;
+	private long				framecount;
+	// the last finished frame, up for grabs
+	private final AtomicReference<Frame> ready;
+	// owned by the reader
+	private Frame				front;
+
+	public PgbFrameOutput(PgbVideo video) {
+		super(video);
+		back = new Frame();
+		ready = new AtomicReference<Frame>(new Frame());
+		front = new Frame();
+	}
+
+	public void setGraphics() {
+	}
+
+	public void reset() {
+	}
+
+	public void hblank(int line) {
+		int[] pixels = back.pixels;
+		int offset = line * WIDTH;
+		for(int i = 0; i < WIDTH; i++) {
+			pixels[offset + i] = video.getScreenColor(video.getScreenMemory(offset + i));
+		}
+	}
+
+	public void vblank() {
+		back.number = ++framecount;
+		back = ready.getAndSet(back);
+	}
+
+	/**
+	 * Returns the newest finished frame.  Only one thread may
+	 * call this, and the frame it returns stays untouched
+	 * until that thread calls it again.
+	 */
+	public Frame getFrame() {
+		if(ready.get().number > front.number) {
+			front = ready.getAndSet(front);
+		}
+		return front;
+	}
+
+	public void makeScreenshot() {
+		Frame frame = ready.get();
+		BufferedImage bi = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		bi.setRGB(0, 0, WIDTH, HEIGHT, frame.pixels, 0, WIDTH);
+		try {
+			ImageIO.write(bi, "png", new File("AEPgb-" + System.currentTimeMillis() + ".png"));
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PgbHost runs any number of emulators on a fixed pool of
+ * worker threads, one per host core unless told otherwise.
+ *
+ * Each running emulator is a task that runs one frame (see
+ * AEPgb.runFrame()) and then reschedules itself for the start
+ * of its next frame.  The pool always takes the task whose
+ * deadline is earliest, so every emulator gets its turn no
+ * matter how many there are.  A paused or inactive emulator
+ * is simply not rescheduled and uses no thread at all until
+ * wake() is called for it again.
+ *
+ * An emulator that falls behind runs its late frames back to
+ * back until it has caught up, as long as it is no more than
+ * settings.catchup frames behind.  Past that it drops the
+ * frames it missed, counting them in AEPgb.framesMissed, and
+ * starts again from now.  How late each on-time frame starts
+ * is kept in AEPgb.frameJitter.
+ *
+ * After each frame the emulator gets to decide, from the time
+ * left until its next frame starts, whether that frame is worth
+ * drawing.  See AEPgb.planFrame().
+ */
+public final class PgbHost {
+	/** cpu cycles in one gameboy frame at the normal clock speed */
+	public static final int			FRAME_CYCLES = 70224;
+	/** length of one gameboy frame (59.73 Hz), at 4.194304 MHz */
+	public static final long		FRAME_NANOS = FRAME_CYCLES * 1000000000L / 4194304;
+
+	private static PgbHost			shared;
+
+	private ScheduledThreadPoolExecutor	pool;
+
+	public PgbHost(int workers) {
+		pool = new ScheduledThreadPoolExecutor(workers, new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Pgb worker " + count++);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * The host every AEPgb uses unless it is given another.
+	 */
+	public static synchronized PgbHost getShared() {
+		if(shared == null) {
+			shared = new PgbHost(Runtime.getRuntime().availableProcessors());
+		}
+		return shared;
+	}
+
+	/**
+	 * Starts running pgb's frames, unless they already are or
+	 * pgb isn't runnable.  Call this whenever pgb is unpaused
+	 * or becomes active.
+	 */
+	public void wake(AEPgb pgb) {
+		synchronized(pgb) {
+			if(pgb.scheduled || !pgb.isRunnable()) {
+				return;
+			}
+			pgb.scheduled = true;
+		}
+		pool.execute(new Machine(pgb));
+	}
+
+	/**
+	 * Stops the workers.  Emulators on this host won't run
+	 * again.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * The task that runs one emulator, a frame at a time.
+	 */
+	private final class Machine implements Runnable {
+		private AEPgb	pgb;
+		private long	deadline;
+
+		Machine(AEPgb pgb) {
+			this.pgb = pgb;
+			deadline = System.nanoTime();
+		}
+
+		public void run() {
+			synchronized(pgb) {
+				if(!pgb.isRunnable()) {
+					// goes to sleep until wake()
+					pgb.scheduled = false;
+					return;
+				}
+			}
+
+			long now = System.nanoTime();
+			long late = now - deadline;
+			if(late > Math.max(1, pgb.settings.catchup) * FRAME_NANOS) {
+				// too far behind, drop the frames we missed
+				pgb.framesMissed += late / FRAME_NANOS;
+				deadline = now;
+			} else if(late < FRAME_NANOS) {
+				// woke up for this frame, not catching up
+				pgb.frameJitter += (Math.abs(late) - pgb.frameJitter) / 16;
+			}
+
+			try {
+				pgb.runFrame();
+			} catch(RuntimeException e) {
+				System.out.println("emulation stopped:");
+				e.printStackTrace();
+				synchronized(pgb) {
+					pgb.scheduled = false;
+				}
+				return;
+			}
+			pgb.framesDelivered++;
+
+			if(pgb.settings.autowait) {
+				deadline += FRAME_NANOS;
+			} else {
+				// flat out, but still let the others have a go
+				deadline = System.nanoTime();
+			}
+			long delay = deadline - System.nanoTime();
+			pgb.planFrame(delay);
+			pool.schedule(this, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+}
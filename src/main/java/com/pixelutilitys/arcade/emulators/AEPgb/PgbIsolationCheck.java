@@ -0,0 +1,156 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * PgbIsolationCheck checks that emulators running side by side
+ * in one JVM don't share any state.  It exits with status 1
+ * if they do, so it can run as part of a build.
+ *
+ * Three different roms are run, first each on its own, then
+ * all of them at once, twice each, on threads of their own:
+ * the cpu and render roms of PgbBenchmark on a plain gameboy,
+ * and a gameboy color rom that switches to double speed and
+ * then keeps reading LY into wram.  The double speed rom
+ * changes the clock speed and the system type is not the same
+ * for all, so anything of that left shared between emulators
+ * shows up as a different frame count or checksum than the
+ * rom got on its own.  Every run is the same number of cycles
+ * in the same slices, so these must match exactly.
+ *
+ * usage: PgbIsolationCheck [slices]
+ */
+public final class PgbIsolationCheck implements Runnable {
+
+	private static final int[] SPEED_PROGRAM = {
+		// 0100: DI / LD A,01 / LDH (4D),A / STOP (double speed)
+		0xF3, 0x3E, 0x01, 0xE0, 0x4D, 0x10, 0x00,
+		// 0107: LD A,91 / LDH (40),A (lcd on) / LD HL,C000
+		0x3E, 0x91, 0xE0, 0x40, 0x21, 0x00, 0xC0,
+		// 010E: LDH A,(44) / ADD A,(HL) / LDI (HL),A / LD A,H / CP D0 / JR NZ,010E
+		0xF0, 0x44, 0x86, 0x22, 0x7C, 0xFE, 0xD0, 0x20, 0xF7,
+		// 0117: LD HL,C000 / JR 010E
+		0x21, 0x00, 0xC0, 0x18, 0xF2
+	};
+
+	private static final String[] ROMS = {"cpu", "render", "double speed"};
+
+	/** a quarter of a frame at normal speed */
+	private static final int SLICE = PgbHost.FRAME_CYCLES / 4;
+
+	private final String rom;
+	private final int slices;
+	private final CountDownLatch start;
+
+	private PgbSettings settings;
+	private long frames;
+	private int checksum;
+
+	private PgbIsolationCheck(String rom, int slices, CountDownLatch start) {
+		this.rom = rom;
+		this.slices = slices;
+		this.start = start;
+	}
+
+	public void run() {
+		settings = new PgbSettings();
+		PgbVideo video = new PgbCachedVideo(settings);
+		PgbCpu cpu;
+		if(rom.equals("double speed")) {
+			settings.system = PgbSettings.SYS_GBC;
+			cpu = makeMachine(settings, video, SPEED_PROGRAM);
+		} else {
+			cpu = PgbBenchmark.makeMachine(settings, video, rom.equals("render"));
+		}
+		if(start != null) {
+			start.countDown();
+			try {
+				start.await();
+			} catch(InterruptedException e) {
+				return;
+			}
+		}
+		for(int i = 0; i < slices; i++) {
+			cpu.exec(SLICE);
+			if(start != null) {
+				// give the others every chance to get in between
+				Thread.yield();
+			}
+		}
+		frames = video.framecount;
+		byte[] screen = video.getScreenMemory();
+		for(int i = 0; i < screen.length; i++) {
+			checksum = checksum * 31 + screen[i];
+		}
+		for(int i = 0xC000; i < 0xE000; i++) {
+			checksum = checksum * 31 + cpu.mem.read(i);
+		}
+	}
+
+	/**
+	 * Builds a machine with program at 0100 in its cart, like
+	 * PgbBenchmark.makeMachine().
+	 */
+	private static PgbCpu makeMachine(PgbSettings settings, PgbVideo video, int[] program) {
+		PgbCart cart = new PgbCart();
+		cart.romdata = new byte[0x8000];
+		cart.ramdata = new byte[0x2000];
+		for(int i = 0; i < program.length; i++) {
+			cart.romdata[0x0100 + i] = (byte)program[i];
+		}
+		PgbBenchmark.discardOutput(video);
+		PgbMemory mem = new PgbMemory(settings, cart, video, new PgbJoypad(settings), new PgbNetplay(settings));
+		PgbCpu cpu = new PgbCpu(mem);
+		video.reset();
+		cart.reset();
+		mem.reset();
+		cpu.reset();
+		return cpu;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int slices = args.length > 0 ? Integer.parseInt(args[0]) : 2400;
+		boolean ok = true;
+
+		// each rom on its own
+		PgbIsolationCheck[] alone = new PgbIsolationCheck[ROMS.length];
+		for(int i = 0; i < ROMS.length; i++) {
+			alone[i] = new PgbIsolationCheck(ROMS[i], slices, null);
+			alone[i].run();
+			System.out.println(ROMS[i] + " alone: " + alone[i].frames + " frames, checksum " + Integer.toHexString(alone[i].checksum)
+				+ ", clock " + alone[i].settings.clockspeed + " MHz");
+		}
+		// the check is only worth something if the roms really differ in speed
+		if(alone[2].settings.clockspeed < 8 || alone[2].frames >= alone[1].frames) {
+			System.out.println("double speed rom didn't switch speed!");
+			ok = false;
+		}
+
+		// all at once
+		int count = ROMS.length * 2;
+		PgbIsolationCheck[] together = new PgbIsolationCheck[count];
+		Thread[] threads = new Thread[count];
+		CountDownLatch start = new CountDownLatch(count);
+		for(int i = 0; i < count; i++) {
+			together[i] = new PgbIsolationCheck(ROMS[i % ROMS.length], slices, start);
+			threads[i] = new Thread(together[i], "Pgb isolation " + i);
+			threads[i].start();
+		}
+		for(int i = 0; i < count; i++) {
+			threads[i].join();
+		}
+		for(int i = 0; i < count; i++) {
+			PgbIsolationCheck mine = together[i];
+			PgbIsolationCheck own = alone[i % ROMS.length];
+			boolean same = mine.frames == own.frames && mine.checksum == own.checksum;
+			System.out.println(mine.rom + " together: " + mine.frames + " frames, checksum " + Integer.toHexString(mine.checksum)
+				+ (same ? "" : " DIFFERS!"));
+			ok &= same;
+		}
+
+		System.out.println(ok ? "emulators are isolated" : "emulators share state!");
+		if(!ok) {
+			System.exit(1);
+		}
+	}
+}
@@ -8,6 +8,7 @@ package com.pixelutilitys.arcade.emulators.AEPgb;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.nio.ByteBuffer;
 
 public class PgbJoypad implements KeyListener {
 	protected static final int	C_RIGHT		= 0x01;
@@ -35,6 +36,15 @@ public class PgbJoypad implements KeyListener {
 	
 	public byte					gbtype;
 	
+	// the buttons the game sees this frame, see latch()
+	private int					buttons;
+	
+	PgbSettings					settings;
+	
+	public PgbJoypad(PgbSettings settings) {
+		this.settings = settings;
+	}
+	
 	public void reset() {
 		c_right = false;
 		c_left = false;
@@ -45,13 +55,78 @@ public class PgbJoypad implements KeyListener {
 		b_select = false;
 		b_start = false;
 		
-		if(PgbSettings.system == PgbSettings.SYS_SGB) {
+		if(settings.system == PgbSettings.SYS_SGB) {
 			gbtype = (byte)0x00;
 		} else {
 			gbtype = (byte)0xC0;
 		}
 		
 		player = 0;
+		buttons = 0;
+	}
+	
+	/**
+	 * The buttons held right now, cursor in the low nibble
+	 * (C_*) and buttons in the high one (B_* << 4).
+	 */
+	public int getButtons() {
+		int held = 0;
+		held |= c_right		? C_RIGHT		: 0;
+		held |= c_left		? C_LEFT		: 0;
+		held |= c_up		? C_UP			: 0;
+		held |= c_down		? C_DOWN		: 0;
+		held |= b_a			? B_A << 4		: 0;
+		held |= b_b			? B_B << 4		: 0;
+		held |= b_select	? B_SELECT << 4	: 0;
+		held |= b_start		? B_START << 4	: 0;
+		return held;
+	}
+	
+	/**
+	 * Holds exactly the buttons in held, as getButtons()
+	 * returns them.
+	 */
+	public void setButtons(int held) {
+		c_right		= (held & C_RIGHT) != 0;
+		c_left		= (held & C_LEFT) != 0;
+		c_up		= (held & C_UP) != 0;
+		c_down		= (held & C_DOWN) != 0;
+		b_a			= (held & B_A << 4) != 0;
+		b_b			= (held & B_B << 4) != 0;
+		b_select	= (held & B_SELECT << 4) != 0;
+		b_start		= (held & B_START << 4) != 0;
+	}
+	
+	/**
+	 * Takes the buttons held now as the ones the game sees
+	 * until the next call, which comes at the start of every
+	 * frame.  A key pressed halfway through a frame then
+	 * can't change what the rest of that frame reads, so a
+	 * recorded movie (see PgbMovie) plays back the same.
+	 * Returns the buttons, as getButtons() does.
+	 */
+	public int latch() {
+		buttons = getButtons();
+		return buttons;
+	}
+	
+	/**
+	 * Writes the registers for a save state.  The buttons
+	 * are left out, they belong to whoever is playing now.
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.put(lastpoll).put(selected).put(player).put(gbtype);
+	}
+	
+	public void loadState(ByteBuffer buf) {
+		lastpoll = buf.get();
+		selected = buf.get();
+		player = buf.get();
+		gbtype = buf.get();
+	}
+	
+	public int stateSize() {
+		return 4;
 	}
 	
 	public void write(byte towrite) {
@@ -64,17 +139,11 @@ public class PgbJoypad implements KeyListener {
 		switch(selected) {
 		case 0x20 :
 			// cursor
-			low |= c_right	? C_RIGHT	: 0;
-			low |= c_left	? C_LEFT	: 0;
-			low |= c_up		? C_UP		: 0;
-			low |= c_down	? C_DOWN	: 0;
+			low = buttons & 0x0F;
 			break;
 		case 0x10 :
 			// buttons
-			low |= b_a		? B_A		: 0;
-			low |= b_b		? B_B		: 0;
-			low |= b_select	? B_SELECT	: 0;
-			low |= b_start	? B_START	: 0;
+			low = buttons >> 4;
 			break;
 		case 0x30:
 			// SGB kludge
@@ -94,17 +163,11 @@ public class PgbJoypad implements KeyListener {
 		poll = 0;
 		if((selected & 0x20) == 0) {
 			// cursor
-			poll |= c_right	? C_RIGHT	: 0;
-			poll |= c_left	? C_LEFT	: 0;
-			poll |= c_up	? C_UP		: 0;
-			poll |= c_down	? C_DOWN	: 0;
+			poll |= buttons & 0x0F;
 		}
 		if((selected & 0x10) == 0) {
 			// buttons
-			poll |= b_a		? B_A		: 0;
-			poll |= b_b		? B_B		: 0;
-			poll |= b_select? B_SELECT	: 0;
-			poll |= b_start	? B_START	: 0;
+			poll |= buttons >> 4;
 		}
 		
 		res = poll != lastpoll;
@@ -122,54 +185,54 @@ public class PgbJoypad implements KeyListener {
 	 */
 	public void keyPressed(KeyEvent ev) {
 
-		if(ev.getKeyCode() == PgbSettings.key_right) {
+		if(ev.getKeyCode() == settings.key_right) {
 			c_right = true;
 		}
-		else if(ev.getKeyCode() == PgbSettings.key_left) {
+		else if(ev.getKeyCode() == settings.key_left) {
 			c_left = true;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_up) {
+        else if(ev.getKeyCode() == settings.key_up) {
 			c_up = true;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_down) {
+        else if(ev.getKeyCode() == settings.key_down) {
 			c_down = true;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_a) {
+        else if(ev.getKeyCode() == settings.key_a) {
 			b_a = true;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_b) {
+        else if(ev.getKeyCode() == settings.key_b) {
 			b_b = true;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_select) {
+        else if(ev.getKeyCode() == settings.key_select) {
 			b_select = true;
 		}
-        else  if(ev.getKeyCode() == PgbSettings.key_start) {
+        else  if(ev.getKeyCode() == settings.key_start) {
 			b_start = true;
 		}
 	}
 	public void keyReleased(KeyEvent ev) {
-		if(ev.getKeyCode() == PgbSettings.key_right) {
+		if(ev.getKeyCode() == settings.key_right) {
 			c_right = false;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_left) {
+        else if(ev.getKeyCode() == settings.key_left) {
 			c_left = false;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_up) {
+        else if(ev.getKeyCode() == settings.key_up) {
 			c_up = false;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_down) {
+        else if(ev.getKeyCode() == settings.key_down) {
 			c_down = false;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_a) {
+        else if(ev.getKeyCode() == settings.key_a) {
 			b_a = false;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_b) {
+        else if(ev.getKeyCode() == settings.key_b) {
 			b_b = false;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_select) {
+        else if(ev.getKeyCode() == settings.key_select) {
 			b_select = false;
 		}
-        else if(ev.getKeyCode() == PgbSettings.key_start) {
+        else if(ev.getKeyCode() == settings.key_start) {
 			b_start = false;
 		}
 	}
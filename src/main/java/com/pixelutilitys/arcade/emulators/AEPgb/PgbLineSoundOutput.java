@@ -0,0 +1,129 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * PgbLineSoundOutput plays the sound through a Java Sound
+ * line.
+ *
+ * write() only puts the frame in a SoundBuffer.  A thread of
+ * its own takes it from there to the line, so the emulator
+ * never waits for the sound card: if it falls behind, the
+ * sound is dropped instead.
+ */
+public class PgbLineSoundOutput extends PgbSoundOutput {
+	/** The DataLine for outputting the sound */
+	private SourceDataLine		line;
+
+	/** Between the emulator and the sound thread */
+	private volatile SoundBuffer	buffer;
+	/** Feeds the buffer to the line */
+	private Thread				thread;
+	private volatile boolean	playing;
+
+	public boolean open(int sampleRate, int bufferLengthMsec) {
+		int frameSamples = (int)((sampleRate * PgbHost.FRAME_NANOS + 999999999) / 1000000000);
+		// four frames of sound, about 70 ms at any sample rate
+		buffer = new SoundBuffer(frameSamples * 4 * 4);
+		line = openLine(sampleRate, bufferLengthMsec);
+		if(line == null) {
+			return false;
+		}
+		final byte[] chunk = new byte[frameSamples * 4];
+		playing = true;
+		thread = new Thread(new Runnable() {
+			public void run() {
+				play(chunk);
+			}
+		}, "Pgb sound");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+		return true;
+	}
+
+	/**
+	 * Opens a line for 16-bit stereo at sampleRate, or returns
+	 * null if there is none.
+	 */
+	private static SourceDataLine openLine(int sampleRate, int bufferLengthMsec) {
+		try {
+			AudioFormat format =
+				new AudioFormat(
+					AudioFormat.Encoding.PCM_SIGNED,
+					sampleRate,
+					16,
+					2,
+					4,
+					sampleRate,
+					false);
+			DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, format);
+
+			if(!AudioSystem.isLineSupported(lineInfo)) {
+				System.out.println("Error: Can't find audio output system!");
+				return null;
+			}
+			SourceDataLine line = (SourceDataLine)AudioSystem.getLine(lineInfo);
+			// four bytes a sample, left and right
+			line.open(format, sampleRate * 4 * bufferLengthMsec / 1000);
+			line.start();
+			return line;
+		} catch(Exception e) {
+			System.out.println("Error: Audio system busy!");
+			return null;
+		}
+	}
+
+	public void write(byte[] b, int length) {
+		buffer.write(b, length);
+	}
+
+	/**
+	 * Stops the sound thread and closes the line.
+	 */
+	public void close() {
+		playing = false;
+		if(line != null) {
+			line.flush();
+			// lets a write that is waiting for room return
+			line.close();
+			line = null;
+		}
+		if(thread != null) {
+			try {
+				thread.join(1000);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	/**
+	 * The sound thread: moves whatever the emulator has mixed
+	 * to the line, waiting there until it has room.
+	 */
+	private void play(byte[] chunk) {
+		SourceDataLine line = this.line;
+		SoundBuffer buffer = this.buffer;
+		try {
+			while(playing) {
+				int n = buffer.read(chunk, chunk.length);
+				if(n == 0) {
+					LockSupport.parkNanos(1000000);
+				} else {
+					line.write(chunk, 0, n);
+				}
+			}
+		} catch(Exception e) {
+			// the emulator doesn't care, it only sees the buffer fill up
+			System.out.println("Error: Audio output failed!");
+			System.out.println(e.getMessage());
+		}
+	}
+}
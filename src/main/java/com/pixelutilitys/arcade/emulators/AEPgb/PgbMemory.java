@@ -7,18 +7,24 @@ package com.pixelutilitys.arcade.emulators.AEPgb;
  * modified by retroK, XTale and baka0815 2004 http://aepgb.aep-emu.de/
  */
 
+import java.nio.ByteBuffer;
+
 /**
  * PgbMemory controls the entire memory map of the Gameboy.
  * 
  * It also contains some executing code, mostly in cycle(),
  * which is responsible for controlling the hardware and
- * setting the interrupt flag each CPU cycle.
+ * setting the interrupt flag.  Each piece of hardware has a
+ * deadline for when it next needs attention; cycle() only
+ * counts cpu cycles until the earliest one and then services
+ * whatever is due.
  * 
  * Also, DMA functions are handled here and SGB calls are
  * interpreted here and then (usually) passed on to the
  * video hardware.
  */
 public final class PgbMemory {
+	public PgbSettings settings;
 	public PgbCart cart;
 	public PgbVideo video;
 	public PgbJoypad joy;
@@ -47,7 +53,6 @@ public final class PgbMemory {
 	public byte tac;
 
 	protected boolean timerOn;
-	protected int timeCounter;
 	protected int timeLimit;
 
 	public int div;
@@ -57,6 +62,27 @@ public final class PgbMemory {
 	public int cyclesLeft;
 	public int cyclesSkipped;
 
+	// the scheduler.  time is the cycle count at the last
+	// event, the others are the cycle counts at which the
+	// timer, lcd and serial port next need attention.
+	// Long.MAX_VALUE means never.
+	long time;
+	long timerEvent;
+	long videoEvent;
+	long serialEvent;
+
+	// the memory map, one entry per 256 byte page.  A page
+	// with an array behind it is accessed directly at
+	// page[address + offset], a null page goes through
+	// readHandler() or writeHandler().  The upper half is
+	// always null, so an address that ran off either end of
+	// the 16-bit space (a wrapping sp or pointer) still ends
+	// up in the handlers.
+	private final byte[][] readPages = new byte[0x200][];
+	private final int[] readOffsets = new int[0x200];
+	private final byte[][] writePages = new byte[0x200][];
+	private final int[] writeOffsets = new int[0x200];
+
 	// Super Gameboy stuff
 	protected int sgbBitCounter;
 	protected int sgbPacketCounter;
@@ -83,10 +109,12 @@ public final class PgbMemory {
 	int hdmaStop;
 
 	public PgbMemory(
+		PgbSettings settings,
 		PgbCart cart,
 		PgbVideo video,
 		PgbJoypad joy,
 		PgbNetplay net) {
+		this.settings = settings;
 		this.cart = cart;
 		this.video = video;
 		this.joy = joy;
@@ -121,7 +149,6 @@ public final class PgbMemory {
 		tac = 0;
 
 		timerOn = false;
-		timeCounter = 0;
 		timeLimit = 0;
 
 		div = 0xAF * 0x100;
@@ -137,10 +164,17 @@ public final class PgbMemory {
 		gbcRAM = (byte) 0x00;
 		loRAMOffset = 0xC000;
 
+		mapCart();
+		mapVram();
+		mapLoRAM();
+
 		gbcSpeed = (byte) 0x7E;
 
 		cycles = 0;
-		cyclesLeft = Integer.MAX_VALUE;
+		time = 0;
+		timerEvent = Long.MAX_VALUE;
+		scheduleVideo();
+		scheduleSerial();
 		recalcCyclesLeft();
 
 		hdmaDone = true;
@@ -168,26 +202,106 @@ public final class PgbMemory {
 	}
 
 	/**
-	 * Recaclulates the number of cycles left.  Called
-	 * when the timer, LCDC, LCY, or serial control is
-	 * changed.
+	 * Writes ram, the i/o state and the scheduler for a save
+	 * state.  The serial port is not saved, a netplay link
+	 * can't be, so it starts over from the netplay count.
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.put(hiRAM).put(loRAM).put(soundIO).put(sgbBuffer);
+		buf.put(IF).put(IE).put(tac).put(gbcRAM).put(gbcSpeed);
+		buf.put(rHDMA1).put(rHDMA2).put(rHDMA3).put(rHDMA4).put(hdmaLastMode);
+		buf.put((byte)((timerOn ? 1 : 0) | (sgbListening ? 2 : 0) | (hdmaDone ? 4 : 0) | (soundOn ? 8 : 0)));
+		buf.putInt(tima).putInt(tma).putInt(timeLimit).putInt(div);
+		buf.putInt(sgbBitCounter).putInt(sgbPacketCounter).putInt(sgbCommand).putInt(sgbPackets);
+		buf.putInt(loRAMOffset).putInt(hdmaSrc).putInt(hdmaDst).putInt(hdmaStop);
+		buf.putInt(cycles);
+		buf.putLong(time).putLong(timerEvent).putLong(videoEvent);
+	}
+
+	/**
+	 * Reads what saveState() wrote.  The cart and the video
+	 * have to be loaded first, the memory map is rebuilt from
+	 * their banks.
+	 */
+	public void loadState(ByteBuffer buf) {
+		buf.get(hiRAM).get(loRAM).get(soundIO).get(sgbBuffer);
+		IF = buf.get();
+		IE = buf.get();
+		tac = buf.get();
+		gbcRAM = buf.get();
+		gbcSpeed = buf.get();
+		rHDMA1 = buf.get();
+		rHDMA2 = buf.get();
+		rHDMA3 = buf.get();
+		rHDMA4 = buf.get();
+		hdmaLastMode = buf.get();
+		int flags = buf.get();
+		timerOn = (flags & 1) != 0;
+		sgbListening = (flags & 2) != 0;
+		hdmaDone = (flags & 4) != 0;
+		soundOn = (flags & 8) != 0;
+		tima = buf.getInt();
+		tma = buf.getInt();
+		timeLimit = buf.getInt();
+		div = buf.getInt();
+		sgbBitCounter = buf.getInt();
+		sgbPacketCounter = buf.getInt();
+		sgbCommand = buf.getInt();
+		sgbPackets = buf.getInt();
+		loRAMOffset = buf.getInt();
+		hdmaSrc = buf.getInt();
+		hdmaDst = buf.getInt();
+		hdmaStop = buf.getInt();
+		cycles = buf.getInt();
+		time = buf.getLong();
+		timerEvent = buf.getLong();
+		videoEvent = buf.getLong();
+
+		mapCart();
+		mapVram();
+		mapLoRAM();
+		scheduleSerial();
+		recalcCyclesLeft();
+	}
+
+	public int stateSize() {
+		return hiRAM.length + loRAM.length + soundIO.length + sgbBuffer.length + 11 + 13 * 4 + 3 * 8;
+	}
+
+	/**
+	 * Recaclulates the number of cycles left until the
+	 * earliest deadline.  Called whenever one of the
+	 * deadlines has been moved.
 	 */
 	public void recalcCyclesLeft() {
-		cyclesLeft = Integer.MAX_VALUE;
-		// check cycles until timer
-		if (timerOn && (timeLimit - timeCounter) < cyclesLeft) {
-			cyclesLeft = (timeLimit - timeCounter);
+		long next = timerEvent;
+		if (videoEvent < next) {
+			next = videoEvent;
 		}
-		// check cycles until next video mode switch
-		if (video.lcd_on && video.cyclesLeft() < cyclesLeft) {
-			cyclesLeft = video.cyclesLeft();
-		}
-		// check cycles until next serial check
-		if (net.cyclesLeft() < cyclesLeft) {
-			cyclesLeft = net.cyclesLeft();
+		if (serialEvent < next) {
+			next = serialEvent;
 		}
 		// of course, this can't guess when a joystick
 		// interrupt will occur.
+		next -= time;
+		cyclesLeft = next < Integer.MAX_VALUE ? (int) next : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Schedules the next lcd mode switch from the video's
+	 * own count.  Only valid right after that count was set.
+	 */
+	void scheduleVideo() {
+		videoEvent = video.lcd_on ? time + video.cycles : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Schedules the next serial check from the netplay
+	 * count.  Only valid right after that count was set.
+	 */
+	void scheduleSerial() {
+		int left = net.cyclesLeft();
+		serialEvent = left == Integer.MAX_VALUE ? Long.MAX_VALUE : time + left;
 	}
 
 	/**
@@ -195,70 +309,83 @@ public final class PgbMemory {
 	 * of cpu cycles specified had passed and sets the interrupt
 	 * register appropriately.
 	 * 
+	 * This is called after every instruction, so it only
+	 * counts; runEvents() does the work once a deadline has
+	 * been passed.
+	 * 
 	 * @param cv the number of cpu cycles to advance.
 	 */
 	public final void cycle(int cv) {
 		cycles += cv;
 		if (cycles > cyclesLeft) {
-			// divider register (is this right at all?)
-			// (does anything really use the divider register?)
-			div -= cyclesLeft;
-			if (div < 0) {
-				div = 0xFF * 0x100;
-			}
-			// timer (does timer run w/o timer interrupt enabled?)
-			if (timerOn) { // yes?
-				timeCounter += cyclesLeft;
-				if (timeCounter >= timeLimit) {
-					timeCounter = 0;
-					tima++;
-				}
-				if (tima > 255) {
-					tima = tma;
-					IF |= INT_TIMER;
-				}
-			}
-			// netplay cycle
-			/*if(true || (IE & INT_SERIAL) == INT_SERIAL)*/ {
-				IF |= net.cycle(cyclesLeft);
-			}
-			// video cycle
-			if (video.lcd_on) {
-				IF |= video.cycle(cyclesLeft, this);
+			runEvents();
+		}
+	}
+
+	/**
+	 * Moves time up to the earliest deadline and services
+	 * the hardware that is due then.  Everything else is left
+	 * alone until its own deadline comes around.
+	 */
+	private void runEvents() {
+		time += cyclesLeft;
+		// divider register (is this right at all?)
+		// (does anything really use the divider register?)
+		div -= cyclesLeft;
+		if (div < 0) {
+			div = 0xFF * 0x100;
+		}
+		// timer (does timer run w/o timer interrupt enabled?)
+		if (timerEvent <= time) { // yes?
+			tima++;
+			if (tima > 255) {
+				tima = tma;
+				IF |= INT_TIMER;
 			}
-			// hdma transfer
-			if (!hdmaDone) {
-				if (hdmaLastMode != PgbVideo.STAT_HBLANK
-					&& (byte) (video.getStat() & 0x03) == PgbVideo.STAT_HBLANK) {
-					// transfer 16 bytes
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					write(hdmaDst++, read(hdmaSrc++));
-					if (hdmaDst >= hdmaStop) {
-						hdmaDone = true;
-					}
+			timerEvent = time + timeLimit;
+		}
+		// netplay cycle
+		if (serialEvent <= time) {
+			IF |= net.cycle(net.serialCount);
+			scheduleSerial();
+		}
+		// video cycle
+		if (videoEvent <= time) {
+			IF |= video.cycle(video.cycles, this);
+			scheduleVideo();
+		}
+		// hdma transfer
+		if (!hdmaDone) {
+			if (hdmaLastMode != PgbVideo.STAT_HBLANK
+				&& (byte) (video.getStat() & 0x03) == PgbVideo.STAT_HBLANK) {
+				// transfer 16 bytes
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				write(hdmaDst++, read(hdmaSrc++));
+				if (hdmaDst >= hdmaStop) {
+					hdmaDone = true;
 				}
-				// eat up the rest of the hblank
-				//IF |= video.cycle(video.cycles);
-				hdmaLastMode = (byte) (video.getStat() & 0x03);
 			}
-
-			cycles -= cyclesLeft;
-			recalcCyclesLeft();
+			// eat up the rest of the hblank
+			//IF |= video.cycle(video.cycles);
+			hdmaLastMode = (byte) (video.getStat() & 0x03);
 		}
+
+		cycles -= cyclesLeft;
+		recalcCyclesLeft();
 	}
 
 	/**
@@ -266,7 +393,6 @@ public final class PgbMemory {
 	 */
 	public void setTac(byte tac) {
 		timerOn = (tac & 0x04) == 0x04;
-		timeCounter = 0;
 
 		switch (tac & 0x03) {
 			case 0 :
@@ -282,7 +408,64 @@ public final class PgbMemory {
 				timeLimit = 256;
 				break;
 		}
-		//recalcCyclesLeft();
+		// the count starts over from the last event
+		timerEvent = timerOn ? time + timeLimit : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Points the pages from..to (exclusive) at data, so that
+	 * address reads data[address + offset].  A null data
+	 * sends those pages to the handlers.
+	 */
+	private void map(byte[][] pages, int[] offsets, int from, int to, byte[] data, int offset) {
+		for (int i = from; i < to; i++) {
+			pages[i] = data;
+			offsets[i] = offset;
+		}
+	}
+
+	/**
+	 * Maps the rom banks and cart ram.  Called after every
+	 * write to the cart, as that is how the MBC switches banks.
+	 * Cart ram pages the battery hasn't seen written yet are
+	 * left out for writing, see PgbCart.isRamDirty().
+	 */
+	void mapCart() {
+		byte[] rom = cart.romdata;
+		map(readPages, readOffsets, 0x00, 0x40, rom, 0);
+		map(readPages, readOffsets, 0x40, 0x80, rom, cart.romoffset);
+		// the MBC3 clock registers sit on top of the ram
+		byte[] ram = cart.mbc3clockenabled ? null : cart.ramdata;
+		map(readPages, readOffsets, 0xA0, 0xC0, ram, cart.ramoffset);
+		ram = cart.mbc1ramenabled ? cart.ramdata : null;
+		map(writePages, writeOffsets, 0xA0, 0xC0, ram, cart.ramoffset);
+		if (ram != null) {
+			for (int i = 0xA0; i < 0xC0; i++) {
+				if (!cart.isRamDirty(i << 8)) {
+					writePages[i] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps the current VRAM bank for reading.  Writes always
+	 * go through the video, which keeps its tile caches.
+	 */
+	private void mapVram() {
+		map(readPages, readOffsets, 0x80, 0xA0, video.vram, -video.vramOffset);
+	}
+
+	/**
+	 * Maps internal ram, its switchable GBC bank and the echo.
+	 */
+	private void mapLoRAM() {
+		map(readPages, readOffsets, 0xC0, 0xD0, loRAM, -0xC000);
+		map(readPages, readOffsets, 0xD0, 0xE0, loRAM, -loRAMOffset);
+		map(readPages, readOffsets, 0xE0, 0xFE, loRAM, -0xE000);
+		map(writePages, writeOffsets, 0xC0, 0xD0, loRAM, -0xC000);
+		map(writePages, writeOffsets, 0xD0, 0xE0, loRAM, -loRAMOffset);
+		map(writePages, writeOffsets, 0xE0, 0xFE, loRAM, -0xE000);
 	}
 
 	/**
@@ -291,6 +474,23 @@ public final class PgbMemory {
 	 * @param address the gameboy memory address to read from.
 	 */
 	public final byte read(int address) {
+		int index = address >> 8 & 0x1FF;
+		byte[] page = readPages[index];
+		if (page != null) {
+			return page[address + readOffsets[index]];
+		}
+		return readHandler(address);
+	}
+
+	/**
+	 * Reads everything that is not a plain array: i/o
+	 * registers, high ram, OAM and the MBC3 clock.
+	 */
+	private byte readHandler(int address) {
+		// internal (high) RAM
+		if (address >= 0xFF80 && address < 0xFFFF) {
+			return hiRAM[address - 0xFF80];
+		}
 		switch (address) {
 		// Joypad Register (R/W)
 		case 0xFF00 :
@@ -437,34 +637,35 @@ public final class PgbMemory {
 
 		// empty GBC registers?
 		if (address < 0xFF55) {
-			System.out.println(
-				"read GBC register:" + Integer.toHexString(address));
+			if (PgbSettings.DEBUG) {
+				System.out.println(
+					"read GBC register:" + Integer.toHexString(address));
+			}
 			return 0;
 		}
 
 		// empty GBC registers?
 		if (address < 0xFF70) {
-			System.out.println(
-				"read GBC register:" + Integer.toHexString(address));
+			if (PgbSettings.DEBUG) {
+				System.out.println(
+					"read GBC register:" + Integer.toHexString(address));
+			}
 			return 0;
 		}
 		// GBC RAM bank
 
 		// empty GBC registers?
 		if (address < 0xFF7F) {
-			System.out.println(
-				"read GBC register:" + Integer.toHexString(address));
+			if (PgbSettings.DEBUG) {
+				System.out.println(
+					"read GBC register:" + Integer.toHexString(address));
+			}
 			return 0;
 		}
 
-		// internal (high) RAM
-		if (address < 0xFFFF) {
-			return hiRAM[address - 0xFF80];
-		}
-
 		System.out.println(
 			"Read from unmapped memory:" + Integer.toHexString(address));
-		//PgbSettings.paused = true;
+		//settings.paused = true;
 		return 0;
 	}
 
@@ -475,13 +676,32 @@ public final class PgbMemory {
 	 * @param towrite the byte to write into memory.
 	 */
 	public final void write(int address, byte towrite) {
+		int index = address >> 8 & 0x1FF;
+		byte[] page = writePages[index];
+		if (page != null) {
+			page[address + writeOffsets[index]] = towrite;
+			return;
+		}
+		writeHandler(address, towrite);
+	}
+
+	/**
+	 * Writes everything that is not a plain array: i/o
+	 * registers, high ram, VRAM, OAM and the MBC registers.
+	 */
+	private void writeHandler(int address, byte towrite) {
+		// internal (high) RAM
+		if (address >= 0xFF80 && address < 0xFFFF) {
+			hiRAM[address - 0xFF80] = towrite;
+			return;
+		}
 		switch (address) {
 
 		// Joypad Register (R/W) [P1]
 		case 0xFF00 :
 			//System.out.println("write to Joypad Register:" + Integer.toHexString(towrite & 0xFF));
 			if (towrite == 0x30
-				&& PgbSettings.system == PgbSettings.SYS_SGB) {
+				&& settings.system == PgbSettings.SYS_SGB) {
 				sgbCommandBit(joy.selected);
 			}
 			joy.write(towrite);
@@ -495,6 +715,7 @@ public final class PgbMemory {
 		case 0xFF02 :
 			//System.out.println("write to SIO control:" + Integer.toHexString(towrite & 0xFF));
 			net.setSerialControl(towrite);
+			scheduleSerial();
 			recalcCyclesLeft();
 			return;
 			// Divider Register (R/W) [DIV]
@@ -689,6 +910,8 @@ public final class PgbMemory {
 		case 0xFF22 :
 			soundIO[34] = towrite;
 			//Channel4 plynomial counter
+			if (soundOn)
+				soundChip.channel4.setPolynomial(unsign(towrite));
 			return;
 		case 0xFF23 :
 			soundIO[35] = towrite;
@@ -696,6 +919,7 @@ public final class PgbMemory {
 				if ((soundIO[35] & 0x80) != 0) {
 					soundChip.channel4.setLength(
 						unsign(soundIO[32]) & 0x3f);
+					soundChip.channel4.restart();
 					//update status
 					soundIO[38] |= 0x08;
 				}
@@ -764,14 +988,17 @@ public final class PgbMemory {
 			// LCD Control (R/W)
 		case 0xFF40 :
 			//System.out.println("write to LCD Control:" + Integer.toHexString(towrite & 0xFF));
+			boolean lcdWasOn = video.lcd_on;
 			video.setLcdc(towrite);
-			recalcCyclesLeft();
+			if (video.lcd_on != lcdWasOn) {
+				scheduleVideo();
+				recalcCyclesLeft();
+			}
 			return;
 			// LCDC Status   (R/W)
 		case 0xFF41 :
 			//System.out.println("write to LCDC Status:" + Integer.toHexString(towrite & 0xFF));
 			video.setStat(towrite);
-			recalcCyclesLeft();
 			return;
 			// Scroll Y   (R/W)
 		case 0xFF42 :
@@ -787,7 +1014,6 @@ public final class PgbMemory {
 		case 0xFF44 :
 			//System.out.println("write to LCDC Y-Coordinate:" + (towrite & 0xFF));
 			video.ly = 0;
-			recalcCyclesLeft();
 			return;
 			// LY Compare  (R/W)
 		case 0xFF45 :
@@ -831,6 +1057,7 @@ public final class PgbMemory {
 		case 0xFF4F :
 			//System.out.println("write to GBC VRAM bank:" + (towrite & 0xFF));
 			video.gbcSetVram(towrite);
+			mapVram();
 			return;
 			// GBC rHDMA1 (bit 7-0 of Source MSB) [HDMA1]
 		case 0xFF51 :
@@ -864,28 +1091,28 @@ public final class PgbMemory {
 			// Color BG Palette Index (W) [BCPS]
 		case 0xFF68 :
 			// only set this on GBC
-			if (PgbSettings.system == PgbSettings.SYS_GBC) {
+			if (settings.system == PgbSettings.SYS_GBC) {
 				video.gbcSetBgpi(towrite);
 			}
 			return;
 			// Color BG Palette Data (W) [BCPD]
 		case 0xFF69 :
 			// only set this on GBC
-			if (PgbSettings.system == PgbSettings.SYS_GBC) {
+			if (settings.system == PgbSettings.SYS_GBC) {
 				video.gbcSetBgpd(towrite);
 			}
 			return;
 			// Color OBJ Palette Index (W) [OCPS]
 		case 0xFF6A :
 			// only set this on GBC
-			if (PgbSettings.system == PgbSettings.SYS_GBC) {
+			if (settings.system == PgbSettings.SYS_GBC) {
 				video.gbcSetObpi(towrite);
 			}
 			return;
 			// Color OBJ Palette Data (W) [OCPD]
 		case 0xFF6B :
 			// only set this on GBC
-			if (PgbSettings.system == PgbSettings.SYS_GBC) {
+			if (settings.system == PgbSettings.SYS_GBC) {
 				video.gbcSetObpd(towrite);
 			}
 			return;
@@ -902,7 +1129,6 @@ public final class PgbMemory {
 			// Interrupt Enable (R/W)
 		case 0xFFFF:
 			IE = towrite;
-			recalcCyclesLeft();
 			return;
 			// strange register called by the demotronic demo...
 		case 0xFF1F:
@@ -915,6 +1141,7 @@ public final class PgbMemory {
 		// cart ROM (and MBC registers)
 		if (address < 0x8000) {
 			cart.write(address, towrite);
+			mapCart();
 			return;
 		}
 		// VRAM
@@ -922,9 +1149,12 @@ public final class PgbMemory {
 			video.write(address, towrite);
 			return;
 		}
-		// cart RAM
+		// cart RAM (only when disabled or not written yet)
 		if (address < 0xC000) {
 			cart.write(address, towrite);
+			if (cart.mbc1ramenabled) {
+				mapCart();
+			}
 			return;
 		}
 		// internal (low) RAM bank 0
@@ -974,19 +1204,13 @@ public final class PgbMemory {
 			return;
 		}
 
-		// internal (high) RAM
-		if (address < 0xFFFF && address >= 0xFF80) {
-			hiRAM[address - 0xFF80] = towrite;
-			return;
-		}
-
 
 		System.out.println(
 			"Write to unmapped memory:"
 				+ Integer.toHexString(address)
 				+ ", "
 				+ Integer.toHexString(towrite));
-		//PgbSettings.paused = true;
+		//settings.paused = true;
 	}
 	public final void write(int address, int towrite) {
 		write(address, (byte) towrite);
@@ -1004,11 +1228,12 @@ public final class PgbMemory {
 	 * set the gameboy color ram bank
 	 */
 	public void gbcSetRamBank(byte control) {
-		if (PgbSettings.system == PgbSettings.SYS_GBC) {
+		if (settings.system == PgbSettings.SYS_GBC) {
 			//System.out.println("set gameboy color ram bank: " + Integer.toHexString(control));
 			gbcRAM = control;
 			int bank = ((gbcRAM & 0x07) == 0) ? 0 : (gbcRAM & 0x07) - 1;
 			loRAMOffset = 0xC000 - bank * 0x1000;
+			mapLoRAM();
 		}
 	}
 	public byte gbcGetRamBank() {
@@ -1022,7 +1247,7 @@ public final class PgbMemory {
 		gbcSpeed = control;
 	}
 	public byte gbcGetSpeed() {
-		if (PgbSettings.system == PgbSettings.SYS_GBC) {
+		if (settings.system == PgbSettings.SYS_GBC) {
 			return gbcSpeed;
 		} else {
 			return 0;
@@ -27,16 +27,17 @@ public class PgbMenuBar extends MenuBar {
 		systemmenu;
 	public Menu vidoutmenu;
 	public MenuItem file_load, file_exit, file_about;
+	public MenuItem file_record, file_play, file_stop;
 	public MenuItem cpu_reset, cpu_runto;
 	public MenuItem options_setkeys, options_setsavepath;
-	public CheckboxMenuItem cpu_paused;
+	public CheckboxMenuItem cpu_paused, cpu_recompiler;
 	public CheckboxMenuItem debug_0,
 		debug_1,
 		debug_2,
 		debug_3,
 		debug_4,
 		debug_5;
-	public CheckboxMenuItem auto_wait, fs_0, fs_1, fs_2, fs_3, fs_4, fs_5;
+	public CheckboxMenuItem auto_wait, auto_skip, fs_0, fs_1, fs_2, fs_3, fs_4, fs_5;
 
 	// by retroK
 	public CheckboxMenuItem soundChannel1Enable,
@@ -72,6 +73,12 @@ public class PgbMenuBar extends MenuBar {
 
 		file_load = new MenuItem("Open...", new MenuShortcut(KeyEvent.VK_O));
 		file_load.setActionCommand("file_load");
+		file_record = new MenuItem("Record Movie...");
+		file_record.setActionCommand("file_record");
+		file_play = new MenuItem("Play Movie...");
+		file_play.setActionCommand("file_play");
+		file_stop = new MenuItem("Stop Movie");
+		file_stop.setActionCommand("file_stop");
 		file_exit = new MenuItem("Exit", new MenuShortcut(KeyEvent.VK_X));
 		file_exit.setActionCommand("file_exit");
 
@@ -87,6 +94,8 @@ public class PgbMenuBar extends MenuBar {
 		cpu_paused.setShortcut(new MenuShortcut(KeyEvent.VK_P));
 		cpu_paused.setActionCommand("cpu_paused");
 		cpu_paused.addItemListener(il);
+		cpu_recompiler = new CheckboxMenuItem("Recompiler", false);
+		cpu_recompiler.addItemListener(il);
 		cpu_runto = new MenuItem("Run To...");
 		cpu_runto.setActionCommand("cpu_runto");
 		cpu_runto.setEnabled(false);
@@ -119,6 +128,8 @@ public class PgbMenuBar extends MenuBar {
 
 		auto_wait = new CheckboxMenuItem("Auto Wait", false);
 		auto_wait.addItemListener(il);
+		auto_skip = new CheckboxMenuItem("Auto Skip", false);
+		auto_skip.addItemListener(il);
 		fs_0 = new CheckboxMenuItem("0", false);
 		fs_0.addItemListener(il);
 		fs_1 = new CheckboxMenuItem("1", false);
@@ -246,11 +257,16 @@ public class PgbMenuBar extends MenuBar {
 		add(filemenu);
 		filemenu.add(file_load);
 		filemenu.addSeparator();
+		filemenu.add(file_record);
+		filemenu.add(file_play);
+		filemenu.add(file_stop);
+		filemenu.addSeparator();
 		filemenu.add(file_exit);
 		filemenu.add(file_about);
 		add(cpumenu);
 		cpumenu.add(cpu_reset);
 		cpumenu.add(cpu_paused);
+		cpumenu.add(cpu_recompiler);
 		cpumenu.addSeparator();
 		cpumenu.add(cpu_runto);
 		cpumenu.addSeparator();
@@ -264,6 +280,7 @@ public class PgbMenuBar extends MenuBar {
 		add(optionsmenu);
 		optionsmenu.add(frameskipmenu);
 		frameskipmenu.add(auto_wait);
+		frameskipmenu.add(auto_skip);
 		frameskipmenu.addSeparator();
 		frameskipmenu.add(fs_0);
 		frameskipmenu.add(fs_1);
@@ -0,0 +1,194 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * PgbMovie records the joypad once per frame, so a game can
+ * be played back exactly as it was played.  A movie starts
+ * from a save state taken when recording began, which takes
+ * care of the battery ram and everything else a game could
+ * have been left in.
+ *
+ * The file holds:
+ *
+ *   int	"PGBM"
+ *   int	format version, VERSION
+ *   byte	system, one of PgbSettings.SYS_*
+ *   int	cpu cycles per frame
+ *   int	number of frames
+ *   int	size of the save state
+ *   ...	the save state, see PgbState
+ *   ...	a byte per frame, PgbJoypad.getButtons()
+ *
+ * The game only sees the buttons PgbJoypad.latch() took at
+ * the start of each frame, so this is all it takes to replay
+ * it.  The one thing outside of that is the MBC3 clock, which
+ * runs on the host's time; games that use it can go their
+ * own way.
+ *
+ * AEPgb.runFrame() calls frame() before every frame while a
+ * movie records or plays, PgbReplay plays one back without
+ * a window.
+ */
+public final class PgbMovie {
+	public static final int		MAGIC = 0x5047424D;
+	public static final int		VERSION = 1;
+
+	private final int			system;
+	private final int			frameCycles;
+	private final ByteBuffer	start;
+
+	private byte[]				input;
+	private int					length;
+	private int					position;
+	private boolean				playing;
+
+	private PgbMovie(int system, int frameCycles, ByteBuffer start, byte[] input, int length) {
+		this.system = system;
+		this.frameCycles = frameCycles;
+		this.start = start;
+		this.input = input;
+		this.length = length;
+	}
+
+	/**
+	 * Starts recording the machine cpu belongs to, from the
+	 * state it is in now.  Call it between two frames.
+	 */
+	public static PgbMovie record(PgbCpu cpu, int frameCycles) {
+		ByteBuffer state = ByteBuffer.allocate(PgbState.size(cpu));
+		PgbState.save(cpu, state);
+		state.flip();
+		// an hour of input, it grows if needed
+		return new PgbMovie(cpu.mem.settings.system, frameCycles, state, new byte[60 * 60 * 60], 0);
+	}
+
+	/**
+	 * Reads a movie written by write().
+	 */
+	public static PgbMovie read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("not a movie");
+			}
+			int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("movie version " + version + ", expected " + VERSION);
+			}
+			int system = in.readByte();
+			int frameCycles = in.readInt();
+			int length = in.readInt();
+			byte[] state = new byte[in.readInt()];
+			in.readFully(state);
+			byte[] input = new byte[length];
+			in.readFully(input);
+			return new PgbMovie(system, frameCycles, ByteBuffer.wrap(state), input, length);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the movie recorded so far to file.
+	 */
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeByte(system);
+			out.writeInt(frameCycles);
+			out.writeInt(length);
+			out.writeInt(start.limit());
+			out.write(start.array(), 0, start.limit());
+			out.write(input, 0, length);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Starts playing back into the machine cpu belongs to,
+	 * from the first frame.  The machine has to run the same
+	 * rom as the same system the movie was recorded with.
+	 * Returns why the movie can't be played, or null once it
+	 * plays.
+	 */
+	public String play(PgbCpu cpu) {
+		start.rewind();
+		String problem = PgbState.check(cpu, start);
+		if(problem != null) {
+			return problem;
+		}
+		PgbState.load(cpu, start);
+		position = 0;
+		playing = true;
+		return null;
+	}
+
+	/**
+	 * Called at the start of every frame.  Recording, it
+	 * latches the buttons held and adds them to the movie.
+	 * Playing, it holds and latches the buttons of the next
+	 * frame instead, or returns false when there are none
+	 * left.
+	 */
+	public boolean frame(PgbJoypad joy) {
+		if(playing) {
+			if(position == length) {
+				return false;
+			}
+			joy.setButtons(input[position++]);
+			joy.latch();
+			return true;
+		}
+		if(length == input.length) {
+			input = Arrays.copyOf(input, length * 2);
+		}
+		input[length++] = (byte)joy.latch();
+		return true;
+	}
+
+	public boolean isPlaying() {
+		return playing;
+	}
+
+	/**
+	 * The system the movie was recorded as, one of
+	 * PgbSettings.SYS_*.
+	 */
+	public int getSystem() {
+		return system;
+	}
+
+	/**
+	 * How many cpu cycles each frame of the movie ran for.
+	 */
+	public int getFrameCycles() {
+		return frameCycles;
+	}
+
+	/**
+	 * How many frames the movie has.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * How many frames have been played back.
+	 */
+	public int position() {
+		return position;
+	}
+}
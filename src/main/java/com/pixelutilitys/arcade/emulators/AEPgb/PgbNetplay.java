@@ -61,6 +61,12 @@ public class PgbNetplay	implements ActionListener {
 	boolean					irReceive;
 	boolean					irReadOn;
 	
+	PgbSettings				settings;
+	
+	public PgbNetplay(PgbSettings settings) {
+		this.settings = settings;
+	}
+	
 	public void PgbNetPlay() {
 		socket = null;
 		connected = false;
@@ -253,8 +259,8 @@ public class PgbNetplay	implements ActionListener {
 				socket.setTcpNoDelay(true);
 				OutputStream os = socket.getOutputStream();
 				os.write(0x10);
-				os.write(PgbSettings.gamestring.length());
-				os.write(PgbSettings.gamestring.getBytes());
+				os.write(settings.gamestring.length());
+				os.write(settings.gamestring.getBytes());
 			} catch(IOException ex) {
 				//System.out.println("couldn't write");
 			}
@@ -262,7 +268,7 @@ public class PgbNetplay	implements ActionListener {
 	}
 	
 	public void popNetDialog(Frame frame) {
-		PgbNetDialog nd = new PgbNetDialog(frame);
+		PgbNetDialog nd = new PgbNetDialog(frame, settings);
 		
 		nd.setLocation(frame.getLocation().x - 60, frame.getLocation().y + 80);
 		nd.setVisible(true);
@@ -417,9 +423,12 @@ class PgbNetDialog extends Dialog implements ActionListener{
 	
 	public Socket			socket;
 	
-	public PgbNetDialog(Frame frame) {
+	PgbSettings				settings;
+	
+	public PgbNetDialog(Frame frame, PgbSettings settings) {
 		super(frame, "Pgb Netplay", true);
 		this.frame = frame;
+		this.settings = settings;
 		
 		setSize(250, 90);
 		setResizable(false);
@@ -463,8 +472,8 @@ class PgbNetDialog extends Dialog implements ActionListener{
 		
 		status.setText("Listening...");
 		try{
-			ss = new ServerSocket(PgbSettings.netport);
-			ss.setSoTimeout(PgbSettings.netlistentimeout);
+			ss = new ServerSocket(settings.netport);
+			ss.setSoTimeout(settings.netlistentimeout);
 			
 			socket = ss.accept();
 			
@@ -477,7 +486,7 @@ class PgbNetDialog extends Dialog implements ActionListener{
 	}
 	
 	public void connect() {
-		PgbConnectDialog cd = new PgbConnectDialog(frame);
+		PgbConnectDialog cd = new PgbConnectDialog(frame, settings);
 		String addressString;
 		InetAddress inetAddress;
 		
@@ -498,7 +507,7 @@ class PgbNetDialog extends Dialog implements ActionListener{
 		status.setText("Connecting to " + addressString + "...");
 		
 		try {
-			socket = new Socket(inetAddress, PgbSettings.netport);
+			socket = new Socket(inetAddress, settings.netport);
 
 			status.setText("Connected to " + addressString + ".");
 			setVisible(false);
@@ -507,7 +516,7 @@ class PgbNetDialog extends Dialog implements ActionListener{
 			socket = null;
 			return;
 		}
-		PgbSettings.lastnetaddress = addressString;
+		settings.lastnetaddress = addressString;
 	}
 	
 	public void actionPerformed(ActionEvent ev) {
@@ -535,7 +544,7 @@ class PgbConnectDialog extends Dialog implements ActionListener {
 	TextField			addressField;
 	Button				okay, cancel;
 	
-	public PgbConnectDialog(Frame frame) {
+	public PgbConnectDialog(Frame frame, PgbSettings settings) {
 		super(frame, "Connect to...", true);
 
 		setSize(250, 90);
@@ -558,7 +567,7 @@ class PgbConnectDialog extends Dialog implements ActionListener {
 		gridbag.setConstraints(okay, c);
 		add(okay);
 		
-		addressField = new TextField(PgbSettings.lastnetaddress, 20);
+		addressField = new TextField(settings.lastnetaddress, 20);
 		c.gridwidth = 1;		
 		gridbag.setConstraints(addressField, c);
 		add(addressField);
@@ -0,0 +1,22 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+/**
+ * PgbNullSoundOutput is no sound at all, for running without
+ * a sound card or without anyone to listen, like a server
+ * running lots of emulators or a benchmark.  It never touches
+ * the audio hardware and SoundChip doesn't even mix for it;
+ * the channels still count down their lengths and envelopes,
+ * so the game can't tell.
+ */
+public class PgbNullSoundOutput extends PgbSoundOutput {
+
+	public boolean open(int sampleRate, int bufferLengthMsec) {
+		return false;
+	}
+
+	public void write(byte[] b, int length) {
+	}
+
+	public void close() {
+	}
+}
@@ -0,0 +1,697 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * PgbRecompiler turns straight-line runs of opcodes in cart
+ * ROM into JVM classes, so the JIT gets to see whole blocks
+ * instead of one trip through the exec() switch per opcode.
+ *
+ * A block ends at the first jump, call, return, HALT, STOP,
+ * DI/EI or unknown opcode; PgbCpu interprets those as before.
+ * Only code in ROM is compiled.  Code running from RAM always
+ * goes through the interpreter, so writes to RAM never leave
+ * a stale block behind.
+ *
+ * Blocks are cached by their offset into the rom image, which
+ * covers both the bank and the address.  A bank switch just
+ * makes other blocks visible, nothing has to be thrown away.
+ * A block that writes to the MBC, an i/o register or IE
+ * returns right after that write, so the rest of the block
+ * never runs from the wrong bank or misses an interrupt.
+ *
+ * The compiled code calls the same helpers in PgbCpu as the
+ * interpreter and takes its cycle counts from the same cases,
+ * so both modes run a rom identically.
+ */
+final class PgbRecompiler {
+	/** longest run of opcodes put into one block */
+	private static final int		MAX_BLOCK_OPS = 64;
+
+	private static final String		CPU = "com/pixelutilitys/arcade/emulators/AEPgb/PgbCpu";
+	private static final String		MEM = "com/pixelutilitys/arcade/emulators/AEPgb/PgbMemory";
+	private static final String		BLOCK = "com/pixelutilitys/arcade/emulators/AEPgb/PgbBlock";
+
+	// locals of the generated run() method
+	private static final int		L_CPU = 1;
+	private static final int		L_MEM = 2;
+	private static final int		L_VAL = 3;
+	private static final int		L_ADDR = 4;
+
+	// register order used by the opcode encoding
+	private static final int		R_HL = 6;
+	private static final String[]	REG_NAMES = {"b", "c", "d", "e", "h", "l", "(hl)", "a"};
+
+	private static final String[]	SHIFT_NAMES = {"rlc", "rrc", "rl", "rr", "sla", "sra", "swap", "srl"};
+	private static final String[]	ALU_NAMES = {"add", "adc", "sub", "sbc", "and", "xor", "or", "cp"};
+
+	/** cycles per opcode, as counted by the cases in PgbCpu.exec() */
+	private static final int[]		CYCLES = {
+		 4, 20,  8,  8,  4,  4,  8,  4, 20, 12,  8,  8,  4,  4,  8,  4,
+		 4, 12,  8,  8,  4,  4,  8,  4, 12, 16,  8,  8,  4,  4,  8,  4,
+		12, 12, 16,  8,  4,  4,  8,  4, 12, 12, 16,  8,  4,  4,  8,  4,
+		12, 12, 16,  8, 12, 12, 12,  4, 12, 12, 16,  8,  4,  4,  8,  4,
+		 4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4,
+		 4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4,
+		 4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4,
+		 8,  8,  8,  8,  8,  8,  4,  8,  4,  4,  4,  4,  4,  4,  8,  4,
+		 4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4,
+		 4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4,
+		 4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4,
+		 4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4,
+		20, 12, 16, 16, 24, 16,  8, 16, 20, 16, 16,  0, 24, 24,  8, 16,
+		20, 10, 20,  4, 24, 16,  8, 16, 20, 16, 16,  4, 24,  4,  8, 16,
+		12, 12,  8,  4,  4, 16,  8, 16, 16,  4, 16,  4,  4,  4,  8, 16,
+		12, 12,  8,  4,  4, 16,  8, 16, 12,  8, 16,  4,  4,  4,  8, 16
+	};
+
+	/** cycles per CB opcode, as counted in PgbCpu.exec() */
+	private static final int[]		CB_CYCLES = {
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8,  8,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8,
+		 8,  8,  8,  8,  8,  8, 16,  8,  8,  8,  8,  8,  8,  8, 16,  8
+	};
+
+	/** marks rom offsets where no block could be compiled */
+	private static final PgbBlock	NONE = new PgbBlock() {
+		public int run(PgbCpu cpu, PgbMemory mem) {
+			return 0;
+		}
+	};
+
+	private final PgbCart			cart;
+	private final BlockLoader		loader;
+	private final PgbBlock[][]		pages;
+	private int						blockcount;
+
+	PgbRecompiler(PgbCart cart) {
+		this.cart = cart;
+		// a loader of our own, so the blocks go away together
+		// with the recompiler when the next rom is loaded
+		loader = new BlockLoader(PgbBlock.class.getClassLoader());
+		pages = new PgbBlock[(cart.romdata.length + 0xFF) >> 8][];
+	}
+
+	/**
+	 * Returns the block starting at address, compiling it on
+	 * first use, or null if the opcode there must be
+	 * interpreted.
+	 */
+	PgbBlock getBlock(int address) {
+		int index = address < 0x4000 ? address : address + cart.romoffset;
+		if(index < 0 || index >= cart.romdata.length) {
+			return null;
+		}
+		PgbBlock[] page = pages[index >> 8];
+		if(page == null) {
+			page = new PgbBlock[0x100];
+			pages[index >> 8] = page;
+		}
+		PgbBlock block = page[index & 0xFF];
+		if(block == null) {
+			block = compile(address, index);
+			page[index & 0xFF] = block;
+		}
+		return block == NONE ? null : block;
+	}
+
+	int getBlockCount() {
+		return blockcount;
+	}
+
+	private PgbBlock compile(int address, int index) {
+		byte[] rom = cart.romdata;
+		// blocks must not run out of their bank
+		int limit = address < 0x4000 ? 0x4000 : 0x8000;
+		int base = index - address;
+
+		String name = "com/pixelutilitys/arcade/emulators/AEPgb/PgbBlock_" + Integer.toHexString(index);
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, BLOCK, null);
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, BLOCK, "<init>", "()V", false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(ACC_PUBLIC, "run", "(L" + CPU + ";L" + MEM + ";)I", null, null);
+		mv.visitCode();
+
+		int pc = address;
+		int cycles = 0;
+		int ops = 0;
+		while(ops < MAX_BLOCK_OPS) {
+			int op = rom[base + pc] & 0xFF;
+			int length = getLength(op);
+			if(length == 0 || pc + length > limit) {
+				break;
+			}
+			int n = length > 1 ? rom[base + pc + 1] & 0xFF : 0;
+			int nn = length > 2 ? n | (rom[base + pc + 2] & 0xFF) << 8 : 0;
+			pc += length;
+			if(op == 0xCB) {
+				cycles += CB_CYCLES[n];
+				emitCB(mv, n, pc, cycles);
+			} else {
+				cycles += CYCLES[op];
+				if(!emit(mv, op, n, nn, pc, cycles)) {
+					// wrote to a fixed i/o or mbc address, end here
+					ops++;
+					break;
+				}
+			}
+			ops++;
+		}
+		if(ops == 0) {
+			return NONE;
+		}
+
+		emitExit(mv, pc, cycles);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+
+		try {
+			byte[] code = cw.toByteArray();
+			PgbBlock block = (PgbBlock)loader.define(name.replace('/', '.'), code).newInstance();
+			block.cycles = cycles;
+			blockcount++;
+			return block;
+		} catch(Exception e) {
+			System.out.println("could not compile block at " + Integer.toHexString(address) + ":");
+			System.out.println(e);
+			return NONE;
+		}
+	}
+
+	/**
+	 * Returns the length of an opcode the recompiler handles,
+	 * or 0 if it has to be left to the interpreter.
+	 */
+	private static int getLength(int op) {
+		switch(op) {
+			// flow control, interrupt and power opcodes
+			case 0x10: case 0x18: case 0x20: case 0x28: case 0x30: case 0x38: case 0x76:
+			case 0xC0: case 0xC2: case 0xC3: case 0xC4: case 0xC7: case 0xC8: case 0xC9:
+			case 0xCA: case 0xCC: case 0xCD: case 0xCF: case 0xD0: case 0xD2: case 0xD4:
+			case 0xD7: case 0xD8: case 0xD9: case 0xDA: case 0xDC: case 0xDF: case 0xE7:
+			case 0xE9: case 0xEF: case 0xF3: case 0xF7: case 0xFB: case 0xFF:
+			// unused opcodes
+			case 0xD3: case 0xDB: case 0xDD: case 0xE3: case 0xE4: case 0xEB: case 0xEC:
+			case 0xED: case 0xF4: case 0xFC: case 0xFD:
+				return 0;
+			case 0x01: case 0x08: case 0x11: case 0x21: case 0x31: case 0xEA: case 0xFA:
+				return 3;
+			case 0x06: case 0x0E: case 0x16: case 0x1E: case 0x26: case 0x2E: case 0x36: case 0x3E:
+			case 0xC6: case 0xCB: case 0xCE: case 0xD6: case 0xDE: case 0xE0: case 0xE6: case 0xE8:
+			case 0xEE: case 0xF0: case 0xF6: case 0xF8: case 0xFE:
+				return 2;
+			default:
+				return 1;
+		}
+	}
+
+	/**
+	 * Returns true if a write to address may switch banks,
+	 * touch an i/o register or change IE.
+	 */
+	private static boolean isUnsafe(int address) {
+		return address < 0x8000 || (address >= 0xFF00 && address < 0xFF80) || address >= 0xFFFF;
+	}
+
+	/**
+	 * Emits one opcode.  pc and cycles are the values after
+	 * it.  Returns false if the block has to end after it.
+	 */
+	private static boolean emit(MethodVisitor mv, int op, int n, int nn, int pc, int cycles) {
+		if(op >= 0x40 && op < 0x80) {
+			// LD r,r
+			int to = op >> 3 & 7;
+			int from = op & 7;
+			if(to != from) {
+				load(mv, from);
+				store(mv, to, pc, cycles);
+			}
+			return true;
+		}
+		if(op >= 0x80 && op < 0xC0) {
+			// ALU A,r
+			mv.visitVarInsn(ALOAD, L_CPU);
+			load(mv, op & 7);
+			mv.visitMethodInsn(INVOKEVIRTUAL, CPU, ALU_NAMES[op >> 3 & 7], "(I)V", false);
+			return true;
+		}
+		switch(op) {
+			case 0x00: // NOP
+				return true;
+			case 0x01: // LD   BC,nnnn
+			case 0x11: // LD   DE,nnnn
+				mv.visitVarInsn(ALOAD, L_CPU);
+				push(mv, nn);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, op == 0x01 ? "setBC" : "setDE", "(I)V", false);
+				return true;
+			case 0x21: // LD   HL,nnnn
+			case 0x31: // LD   SP,nnnn
+				mv.visitVarInsn(ALOAD, L_CPU);
+				push(mv, nn);
+				mv.visitFieldInsn(PUTFIELD, CPU, op == 0x21 ? "hl" : "sp", "I");
+				return true;
+			case 0x02: // LD   (BC),A
+			case 0x12: // LD   (DE),A
+				pair(mv, op >> 4);
+				mv.visitVarInsn(ISTORE, L_ADDR);
+				mv.visitVarInsn(ALOAD, L_MEM);
+				mv.visitVarInsn(ILOAD, L_ADDR);
+				field(mv, "a");
+				write(mv, pc, cycles);
+				return true;
+			case 0x0A: // LD   A,(BC)
+			case 0x1A: // LD   A,(DE)
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ALOAD, L_MEM);
+				pair(mv, op >> 4);
+				read(mv);
+				mv.visitFieldInsn(PUTFIELD, CPU, "a", "I");
+				return true;
+			case 0x03: case 0x13: case 0x23: case 0x33: // INC  rr
+			case 0x0B: case 0x1B: case 0x2B: case 0x3B: // DEC  rr
+				if(op >> 4 < 2) {
+					mv.visitVarInsn(ALOAD, L_CPU);
+					pair(mv, op >> 4);
+					mv.visitInsn((op & 0x08) == 0 ? ICONST_1 : ICONST_M1);
+					mv.visitInsn(IADD);
+					push(mv, 0xFFFF);
+					mv.visitInsn(IAND);
+					mv.visitMethodInsn(INVOKEVIRTUAL, CPU, op >> 4 == 0 ? "setBC" : "setDE", "(I)V", false);
+				} else {
+					String reg = op >> 4 == 2 ? "hl" : "sp";
+					mv.visitVarInsn(ALOAD, L_CPU);
+					field(mv, reg);
+					mv.visitInsn((op & 0x08) == 0 ? ICONST_1 : ICONST_M1);
+					mv.visitInsn(IADD);
+					push(mv, 0xFFFF);
+					mv.visitInsn(IAND);
+					mv.visitFieldInsn(PUTFIELD, CPU, reg, "I");
+				}
+				return true;
+			case 0x04: case 0x0C: case 0x14: case 0x1C: case 0x24: case 0x2C: case 0x34: case 0x3C: // INC  r
+			case 0x05: case 0x0D: case 0x15: case 0x1D: case 0x25: case 0x2D: case 0x35: case 0x3D: // DEC  r
+				mv.visitVarInsn(ALOAD, L_CPU);
+				load(mv, op >> 3 & 7);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, (op & 1) == 0 ? "inc" : "dec", "(I)I", false);
+				store(mv, op >> 3 & 7, pc, cycles);
+				return true;
+			case 0x06: case 0x0E: case 0x16: case 0x1E: case 0x26: case 0x2E: case 0x36: case 0x3E: // LD   r,nn
+				push(mv, n);
+				store(mv, op >> 3 & 7, pc, cycles);
+				return true;
+			case 0x07: // RLCA
+			case 0x0F: // RRCA
+			case 0x17: // RLA
+			case 0x1F: // RRA
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ALOAD, L_CPU);
+				field(mv, "a");
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, SHIFT_NAMES[op >> 3], "(I)I", false);
+				mv.visitFieldInsn(PUTFIELD, CPU, "a", "I");
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitInsn(ICONST_0);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "setZ", "(Z)V", false);
+				return true;
+			case 0x08: // LD   (nnnn),SP
+				mv.visitVarInsn(ALOAD, L_MEM);
+				push(mv, nn);
+				field(mv, "sp");
+				mv.visitMethodInsn(INVOKEVIRTUAL, MEM, "writeWord", "(II)V", false);
+				return !isUnsafe(nn) && !isUnsafe(nn + 1);
+			case 0x09: case 0x19: case 0x29: case 0x39: // ADD  HL,rr
+				mv.visitVarInsn(ALOAD, L_CPU);
+				if(op == 0x29) {
+					field(mv, "hl");
+				} else if(op == 0x39) {
+					field(mv, "sp");
+				} else {
+					pair(mv, op >> 4);
+				}
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "addHL", "(I)V", false);
+				return true;
+			case 0x22: // LDI  (HL),A
+			case 0x32: // LDD  (HL),A
+				field(mv, "hl");
+				mv.visitVarInsn(ISTORE, L_ADDR);
+				mv.visitVarInsn(ALOAD, L_MEM);
+				mv.visitVarInsn(ILOAD, L_ADDR);
+				field(mv, "a");
+				mv.visitMethodInsn(INVOKEVIRTUAL, MEM, "write", "(II)V", false);
+				stepHL(mv, op == 0x22);
+				check(mv, pc, cycles);
+				return true;
+			case 0x2A: // LDI  A,(HL)
+			case 0x3A: // LDD  A,(HL)
+				load(mv, R_HL);
+				mv.visitVarInsn(ISTORE, L_VAL);
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ILOAD, L_VAL);
+				mv.visitFieldInsn(PUTFIELD, CPU, "a", "I");
+				stepHL(mv, op == 0x2A);
+				return true;
+			case 0x27: // DAA
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "daa", "()V", false);
+				return true;
+			case 0x2F: // CPL
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "cpl", "()V", false);
+				return true;
+			case 0x37: // SCF
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitInsn(ICONST_1);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "setC", "(Z)V", false);
+				return true;
+			case 0x3F: // CCF
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "getC", "()Z", false);
+				mv.visitInsn(ICONST_1);
+				mv.visitInsn(IXOR);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "setC", "(Z)V", false);
+				return true;
+			case 0xC1: // POP  BC
+			case 0xD1: // POP  DE
+			case 0xE1: // POP  HL
+			case 0xF1: // POP  AF
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "pop", "()I", false);
+				if(op == 0xE1) {
+					mv.visitFieldInsn(PUTFIELD, CPU, "hl", "I");
+				} else {
+					mv.visitMethodInsn(INVOKEVIRTUAL, CPU, op == 0xC1 ? "setBC" : op == 0xD1 ? "setDE" : "setAF", "(I)V", false);
+				}
+				return true;
+			case 0xC5: // PUSH BC
+			case 0xD5: // PUSH DE
+			case 0xE5: // PUSH HL
+			case 0xF5: // PUSH AF
+				mv.visitVarInsn(ALOAD, L_CPU);
+				if(op == 0xE5) {
+					field(mv, "hl");
+				} else if(op == 0xF5) {
+					field(mv, "a");
+					mv.visitIntInsn(BIPUSH, 8);
+					mv.visitInsn(ISHL);
+					mv.visitVarInsn(ALOAD, L_CPU);
+					mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "getF", "()I", false);
+					mv.visitInsn(IOR);
+				} else {
+					pair(mv, op >> 4 & 1);
+				}
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "push", "(I)V", false);
+				// the two bytes went to SP and SP+1
+				field(mv, "sp");
+				mv.visitVarInsn(ISTORE, L_ADDR);
+				check(mv, pc, cycles);
+				mv.visitIincInsn(L_ADDR, 1);
+				check(mv, pc, cycles);
+				return true;
+			case 0xC6: case 0xCE: case 0xD6: case 0xDE: case 0xE6: case 0xEE: case 0xF6: case 0xFE: // ALU A,nn
+				mv.visitVarInsn(ALOAD, L_CPU);
+				push(mv, n);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, ALU_NAMES[op >> 3 & 7], "(I)V", false);
+				return true;
+			case 0xE0: // LD   ($FF00+nn),A
+			case 0xEA: // LD   (nnnn),A
+				mv.visitVarInsn(ALOAD, L_MEM);
+				push(mv, op == 0xE0 ? 0xFF00 + n : nn);
+				field(mv, "a");
+				mv.visitMethodInsn(INVOKEVIRTUAL, MEM, "write", "(II)V", false);
+				return !isUnsafe(op == 0xE0 ? 0xFF00 + n : nn);
+			case 0xE2: // LD   ($FF00+C),A
+				push(mv, 0xFF00);
+				field(mv, "c");
+				mv.visitInsn(IADD);
+				mv.visitVarInsn(ISTORE, L_ADDR);
+				mv.visitVarInsn(ALOAD, L_MEM);
+				mv.visitVarInsn(ILOAD, L_ADDR);
+				field(mv, "a");
+				write(mv, pc, cycles);
+				return true;
+			case 0xF0: // LD   A,($FF00+nn)
+			case 0xFA: // LD   A,(nnnn)
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ALOAD, L_MEM);
+				push(mv, op == 0xF0 ? 0xFF00 + n : nn);
+				read(mv);
+				mv.visitFieldInsn(PUTFIELD, CPU, "a", "I");
+				return true;
+			case 0xF2: // LD   A,($FF00+C)
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ALOAD, L_MEM);
+				push(mv, 0xFF00);
+				field(mv, "c");
+				mv.visitInsn(IADD);
+				read(mv);
+				mv.visitFieldInsn(PUTFIELD, CPU, "a", "I");
+				return true;
+			case 0xE8: // ADD  SP,dd
+			case 0xF8: // LD   HL,SP+dd
+				mv.visitVarInsn(ALOAD, L_CPU);
+				field(mv, "sp");
+				push(mv, (byte)n);
+				mv.visitInsn(IADD);
+				push(mv, 0xFFFF);
+				mv.visitInsn(IAND);
+				mv.visitFieldInsn(PUTFIELD, CPU, op == 0xE8 ? "sp" : "hl", "I");
+				if(op == 0xE8) {
+					mv.visitVarInsn(ALOAD, L_CPU);
+					mv.visitInsn(ICONST_0);
+					mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "setZ", "(Z)V", false);
+				}
+				return true;
+			case 0xF9: // LD   SP,HL
+				mv.visitVarInsn(ALOAD, L_CPU);
+				field(mv, "hl");
+				mv.visitFieldInsn(PUTFIELD, CPU, "sp", "I");
+				return true;
+		}
+		throw new IllegalStateException("no code for opcode " + Integer.toHexString(op));
+	}
+
+	/**
+	 * Emits one CB opcode: shifts, BIT, RES and SET.
+	 */
+	private static void emitCB(MethodVisitor mv, int cb, int pc, int cycles) {
+		int reg = cb & 7;
+		int bit = cb >> 3 & 7;
+		switch(cb >> 6) {
+			case 0: // shifts and rotates
+				mv.visitVarInsn(ALOAD, L_CPU);
+				load(mv, reg);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, SHIFT_NAMES[bit], "(I)I", false);
+				store(mv, reg, pc, cycles);
+				break;
+			case 1: // BIT
+				mv.visitVarInsn(ALOAD, L_CPU);
+				push(mv, bit);
+				load(mv, reg);
+				mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "bit", "(II)V", false);
+				break;
+			case 2: // RES
+				load(mv, reg);
+				push(mv, ~(1 << bit));
+				mv.visitInsn(IAND);
+				store(mv, reg, pc, cycles);
+				break;
+			case 3: // SET
+				load(mv, reg);
+				push(mv, 1 << bit);
+				mv.visitInsn(IOR);
+				store(mv, reg, pc, cycles);
+				break;
+		}
+	}
+
+	/**
+	 * Pushes the value of register reg.
+	 */
+	private static void load(MethodVisitor mv, int reg) {
+		switch(reg) {
+			case 4:
+				field(mv, "hl");
+				mv.visitIntInsn(BIPUSH, 8);
+				mv.visitInsn(ISHR);
+				break;
+			case 5:
+				field(mv, "hl");
+				push(mv, 0xFF);
+				mv.visitInsn(IAND);
+				break;
+			case R_HL:
+				mv.visitVarInsn(ALOAD, L_MEM);
+				field(mv, "hl");
+				read(mv);
+				break;
+			default:
+				field(mv, REG_NAMES[reg]);
+		}
+	}
+
+	/**
+	 * Pops a value into register reg.
+	 */
+	private static void store(MethodVisitor mv, int reg, int pc, int cycles) {
+		mv.visitVarInsn(ISTORE, L_VAL);
+		switch(reg) {
+			case 4:
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ILOAD, L_VAL);
+				mv.visitIntInsn(BIPUSH, 8);
+				mv.visitInsn(ISHL);
+				field(mv, "hl");
+				push(mv, 0xFF);
+				mv.visitInsn(IAND);
+				mv.visitInsn(IOR);
+				mv.visitFieldInsn(PUTFIELD, CPU, "hl", "I");
+				break;
+			case 5:
+				mv.visitVarInsn(ALOAD, L_CPU);
+				field(mv, "hl");
+				push(mv, 0xFF00);
+				mv.visitInsn(IAND);
+				mv.visitVarInsn(ILOAD, L_VAL);
+				mv.visitInsn(IOR);
+				mv.visitFieldInsn(PUTFIELD, CPU, "hl", "I");
+				break;
+			case R_HL:
+				field(mv, "hl");
+				mv.visitVarInsn(ISTORE, L_ADDR);
+				mv.visitVarInsn(ALOAD, L_MEM);
+				mv.visitVarInsn(ILOAD, L_ADDR);
+				mv.visitVarInsn(ILOAD, L_VAL);
+				write(mv, pc, cycles);
+				break;
+			default:
+				mv.visitVarInsn(ALOAD, L_CPU);
+				mv.visitVarInsn(ILOAD, L_VAL);
+				mv.visitFieldInsn(PUTFIELD, CPU, REG_NAMES[reg], "I");
+		}
+	}
+
+	/**
+	 * Pushes BC (0) or DE (1).
+	 */
+	private static void pair(MethodVisitor mv, int pair) {
+		mv.visitVarInsn(ALOAD, L_CPU);
+		mv.visitMethodInsn(INVOKEVIRTUAL, CPU, pair == 0 ? "bc" : "de", "()I", false);
+	}
+
+	private static void field(MethodVisitor mv, String name) {
+		mv.visitVarInsn(ALOAD, L_CPU);
+		mv.visitFieldInsn(GETFIELD, CPU, name, "I");
+	}
+
+	private static void push(MethodVisitor mv, int value) {
+		if(value >= -1 && value <= 5) {
+			mv.visitInsn(ICONST_0 + value);
+		} else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			mv.visitIntInsn(BIPUSH, value);
+		} else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			mv.visitIntInsn(SIPUSH, value);
+		} else {
+			mv.visitLdcInsn(value);
+		}
+	}
+
+	/**
+	 * mem and address on the stack, leaves the unsigned byte.
+	 */
+	private static void read(MethodVisitor mv) {
+		mv.visitMethodInsn(INVOKEVIRTUAL, MEM, "read", "(I)B", false);
+		push(mv, 0xFF);
+		mv.visitInsn(IAND);
+	}
+
+	/**
+	 * mem, address and value on the stack, the address also
+	 * in L_ADDR.  Leaves the block if the write was unsafe.
+	 */
+	private static void write(MethodVisitor mv, int pc, int cycles) {
+		mv.visitMethodInsn(INVOKEVIRTUAL, MEM, "write", "(II)V", false);
+		check(mv, pc, cycles);
+	}
+
+	/**
+	 * Leaves the block if the address in L_ADDR is unsafe,
+	 * see isUnsafe().
+	 */
+	private static void check(MethodVisitor mv, int pc, int cycles) {
+		Label exit = new Label();
+		Label ok = new Label();
+		mv.visitVarInsn(ILOAD, L_ADDR);
+		push(mv, 0x8000);
+		mv.visitJumpInsn(IF_ICMPLT, exit);
+		mv.visitVarInsn(ILOAD, L_ADDR);
+		push(mv, 0xFF00);
+		mv.visitJumpInsn(IF_ICMPLT, ok);
+		mv.visitVarInsn(ILOAD, L_ADDR);
+		push(mv, 0xFF80);
+		mv.visitJumpInsn(IF_ICMPLT, exit);
+		mv.visitVarInsn(ILOAD, L_ADDR);
+		push(mv, 0xFFFF);
+		mv.visitJumpInsn(IF_ICMPLT, ok);
+		mv.visitLabel(exit);
+		emitExit(mv, pc, cycles);
+		mv.visitLabel(ok);
+	}
+
+	private static void stepHL(MethodVisitor mv, boolean increment) {
+		mv.visitVarInsn(ALOAD, L_CPU);
+		field(mv, "hl");
+		mv.visitInsn(increment ? ICONST_1 : ICONST_M1);
+		mv.visitInsn(IADD);
+		push(mv, 0xFFFF);
+		mv.visitInsn(IAND);
+		mv.visitFieldInsn(PUTFIELD, CPU, "hl", "I");
+	}
+
+	private static void emitExit(MethodVisitor mv, int pc, int cycles) {
+		mv.visitVarInsn(ALOAD, L_CPU);
+		push(mv, pc);
+		mv.visitFieldInsn(PUTFIELD, CPU, "pc", "I");
+		push(mv, cycles);
+		mv.visitInsn(IRETURN);
+	}
+
+	/**
+	 * Defines the generated block classes.
+	 */
+	private static final class BlockLoader extends ClassLoader {
+		BlockLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] code) {
+			return defineClass(name, code, 0, code.length);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * PgbReplay plays a rom and a movie (see PgbMovie) back as
+ * fast as it goes: no window, no sound, no waiting for the
+ * next frame.  It reports how many frames per second that
+ * is and a hash of the screen and of the ram at the end.
+ *
+ * A movie always plays back the same, so the hashes have to
+ * match between the interpreter and the recompiler, and
+ * between any two versions of the cpu and video code that
+ * are meant to behave the same.  That makes it a check for
+ * optimisations as well as a benchmark on real games.
+ *
+ * With more than one run, the movie is played that many
+ * times from its start, the fastest run counts and every run
+ * has to end on the same hashes.  The first run also warms
+ * up the jit.
+ *
+ * Once the movie runs out, the frames after it are played
+ * with no buttons held.
+ *
+ * Given a wav file, the sound of the last run is written to
+ * it, see PgbWavSoundOutput.  Otherwise the sound isn't even
+ * mixed.
+ *
+ * usage: PgbReplay rom movie [frames] [runs] [interpreter|recompiler] [wav]
+ */
+public final class PgbReplay {
+
+	private PgbReplay() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.out.println("usage: PgbReplay rom movie [frames] [runs] [interpreter|recompiler] [wav]");
+			return;
+		}
+		PgbMovie movie = PgbMovie.read(new File(args[1]));
+		int frames = args.length > 2 ? Integer.parseInt(args[2]) : movie.length();
+		int runs = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		String mode = args.length > 4 ? args[4] : "interpreter";
+		File wav = args.length > 5 ? new File(args[5]) : null;
+
+		PgbSettings settings = new PgbSettings();
+		settings.recompiler = mode.equals("recompiler");
+		settings.system = movie.getSystem();
+
+		PgbCart cart = new PgbCart();
+		if(!cart.load(args[0])) {
+			return;
+		}
+		PgbVideo video = new PgbCachedVideo(settings);
+		PgbBenchmark.discardOutput(video);
+		PgbJoypad joy = new PgbJoypad(settings);
+		PgbMemory mem = new PgbMemory(settings, cart, video, joy, new PgbNetplay(settings));
+		PgbCpu cpu = new PgbCpu(mem);
+
+		video.reset();
+		cart.reset();
+		joy.reset();
+		mem.reset();
+		cpu.reset();
+
+		long best = Long.MAX_VALUE;
+		long screenHash = 0;
+		long ramHash = 0;
+		boolean match = true;
+		for(int run = 0; run < runs; run++) {
+			String problem = movie.play(cpu);
+			if(problem != null) {
+				System.out.println("Can't play movie: " + problem);
+				return;
+			}
+			if(wav != null && run == runs - 1) {
+				mem.soundChip.setOutput(new PgbWavSoundOutput(wav));
+			}
+			long start = System.nanoTime();
+			for(int i = 0; i < frames; i++) {
+				if(!movie.frame(joy)) {
+					joy.setButtons(0);
+					joy.latch();
+				}
+				cpu.exec(movie.getFrameCycles());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			mem.soundChip.close();
+
+			CRC32 crc = new CRC32();
+			crc.update(video.getScreenMemory());
+			long screen = crc.getValue();
+			crc.reset();
+			crc.update(mem.loRAM);
+			crc.update(mem.hiRAM);
+			crc.update(cart.ramdata);
+			long ram = crc.getValue();
+			if(run > 0) {
+				match &= screen == screenHash && ram == ramHash;
+			}
+			screenHash = screen;
+			ramHash = ram;
+		}
+
+		double fps = frames / (best / 1000000000.0);
+		System.out.println("mode: " + mode);
+		System.out.println("frames: " + frames + " (movie has " + movie.length() + ")");
+		System.out.println("runs: " + runs + (match ? "" : " (runs differ!)"));
+		System.out.println("best run: " + best / 1000000 + " ms");
+		System.out.println("frames per second: " + Math.round(fps * 10) / 10.0);
+		System.out.println("realtime factor: " + Math.round(fps * PgbHost.FRAME_NANOS / 10000000.0) / 100.0 + "x");
+		System.out.println("screen hash: " + Long.toHexString(screenHash));
+		System.out.println("ram hash: " + Long.toHexString(ramHash));
+		if(wav != null) {
+			System.out.println("sound written to " + wav + ", " + wav.length() + " bytes");
+		}
+	}
+}
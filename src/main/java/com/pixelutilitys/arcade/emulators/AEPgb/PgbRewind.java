@@ -0,0 +1,309 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PgbRewind keeps the last few seconds of play as save states
+ * (see PgbState) so they can be stepped back through.
+ *
+ * A state is captured every few frames.  Every KEY_INTERVAL-th
+ * one is stored whole, as a keyframe; the ones in between are
+ * stored as the XOR of the state with the last keyframe, which
+ * is mostly zeroes: only the ram, registers and palettes that
+ * changed since then.  The zeroes are stored as run lengths:
+ *
+ *   (zero run, literal count, literal bytes...) repeated
+ *
+ * with both counts as 7-bit varints.
+ *
+ * Everything goes into one ring of a fixed size, allocated up
+ * front, so the memory used never changes.  When the ring is
+ * full the oldest states are dropped, a keyframe together with
+ * the deltas that depend on it.
+ *
+ * Not thread safe, AEPgb only calls it between frames.
+ */
+public final class PgbRewind {
+	/** one state in this many is stored whole */
+	static final int		KEY_INTERVAL = 16;
+
+	private final byte[]	ring;
+	private int				head;
+
+	// the states in the ring, oldest first, as a circular list
+	private final int[]		offsets;
+	private final int[]		lengths;
+	private final boolean[]	keys;
+	private int				first;
+	private int				count;
+
+	// the newest keyframe, unpacked
+	private byte[]			key;
+	private int				sinceKey;
+	// a state being captured or restored
+	private byte[]			scratch;
+	private ByteBuffer		scratchBuf;
+	private int				stateSize;
+	// the encoded delta, before it goes into the ring
+	private byte[]			delta;
+	private int				readPos;
+
+	private final int		interval;
+	private int				frames;
+
+	/**
+	 * @param bytes size of the ring
+	 * @param interval capture a state every this many frames
+	 */
+	public PgbRewind(int bytes, int interval) {
+		ring = new byte[bytes];
+		this.interval = Math.max(1, interval);
+		int max = Math.max(16, bytes / 256);
+		offsets = new int[max];
+		lengths = new int[max];
+		keys = new boolean[max];
+	}
+
+	/**
+	 * Drops every state, for when the machine was reset or
+	 * loaded with another cart or state.
+	 */
+	public void clear() {
+		head = 0;
+		first = 0;
+		count = 0;
+		sinceKey = 0;
+		frames = 0;
+	}
+
+	/**
+	 * How many states can be stepped back through.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * How many bytes the states take up right now, out of
+	 * the ring's fixed size.
+	 */
+	public int used() {
+		int used = 0;
+		for(int i = 0; i < count; i++) {
+			used += lengths[(first + i) % offsets.length];
+		}
+		return used;
+	}
+
+	/**
+	 * How many frames apart the states are.
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Called after every frame, captures a state when one is
+	 * due.
+	 */
+	public void frame(PgbCpu cpu) {
+		if(++frames >= interval) {
+			frames = 0;
+			capture(cpu);
+		}
+	}
+
+	/**
+	 * Captures a state now.
+	 */
+	public void capture(PgbCpu cpu) {
+		int size = PgbState.size(cpu);
+		if(size != stateSize) {
+			// another cart, nothing from before fits
+			stateSize = size;
+			key = new byte[size];
+			scratch = new byte[size];
+			scratchBuf = ByteBuffer.wrap(scratch);
+			// no worse than one literal run with its counts
+			delta = new byte[size + 16];
+			clear();
+		}
+		scratchBuf.clear();
+		PgbState.save(cpu, scratchBuf);
+
+		if(count > 0 && sinceKey + 1 < KEY_INTERVAL) {
+			int length = encode(scratch, key, size);
+			if(store(null, length, false)) {
+				sinceKey++;
+				return;
+			}
+			// making room took its keyframe, so this becomes one
+		}
+		if(store(scratch, size, true)) {
+			System.arraycopy(scratch, 0, key, 0, size);
+			sinceKey = 0;
+		}
+	}
+
+	/**
+	 * Loads the newest state and forgets it, so the next call
+	 * goes one further back.  Returns false when there is
+	 * nothing left.
+	 */
+	public boolean stepBack(PgbCpu cpu) {
+		if(count == 0) {
+			return false;
+		}
+		int last = (first + count - 1) % offsets.length;
+		int offset = offsets[last];
+		if(keys[last]) {
+			System.arraycopy(ring, offset, scratch, 0, stateSize);
+		} else {
+			decode(ring, offset, key, scratch, stateSize);
+		}
+		count--;
+		head = offset;
+		frames = 0;
+
+		if(keys[last]) {
+			// the deltas before this one go with the keyframe before it
+			sinceKey = 0;
+			for(int i = count - 1; i >= 0; i--) {
+				int e = (first + i) % offsets.length;
+				if(keys[e]) {
+					System.arraycopy(ring, offsets[e], key, 0, stateSize);
+					break;
+				}
+				sinceKey++;
+			}
+		} else {
+			sinceKey--;
+		}
+
+		scratchBuf.clear();
+		PgbState.load(cpu, scratchBuf);
+		return true;
+	}
+
+	/**
+	 * Finds room for length bytes at the head of the ring,
+	 * dropping the oldest states in the way, then copies data
+	 * there, or the encoded delta if data is null.
+	 */
+	private boolean store(byte[] data, int length, boolean isKey) {
+		if(length > ring.length) {
+			return false;
+		}
+		int start = head;
+		if(start + length > ring.length) {
+			// doesn't fit before the end; whatever is there is oldest
+			while(count > 0 && offsets[first] >= start) {
+				drop();
+			}
+			start = 0;
+		}
+		while(count > 0 && (count == offsets.length || overlaps(first, start, length))) {
+			drop();
+		}
+		if(!isKey && count == 0) {
+			// its keyframe was just dropped
+			return false;
+		}
+		if(data != null) {
+			System.arraycopy(data, 0, ring, start, length);
+		} else {
+			System.arraycopy(delta, 0, ring, start, length);
+		}
+		int e = (first + count) % offsets.length;
+		offsets[e] = start;
+		lengths[e] = length;
+		keys[e] = isKey;
+		count++;
+		head = start + length;
+		return true;
+	}
+
+	private boolean overlaps(int e, int start, int length) {
+		return offsets[e] < start + length && start < offsets[e] + lengths[e];
+	}
+
+	/**
+	 * Drops the oldest keyframe and the deltas on top of it.
+	 */
+	private void drop() {
+		do {
+			first = (first + 1) % offsets.length;
+			count--;
+		} while(count > 0 && !keys[first]);
+	}
+
+	/**
+	 * XORs state with key and run length encodes the zeroes
+	 * into delta.  Returns the encoded length.
+	 */
+	private int encode(byte[] state, byte[] key, int size) {
+		int out = 0;
+		int i = 0;
+		while(i < size) {
+			int zeroes = i;
+			while(i < size && state[i] == key[i]) {
+				i++;
+			}
+			zeroes = i - zeroes;
+			int literal = i;
+			// a literal run ends at 4 equal bytes in a row
+			while(i < size && (state[i] != key[i] || (i + 3 < size
+				&& (state[i + 1] != key[i + 1] || state[i + 2] != key[i + 2] || state[i + 3] != key[i + 3])))) {
+				i++;
+			}
+			int n = i - literal;
+			out = putVarint(delta, out, zeroes);
+			out = putVarint(delta, out, n);
+			for(int j = 0; j < n; j++) {
+				delta[out++] = (byte)(state[literal + j] ^ key[literal + j]);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Undoes encode(): writes key XOR the delta at
+	 * data[offset] into state.
+	 */
+	private void decode(byte[] data, int offset, byte[] key, byte[] state, int size) {
+		int i = 0;
+		readPos = offset;
+		while(i < size) {
+			int zeroes = getVarint(data);
+			System.arraycopy(key, i, state, i, zeroes);
+			i += zeroes;
+			int n = getVarint(data);
+			for(int j = 0; j < n; j++) {
+				state[i + j] = (byte)(key[i + j] ^ data[readPos + j]);
+			}
+			readPos += n;
+			i += n;
+		}
+	}
+
+	private static int putVarint(byte[] b, int pos, int value) {
+		while(value >= 0x80) {
+			b[pos++] = (byte)(value | 0x80);
+			value >>>= 7;
+		}
+		b[pos++] = (byte)value;
+		return pos;
+	}
+
+	private int getVarint(byte[] b) {
+		int value = 0;
+		int shift = 0;
+		byte v;
+		do {
+			v = b[readPos++];
+			value |= (v & 0x7F) << shift;
+			shift += 7;
+		} while(v < 0);
+		return value;
+	}
+}
@@ -0,0 +1,91 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/**
+ * PgbRomCache keeps one copy of every rom image loaded, so all
+ * the emulators playing the same game share one romdata array
+ * and the second one to open it doesn't read or unzip anything.
+ *
+ * Images are kept by the SHA-1 of their contents, so the same
+ * game found in a .gb and in a .zip is still only kept once.
+ * Files are remembered by path, length and modification time,
+ * which finds their image without reading them again.
+ *
+ * The images are only softly held: once no cart uses a game
+ * any more it stays around until memory runs short.  A shared
+ * image is read only, nothing may ever write to it.
+ */
+public final class PgbRomCache {
+	/** file key to the SHA-1 of its rom */
+	private static final HashMap<String, String>					files = new HashMap<String, String>();
+	/** SHA-1 to the rom */
+	private static final HashMap<String, SoftReference<byte[]>>	images = new HashMap<String, SoftReference<byte[]>>();
+
+	private PgbRomCache() {
+	}
+
+	/**
+	 * The rom last loaded from file, or null if the file has
+	 * changed since or the rom is gone.
+	 */
+	public static synchronized byte[] get(File file) {
+		String hash = files.get(key(file));
+		if(hash == null) {
+			return null;
+		}
+		SoftReference<byte[]> ref = images.get(hash);
+		return ref == null ? null : ref.get();
+	}
+
+	/**
+	 * Remembers rom as the contents of file and returns the
+	 * image to use in its place, which is rom itself unless
+	 * the same rom is already in the cache.
+	 */
+	public static synchronized byte[] put(File file, byte[] rom) {
+		String hash = hash(rom);
+		files.put(key(file), hash);
+		return share(hash, rom);
+	}
+
+	private static byte[] share(String hash, byte[] rom) {
+		SoftReference<byte[]> ref = images.get(hash);
+		byte[] cached = ref == null ? null : ref.get();
+		if(cached != null) {
+			return cached;
+		}
+		images.put(hash, new SoftReference<byte[]>(rom));
+		return rom;
+	}
+
+	private static String key(File file) {
+		String path;
+		try {
+			path = file.getCanonicalPath();
+		} catch(IOException e) {
+			path = file.getAbsolutePath();
+		}
+		return path + ':' + file.length() + ':' + file.lastModified();
+	}
+
+	private static String hash(byte[] rom) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(rom);
+			StringBuilder s = new StringBuilder(40);
+			for(int i = 0; i < digest.length; i++) {
+				s.append(Character.forDigit(digest[i] >> 4 & 0x0F, 16));
+				s.append(Character.forDigit(digest[i] & 0x0F, 16));
+			}
+			return s.toString();
+		} catch(NoSuchAlgorithmException e) {
+			// every java has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
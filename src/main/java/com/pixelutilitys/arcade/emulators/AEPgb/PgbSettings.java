@@ -27,8 +27,11 @@ import java.io.StreamTokenizer;
 import java.io.Writer;
 
 /**
- * PgbSettings is a static class containing all the settings 
- * that the various components need to operate.
+ * PgbSettings contains all the settings that the various
+ * components need to operate.  Every emulator has its own
+ * instance, so several of them can run side by side in one
+ * JVM without stepping on each other's clock speed, system
+ * type or keys.  Only the constants are static.
  * 
  * Remember to recompile all dependent classes if you change
  * DEBUG for it to take effect.
@@ -49,61 +52,69 @@ public class PgbSettings {
 	public static final int			VIDOUT_INDEXED	= 02;
 	public static final int			VIDOUT_DIRECT	= 03;
 	
-	public volatile static boolean	paused = false;
-	public volatile static boolean	active = false;
+	public volatile boolean			paused = false;
+	public volatile boolean			active = false;
 	
-	public static int				priority = Thread.NORM_PRIORITY;
+	public int						priority = Thread.NORM_PRIORITY;
 	
-	public static boolean			usedirectx = false;
+	public static final boolean		usedirectx = false;
 	
-	public static int				debuglevel = 0;
-	public static int				debugstop = -1;
+	public int						debuglevel = 0;
+	public int						debugstop = -1;
 	
-	public static int				videooutput = VIDOUT_DIRECT;
+	public int						videooutput = VIDOUT_DIRECT;
 	
-	public static int				desiredsystem = SYS_GBC;
-	public static int				system;
+	public int						desiredsystem = SYS_GBC;
+	public int						system;
 	
-	public static int				lcdsize = 2;
-	public static boolean			autowait = true;
-	public static int				frameskip = 0;
-	public static double			clockspeed = 4.194304;
+	public int						lcdsize = 2;
+	public boolean					autowait = true;
+	public boolean					autoskip = true;
+	public int						catchup = 4;
+	// rewind: a state every rewindframes frames, in a ring of rewindmemory MB
+	public boolean					rewind = true;
+	public int						rewindframes = 4;
+	public int						rewindmemory = 8;
+	public int						frameskip = 0;
+	public double					clockspeed = 4.194304;
+	public boolean					recompiler = false;
 	
-	public static int				key_up		= KeyEvent.VK_UP;
-	public static int				key_down	= KeyEvent.VK_DOWN;
-	public static int				key_left	= KeyEvent.VK_LEFT;
-	public static int				key_right	= KeyEvent.VK_RIGHT;
-	public static int				key_a		= KeyEvent.VK_A;
-	public static int				key_b		= KeyEvent.VK_S;
-	public static int				key_select	= KeyEvent.VK_SPACE;
-	public static int				key_start	= KeyEvent.VK_ENTER;
-	public static int				key_screen  = KeyEvent.VK_F5;
+	public int						key_up		= KeyEvent.VK_UP;
+	public int						key_down	= KeyEvent.VK_DOWN;
+	public int						key_left	= KeyEvent.VK_LEFT;
+	public int						key_right	= KeyEvent.VK_RIGHT;
+	public int						key_a		= KeyEvent.VK_A;
+	public int						key_b		= KeyEvent.VK_S;
+	public int						key_select	= KeyEvent.VK_SPACE;
+	public int						key_start	= KeyEvent.VK_ENTER;
+	public int						key_screen  = KeyEvent.VK_F5;
+	public int						key_rewind  = KeyEvent.VK_BACK_SPACE;
 	
-	public static int[]				bgcolors = {0xFFFFFFFF, 0xFFDAA5AE, 0xFFA24051, 0xFF000000};
-	public static int[]				obj0colors = {0xFFFFFFFF, 0xFF95D5A4, 0xFF579629, 0xFF000000};
-	public static int[]				obj1colors = {0xFFFFFFFF, 0xFF92C0E7, 0xFF2F7ED0, 0xFF000000};
+	public int[]					bgcolors = {0xFFFFFFFF, 0xFFDAA5AE, 0xFFA24051, 0xFF000000};
+	public int[]					obj0colors = {0xFFFFFFFF, 0xFF95D5A4, 0xFF579629, 0xFF000000};
+	public int[]					obj1colors = {0xFFFFFFFF, 0xFF92C0E7, 0xFF2F7ED0, 0xFF000000};
 	
-	public static boolean			sgbborder = false;
-	public static boolean			colormute = false;
+	public boolean					sgbborder = false;
+	public boolean					colormute = false;
 	// by retroK
-	public static boolean			usesound = true;
+	public boolean					usesound = true;
 
 	
-	public static String			gamestring = "NONE            ";
-	public static String			lastnetaddress = "";
-	public static int				netlistentimeout = 10000;
-	public static int				netport = 2907;
+	public String					gamestring = "NONE            ";
+	public String					lastnetaddress = "";
+	public int						netlistentimeout = 10000;
+	public int						netport = 2907;
 	
-	public static Point				winloc = new Point();
+	public Point					winloc = new Point();
 	
-	public static void popKeysDialog(Frame frame) {
+	public void popKeysDialog(Frame frame) {
 		PgbKeyDialog kd;
 		
-		kd = new PgbKeyDialog(frame);
+		kd = new PgbKeyDialog(frame, this);
 		kd.setVisible(true);
 	}
 	
-	public static void load() {
+	public void load() {
 		File cfgfile;
 		Reader cr;
 		StreamTokenizer st;
@@ -147,6 +158,18 @@ scan:
 						st.nextToken();
 						frameskip = (int)st.nval;
 					}
+					if(key.equals("catchup")) {
+						st.nextToken();
+						catchup = (int)st.nval;
+					}
+					if(key.equals("rewindframes")) {
+						st.nextToken();
+						rewindframes = (int)st.nval;
+					}
+					if(key.equals("rewindmemory")) {
+						st.nextToken();
+						rewindmemory = (int)st.nval;
+					}
 					if(key.equals("colormute")) {
 						st.nextToken();
 						colormute = st.sval.equalsIgnoreCase("true");
@@ -209,6 +232,18 @@ scan:
 						st.nextToken();
 						autowait = st.sval.equalsIgnoreCase("true");
 					}
+					if(key.equals("autoskip")) {
+						st.nextToken();
+						autoskip = st.sval.equalsIgnoreCase("true");
+					}
+					if(key.equals("rewind")) {
+						st.nextToken();
+						rewind = st.sval.equalsIgnoreCase("true");
+					}
+					if(key.equals("recompiler")) {
+						st.nextToken();
+						recompiler = st.sval.equalsIgnoreCase("true");
+					}
 					// by retroK
 					if(key.equals("usesound")) {
 						 st.nextToken();
@@ -225,7 +260,7 @@ scan:
 		}
 	}
 	
-	public static void save(Frame tosave) {
+	public void save(Frame tosave) {
 		File cfgfile;
 		Writer cw;
 
@@ -253,6 +288,12 @@ scan:
 			cw.write("cpupriority " + priority + "\r\n");
 			cw.write("videooutput " + videooutput + "\r\n");
 			cw.write("autowait " + autowait + "\r\n");
+			cw.write("autoskip " + autoskip + "\r\n");
+			cw.write("catchup " + catchup + "\r\n");
+			cw.write("rewind " + rewind + "\r\n");
+			cw.write("rewindframes " + rewindframes + "\r\n");
+			cw.write("rewindmemory " + rewindmemory + "\r\n");
+			cw.write("recompiler " + recompiler + "\r\n");
 			cw.write("usesound " + usesound + "\r\n");
 			
 			cw.close();
@@ -273,21 +314,23 @@ class PgbKeyDialog extends Dialog implements ActionListener, KeyListener{
     private TextField upF, downF, leftF, rightF,
 		aF, bF, selectF, startF, screenF;
 	private Button okayB;
+	private PgbSettings settings;
 
-    public PgbKeyDialog(Frame frame) {
+    public PgbKeyDialog(Frame frame, PgbSettings settings) {
 		super(frame, "Key Assignment", true); // modal
+		this.settings = settings;
 			
 		LayoutManager layout;
 			
-		key_up		= PgbSettings.key_up;
-		key_down	= PgbSettings.key_down;
-		key_left	= PgbSettings.key_left;
-		key_right	= PgbSettings.key_right;
-		key_a		= PgbSettings.key_a;
-		key_b		= PgbSettings.key_b;
-		key_select	= PgbSettings.key_select;
-		key_start	= PgbSettings.key_start;
-		key_screen  = PgbSettings.key_screen;
+		key_up		= settings.key_up;
+		key_down	= settings.key_down;
+		key_left	= settings.key_left;
+		key_right	= settings.key_right;
+		key_a		= settings.key_a;
+		key_b		= settings.key_b;
+		key_select	= settings.key_select;
+		key_start	= settings.key_start;
+		key_screen  = settings.key_screen;
 
         Label upL = new Label("Up", Label.RIGHT);
         Label downL = new Label("Down", Label.RIGHT);
@@ -367,15 +410,15 @@ class PgbKeyDialog extends Dialog implements ActionListener, KeyListener{
 	public void actionPerformed(ActionEvent ev) {
 		if(ev.getActionCommand().equals("okay")) {
 			this.setVisible(false);
-			PgbSettings.key_up		= key_up;
-			PgbSettings.key_down	= key_down;
-			PgbSettings.key_left	= key_left;
-			PgbSettings.key_right	= key_right;
-			PgbSettings.key_a		= key_a;
-			PgbSettings.key_b		= key_b;
-			PgbSettings.key_select	= key_select;
-			PgbSettings.key_start	= key_start;
-			PgbSettings.key_screen  = key_screen;
+			settings.key_up		= key_up;
+			settings.key_down	= key_down;
+			settings.key_left	= key_left;
+			settings.key_right	= key_right;
+			settings.key_a		= key_a;
+			settings.key_b		= key_b;
+			settings.key_select	= key_select;
+			settings.key_start	= key_start;
+			settings.key_screen  = key_screen;
 		}
 		if(ev.getActionCommand().equals("cancel")) {
 			this.setVisible(false);
@@ -0,0 +1,36 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+/**
+ * PgbSoundOutput takes the sound SoundChip mixes and plays
+ * it, keeps it or throws it away.  SoundChip starts out with
+ * a PgbNullSoundOutput, AEPgb gives it a PgbLineSoundOutput
+ * when the settings want sound.
+ *
+ * The sound comes a frame at a time, as 16-bit little endian
+ * stereo.
+ */
+public abstract class PgbSoundOutput {
+
+	/**
+	 * open() is called by SoundChip when the output is
+	 * attached, and again whenever the sample rate or the
+	 * buffer length change, after close().  Returns whether
+	 * the output wants any sound; if not, SoundChip doesn't
+	 * mix it.
+	 */
+	public abstract boolean open(int sampleRate, int bufferLengthMsec);
+
+	/**
+	 * write() is called by SoundChip at every vblank with the
+	 * frame just mixed, the first length bytes of b.  It runs
+	 * on the emulator's thread, so it must not wait for
+	 * anything.  b is reused once it returns.
+	 */
+	public abstract void write(byte[] b, int length);
+
+	/**
+	 * close() lets go of whatever open() took.  The output may
+	 * be opened again afterwards.
+	 */
+	public abstract void close();
+}
@@ -0,0 +1,117 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PgbState writes and reads save states: a snapshot of the
+ * whole machine in a compact binary format.  Every part of
+ * the machine writes its own fields in a fixed order, see
+ * the saveState() and loadState() methods of PgbCpu,
+ * PgbVideo, PgbCart, PgbMemory, PgbJoypad and SoundChip.
+ * There is no reflection and nothing is allocated, so a
+ * snapshot is little more than a copy of the ram arrays.
+ *
+ * The header says what the state is for:
+ *
+ *   int	"PGBS"
+ *   int	format version, VERSION
+ *   byte	system, one of PgbSettings.SYS_*
+ *   int	rom checksum, PgbCart.getChecksum()
+ *   int	rom size
+ *   int	cart ram size
+ *
+ * A state only loads into a machine running the same rom as
+ * the same system.  Anything that changes the layout has to
+ * bump VERSION, older states are then refused rather than
+ * misread.
+ *
+ * The rom is not part of the state, nor are the settings,
+ * the netplay link and the buttons being held.  A state
+ * must be taken between two frames, AEPgb.saveState() and
+ * AEPgb.loadState() make sure of that.
+ */
+public final class PgbState {
+	public static final int		MAGIC = 0x50474253;
+	public static final int		VERSION = 2;
+
+	static final int			HEADER_SIZE = 21;
+
+	private PgbState() {
+	}
+
+	/**
+	 * How many bytes save() writes for this machine and cart.
+	 */
+	public static int size(PgbCpu cpu) {
+		PgbMemory mem = cpu.mem;
+		return HEADER_SIZE
+			+ cpu.stateSize()
+			+ mem.video.stateSize()
+			+ mem.cart.stateSize()
+			+ mem.stateSize()
+			+ mem.joy.stateSize()
+			+ mem.soundChip.stateSize();
+	}
+
+	/**
+	 * Writes the machine cpu belongs to into buf, which needs
+	 * size() bytes left.
+	 */
+	public static void save(PgbCpu cpu, ByteBuffer buf) {
+		PgbMemory mem = cpu.mem;
+		buf.putInt(MAGIC).putInt(VERSION);
+		buf.put((byte)mem.settings.system);
+		buf.putInt(mem.cart.getChecksum()).putInt(mem.cart.romdata.length).putInt(mem.cart.ramdata.length);
+		cpu.saveState(buf);
+		mem.video.saveState(buf);
+		mem.cart.saveState(buf);
+		// after the video and cart, it maps their memory
+		mem.saveState(buf);
+		mem.joy.saveState(buf);
+		mem.soundChip.saveState(buf);
+	}
+
+	/**
+	 * Tells why the state in buf can't be loaded into the
+	 * machine cpu belongs to, or returns null if it can.
+	 * Doesn't move buf.
+	 */
+	public static String check(PgbCpu cpu, ByteBuffer buf) {
+		PgbMemory mem = cpu.mem;
+		int pos = buf.position();
+		if(buf.remaining() < HEADER_SIZE || buf.getInt(pos) != MAGIC) {
+			return "not a save state";
+		}
+		if(buf.getInt(pos + 4) != VERSION) {
+			return "save state version " + buf.getInt(pos + 4) + ", expected " + VERSION;
+		}
+		if(buf.get(pos + 8) != mem.settings.system) {
+			return "save state is for another system";
+		}
+		if(buf.getInt(pos + 9) != mem.cart.getChecksum()
+			|| buf.getInt(pos + 13) != mem.cart.romdata.length
+			|| buf.getInt(pos + 17) != mem.cart.ramdata.length) {
+			return "save state is for another rom";
+		}
+		if(buf.remaining() < size(cpu)) {
+			return "save state is cut short";
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a state written by save() into the machine cpu
+	 * belongs to.  Call check() first, a state that doesn't
+	 * fit leaves the machine half loaded.
+	 */
+	public static void load(PgbCpu cpu, ByteBuffer buf) {
+		PgbMemory mem = cpu.mem;
+		buf.position(buf.position() + HEADER_SIZE);
+		cpu.loadState(buf);
+		mem.video.loadState(buf);
+		mem.cart.loadState(buf);
+		mem.loadState(buf);
+		mem.joy.loadState(buf);
+		mem.soundChip.loadState(buf);
+	}
+}
@@ -10,6 +10,7 @@ package com.pixelutilitys.arcade.emulators.AEPgb;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * PgbVideo is responsible for the GameBoy video hardware.
@@ -74,6 +75,15 @@ public abstract class PgbVideo {
 	int					cycles;
 	int					curframe;
 	public long			framecount;
+
+	// frameskip: is this frame drawn?  the adaptive frameskip
+	// sets skipnext to leave the next one out
+	boolean				drawing;
+	public boolean		skipnext;
+	int					skiprun;
+	public long			skipcount;
+	// host time spent drawing, in ns
+	public long			renderNanos;
 	
 	// memory
 	byte[]				vram;
@@ -100,7 +110,10 @@ public abstract class PgbVideo {
 	byte				bgpi;
 	byte				obpi;
 	
-	public PgbVideo() {
+	PgbSettings			settings;
+	
+	public PgbVideo(PgbSettings settings) {
+		this.settings = settings;
 		// setup ram
 		vram = new byte[0x4000];
 		oam = new byte[0xA0];
@@ -139,6 +152,9 @@ public abstract class PgbVideo {
 		cycles = 0;
 		curframe = 0;
 		framecount = 0;
+		drawing = true;
+		skipnext = false;
+		skiprun = 0;
 		
 		// bgpal
 		setBgPal(0xFC);
@@ -156,6 +172,83 @@ public abstract class PgbVideo {
 		obpi = (byte)0x00;
 	}
 	
+	/**
+	 * Writes the registers, VRAM, OAM and palettes for a save
+	 * state.  The SGB memory only goes in when running as one.
+	 */
+	public void saveState(ByteBuffer buf) {
+		buf.put((byte)scx).put((byte)scy).put((byte)ly).put((byte)lyc).put((byte)wx).put((byte)wy);
+		buf.put(getLcdc());
+		byte stat = 0;
+		stat |= int_lyc		? 0x01 : 0x00;
+		stat |= int_oam		? 0x02 : 0x00;
+		stat |= int_hblank	? 0x04 : 0x00;
+		stat |= int_vblank	? 0x08 : 0x00;
+		stat |= drawing		? 0x10 : 0x00;
+		stat |= sgbvramon	? 0x20 : 0x00;
+		buf.put(stat).put(stat_mode);
+		buf.putInt(cycles).putInt(curframe).putLong(framecount);
+		buf.put((byte)bgpal).put((byte)objpal0).put((byte)objpal1);
+		buf.put(gbcVram).put(bgpi).put(obpi);
+		buf.put(vram).put(oam).put(gbcPalette);
+		if(settings.system == PgbSettings.SYS_SGB) {
+			buf.put(sgbPicture).put(sgbCharset).put(sgbPalette);
+			buf.put(sgbSystemPalette).put(sgbAtfData).put(sgbPaletteOverlay);
+		}
+	}
+	
+	/**
+	 * Reads what saveState() wrote, for the same system.
+	 */
+	public void loadState(ByteBuffer buf) {
+		scx = buf.get() & 0xFF;
+		scy = buf.get() & 0xFF;
+		int line = buf.get() & 0xFF;
+		lyc = buf.get() & 0xFF;
+		wx = buf.get() & 0xFF;
+		wy = buf.get() & 0xFF;
+		setLcdc(buf.get());
+		byte stat = buf.get();
+		int_lyc		= (stat & 0x01) != 0;
+		int_oam		= (stat & 0x02) != 0;
+		int_hblank	= (stat & 0x04) != 0;
+		int_vblank	= (stat & 0x08) != 0;
+		drawing		= (stat & 0x10) != 0;
+		sgbvramon	= (stat & 0x20) != 0;
+		// after setLcdc(), which may have reset them
+		ly = line;
+		stat_mode = buf.get();
+		cycles = buf.getInt();
+		curframe = buf.getInt();
+		framecount = buf.getLong();
+		int bg = buf.get() & 0xFF;
+		int obj0 = buf.get() & 0xFF;
+		int obj1 = buf.get() & 0xFF;
+		gbcSetVram(buf.get());
+		bgpi = buf.get();
+		obpi = buf.get();
+		buf.get(vram).get(oam).get(gbcPalette);
+		if(settings.system == PgbSettings.SYS_SGB) {
+			buf.get(sgbPicture).get(sgbCharset).get(sgbPalette);
+			buf.get(sgbSystemPalette).get(sgbAtfData).get(sgbPaletteOverlay);
+		}
+		// last, so they see the SGB palettes
+		setBgPal(bg);
+		setObjPal0(obj0);
+		setObjPal1(obj1);
+		skipnext = false;
+		skiprun = 0;
+	}
+	
+	public int stateSize() {
+		int size = 31 + vram.length + oam.length + gbcPalette.length;
+		if(settings.system == PgbSettings.SYS_SGB) {
+			size += sgbPicture.length + sgbCharset.length + sgbPalette.length;
+			size += sgbSystemPalette.length + sgbAtfData.length + sgbPaletteOverlay.length;
+		}
+		return size;
+	}
+	
 	public byte read(int address) {
 		// VRAM
 		if(address >= 0x8000 && address < 0xA000) {
@@ -204,17 +297,18 @@ public abstract class PgbVideo {
 		cycles -= cy;
 		if(cycles <= 0) {
 			if(stat_mode == STAT_HBLANK || stat_mode == STAT_VBLANK) {
-				if(++ly > 0x100) {
-					ly = 0;	
+				// 144 visible lines and 10 of vblank make one frame
+				if(++ly > 153) {
+					ly = 0;
 				}
 				if(ly < 0x90) {
 					hblank();
 					stat_mode = STAT_OAM;
-					cycles = (int)(OAM_CYCLES * PgbSettings.clockspeed);
+					cycles = (int)(OAM_CYCLES * settings.clockspeed);
 					interrupt |= int_hblank ? PgbMemory.INT_LCD : 0;
 				} else {
 					stat_mode = STAT_VBLANK;
-					cycles = (int)(VBLANK_CYCLES * PgbSettings.clockspeed);
+					cycles = (int)(VBLANK_CYCLES * settings.clockspeed);
 					if(ly == 0x90) {
 						vblank();
 						// by retroK:
@@ -230,13 +324,13 @@ public abstract class PgbVideo {
 			}
 			if(stat_mode == STAT_OAM) {
 				stat_mode = STAT_TRANSFER;
-				cycles = (int)(TRANSFER_CYCLES * PgbSettings.clockspeed);
+				cycles = (int)(TRANSFER_CYCLES * settings.clockspeed);
 				interrupt |= int_oam ? PgbMemory.INT_LCD : 0;
 				return interrupt;
 			}
 			if(stat_mode == STAT_TRANSFER) {
 				stat_mode = STAT_HBLANK;
-				cycles = (int)(HBLANK_CYCLES * PgbSettings.clockspeed);
+				cycles = (int)(HBLANK_CYCLES * settings.clockspeed);
 				return interrupt;
 			}
 		}
@@ -245,18 +339,41 @@ public abstract class PgbVideo {
 	
 	public void hblank() {
 		//if(lcd_on && curframe == 0 && (ly & 1) == (framecount & 1)) {
-		if(lcd_on && curframe == 0) {
+		if(lcd_on && drawing) {
 			vidout.hblank(ly);
 		}
 	}
 	
 	public void vblank() {
 		framecount++;
+		if(drawing) {
+			long start = System.nanoTime();
+			vidout.vblank();
+			renderNanos += System.nanoTime() - start;
+		}
 		curframe--;
 		if(curframe < 0) {
-			curframe = PgbSettings.frameskip;
-			vidout.vblank();
+			curframe = settings.frameskip;
+		}
+		drawing = curframe == 0;
+		if(drawing && skipnext) {
+			drawing = false;
+			skipcount++;
+			skiprun++;
+		} else {
+			skiprun = 0;
+		}
+	}
+	
+	/**
+	 * Hands the whole screen to the output again as it is,
+	 * for when it was loaded rather than drawn.
+	 */
+	public void redraw() {
+		for(int line = 0; line < 144; line++) {
+			vidout.hblank(line);
 		}
+		vidout.vblank();
 	}
 	
 	public void setVideoOutput(PgbVideoOutput vidout) {
@@ -0,0 +1,113 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * PgbWavSoundOutput writes the sound to a WAV file, 16-bit
+ * stereo PCM, for listening to later or for comparing two
+ * runs byte for byte.  Played back with PgbReplay, the same
+ * movie has to give the same file.
+ *
+ * The sizes in the header are filled in by close(), until
+ * then the file is incomplete.  Opening the output again,
+ * as changing the sample rate does, starts the file over.
+ */
+public class PgbWavSoundOutput extends PgbSoundOutput {
+	private final File			file;
+	private OutputStream		out;
+	private long				length;
+
+	public PgbWavSoundOutput(File file) {
+		this.file = file;
+	}
+
+	public synchronized boolean open(int sampleRate, int bufferLengthMsec) {
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+			length = 0;
+			byte[] header = new byte[44];
+			putString(header, 0, "RIFF");
+			putString(header, 8, "WAVE");
+			putString(header, 12, "fmt ");
+			putInt(header, 16, 16);
+			// PCM, stereo
+			putShort(header, 20, 1);
+			putShort(header, 22, 2);
+			putInt(header, 24, sampleRate);
+			putInt(header, 28, sampleRate * 4);
+			putShort(header, 32, 4);
+			putShort(header, 34, 16);
+			putString(header, 36, "data");
+			out.write(header);
+			return true;
+		} catch(IOException e) {
+			System.out.println("Error: Can't write sound to " + file + "!");
+			System.out.println(e.getMessage());
+			out = null;
+			return false;
+		}
+	}
+
+	public synchronized void write(byte[] b, int length) {
+		if(out == null) {
+			return;
+		}
+		try {
+			out.write(b, 0, length);
+			this.length += length;
+		} catch(IOException e) {
+			System.out.println("Error: Can't write sound to " + file + "!");
+			System.out.println(e.getMessage());
+			close();
+		}
+	}
+
+	/**
+	 * Fills in the header and closes the file.
+	 */
+	public synchronized void close() {
+		if(out == null) {
+			return;
+		}
+		try {
+			out.close();
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				byte[] size = new byte[4];
+				putInt(size, 0, (int)(36 + length));
+				raf.seek(4);
+				raf.write(size);
+				putInt(size, 0, (int)length);
+				raf.seek(40);
+				raf.write(size);
+			} finally {
+				raf.close();
+			}
+		} catch(IOException e) {
+			System.out.println("Error: Can't write sound to " + file + "!");
+			System.out.println(e.getMessage());
+		}
+		out = null;
+	}
+
+	private static void putString(byte[] b, int offset, String s) {
+		for(int i = 0; i < 4; i++) {
+			b[offset + i] = (byte)s.charAt(i);
+		}
+	}
+
+	private static void putInt(byte[] b, int offset, int value) {
+		putShort(b, offset, value);
+		putShort(b, offset + 2, value >> 16);
+	}
+
+	private static void putShort(byte[] b, int offset, int value) {
+		b[offset] = (byte)value;
+		b[offset + 1] = (byte)(value >> 8);
+	}
+}
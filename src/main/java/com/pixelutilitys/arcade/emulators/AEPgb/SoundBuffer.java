@@ -0,0 +1,74 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+/** A ring of sound data between the emulator, which adds a
+ *  frame of samples at every vblank, and the thread that
+ *  feeds them to the sound line.
+ *
+ *  There is exactly one writer and one reader and no lock:
+ *  each side only moves its own position and sees the other
+ *  one's through a volatile.  The writer never waits; what
+ *  doesn't fit is dropped.  The reader gets whatever is
+ *  there, possibly nothing.
+ */
+final class SoundBuffer {
+	private final byte[] data;
+	private final int mask;
+
+	/** Bytes written and read since the start, only ever growing */
+	private volatile long written;
+	private volatile long read;
+
+	/** Bytes the writer had to drop, for the curious */
+	volatile long dropped;
+
+	/** Makes a ring of at least size bytes */
+	SoundBuffer(int size) {
+		int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+		data = new byte[capacity];
+		mask = capacity - 1;
+	}
+
+	/** Adds the first length bytes of b, or as many whole
+	 *  16-bit stereo samples of them as fit.  Returns how
+	 *  many that was.  Only the writer calls this.
+	 */
+	int write(byte[] b, int length) {
+		long w = written;
+		int n = Math.min(length, data.length - (int) (w - read)) & ~3;
+		int pos = (int) w & mask;
+		int first = Math.min(n, data.length - pos);
+		System.arraycopy(b, 0, data, pos, first);
+		System.arraycopy(b, first, data, 0, n - first);
+		written = w + n;
+		if (n < length) {
+			dropped += length - n;
+		}
+		return n;
+	}
+
+	/** Takes up to max bytes into b and returns how many.
+	 *  Only the reader calls this.
+	 */
+	int read(byte[] b, int max) {
+		long r = read;
+		int n = Math.min(max, (int) (written - r));
+		int pos = (int) r & mask;
+		int first = Math.min(n, data.length - pos);
+		System.arraycopy(data, pos, b, 0, first);
+		System.arraycopy(data, 0, b, first, n - first);
+		read = r + n;
+		return n;
+	}
+
+	/** Throws away what hasn't been read yet.  Only the reader
+	 *  calls this.
+	 */
+	void skip() {
+		read = written;
+	}
+
+	/** How many bytes are waiting to be read */
+	int available() {
+		return (int) (written - read);
+	}
+}
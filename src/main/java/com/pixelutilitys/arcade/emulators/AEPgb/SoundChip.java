@@ -23,18 +23,30 @@ Place - Suite 330, Boston, MA 02111-1307, USA.
 
 */
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.SourceDataLine;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /** This is the central controlling class for the sound.
- *  It interfaces with the Java Sound API, and handles the
- *  classes for each sound channel.
+ *  It handles the classes for each sound channel and hands
+ *  what they play to a PgbSoundOutput.
+ *
+ *  The emulator mixes a frame of sound at every vblank, as
+ *  16-bit stereo, and gives it to the output.  Until it is
+ *  given another one, the output is a PgbNullSoundOutput: no
+ *  audio hardware is touched and nothing is mixed.
  */
 class SoundChip {
-	/** The DataLine for outputting the sound */
-	SourceDataLine soundLine;
+	/** Where the sound goes */
+	private PgbSoundOutput output = new PgbNullSoundOutput();
+
+	/** The changes of the frame being mixed, left and right,
+	 *  see SoundGenerator.  Reused every frame.
+	 */
+	private int[] deltas = new int[0];
+	/** The same as bytes for the output */
+	private byte[] out = new byte[0];
+	/** Samples per second times nanoseconds not yet mixed */
+	private long mixDebt;
 
 	SquareWaveGenerator channel1;
 	SquareWaveGenerator channel2;
@@ -54,61 +66,56 @@ class SoundChip {
 	/** Amount of sound data to buffer before playback */
 	int bufferLengthMsec = 200;
 
-	/** Initialize sound emulation, and allocate sound hardware */
+	/** Initialize sound emulation, without any sound output */
 	public SoundChip() {
-		soundLine = initSoundHardware();
 		channel1 = new SquareWaveGenerator(sampleRate);
 		channel2 = new SquareWaveGenerator(sampleRate);
 		channel3 = new VoluntaryWaveGenerator(sampleRate);
 		channel4 = new NoiseGenerator(sampleRate);
 	}
 
-	/** Initialize sound hardware if available */
-	public SourceDataLine initSoundHardware() {
-
-		try {
-			AudioFormat format =
-				new AudioFormat(
-					AudioFormat.Encoding.PCM_SIGNED,
-					sampleRate,
-					8,
-					2,
-					2,
-					sampleRate,
-					true);
-			DataLine.Info lineInfo =
-				new DataLine.Info(SourceDataLine.class, format);
-
-			if (!AudioSystem.isLineSupported(lineInfo)) {
-				System.out.println("Error: Can't find audio output system!");
-				soundEnabled = false;
-			} else {
-				SourceDataLine line =
-					(SourceDataLine) AudioSystem.getLine(lineInfo);
-
-				int bufferLength = (sampleRate / 1000) * bufferLengthMsec;
-				line.open(format, bufferLength);
-				line.start();
-				//    System.out.println("Initialized audio successfully.");
-				soundEnabled = true;
-				return line;
-			}
-		} catch (Exception e) {
-			System.out.println("Error: Audio system busy!");
-			soundEnabled = false;
-		}
+	/** Send the sound to output from now on, and close the
+	 *  one before
+	 */
+	public void setOutput(PgbSoundOutput output) {
+		close();
+		this.output = output;
+		soundEnabled = output.open(sampleRate, bufferLengthMsec);
+	}
+
+	/** Write the state of all four channels for a save state */
+	public void saveState(ByteBuffer buf) {
+		channel1.saveState(buf);
+		channel2.saveState(buf);
+		channel3.saveState(buf);
+		channel4.saveState(buf);
+	}
 
-		return null;
+	/** Read what saveState() wrote */
+	public void loadState(ByteBuffer buf) {
+		channel1.loadState(buf);
+		channel2.loadState(buf);
+		channel3.loadState(buf);
+		channel4.loadState(buf);
+		// so the frames after a state are always mixed the same
+		mixDebt = 0;
+	}
+
+	public int stateSize() {
+		return SquareWaveGenerator.STATE_SIZE * 2 + VoluntaryWaveGenerator.STATE_SIZE + NoiseGenerator.STATE_SIZE;
+	}
+
+	/** Stop playing and let go of the output */
+	public void close() {
+		output.close();
+		soundEnabled = false;
 	}
 
 	/** Change the sample rate of the playback */
 	public void setSampleRate(int sr) {
+		close();
 		sampleRate = sr;
-
-		soundLine.flush();
-		soundLine.close();
-
-		soundLine = initSoundHardware();
+		soundEnabled = output.open(sampleRate, bufferLengthMsec);
 
 		channel1.setSampleRate(sr);
 		channel2.setSampleRate(sr);
@@ -118,35 +125,69 @@ class SoundChip {
 
 	/** Change the sound buffer length */
 	public void setBufferLength(int time) {
+		close();
 		bufferLengthMsec = time;
-
-		soundLine.flush();
-		soundLine.close();
-
-		soundLine = initSoundHardware();
+		soundEnabled = output.open(sampleRate, bufferLengthMsec);
 	}
 
-	/** Adds a single frame of sound data to the buffer */
+	/** Mixes a single frame of sound data for the output.
+	 *  The channels are played even when the output doesn't
+	 *  want the sound, so their lengths and envelopes run out
+	 *  the same either way and a game can't tell.
+	 */
 	public void outputSound() {
+		// exactly as many samples as a frame lasts, over time
+		mixDebt += sampleRate * PgbHost.FRAME_NANOS;
+		int numSamples = (int) (mixDebt / 1000000000);
+		mixDebt -= numSamples * 1000000000L;
+
 		if (soundEnabled) {
-			int numSamples;
+			mix(numSamples);
+			output.write(out, numSamples * 4);
+		} else {
+			channel1.play(null, numSamples);
+			channel2.play(null, numSamples);
+			channel3.play(null, numSamples);
+			channel4.play(null, numSamples);
+		}
+	}
 
-			if (sampleRate / 28 >= soundLine.available() * 2) {
-				numSamples = soundLine.available() * 2;
-			} else {
-				numSamples = (sampleRate / 28) & 0xFFFE;
+	/** Mixes numSamples of all four channels into out, as
+	 *  16-bit little endian stereo.
+	 */
+	void mix(int numSamples) {
+		int length = numSamples * 2;
+		// and a sample for the last change to spill into
+		if (deltas.length < length + 2) {
+			deltas = new int[length + 2];
+			out = new byte[length * 2];
+		}
+		int[] d = deltas;
+		Arrays.fill(d, 0, length + 2, 0);
+		// a channel that is switched off still runs, unheard
+		channel1.play(channel1Enable ? d : null, numSamples);
+		channel2.play(channel2Enable ? d : null, numSamples);
+		channel3.play(channel3Enable ? d : null, numSamples);
+		channel4.play(channel4Enable ? d : null, numSamples);
+
+		byte[] b = out;
+		int left = 0;
+		int right = 0;
+		for (int i = 0; i < length; i += 2) {
+			left += d[i];
+			right += d[i + 1];
+			int l = left;
+			int r = right;
+			if (l != (short) l) {
+				l = l < 0 ? -32768 : 32767;
 			}
-
-			byte[] b = new byte[numSamples];
-			if (channel1Enable)
-				channel1.play(b, numSamples / 2, 0);
-			if (channel2Enable)
-				channel2.play(b, numSamples / 2, 0);
-			if (channel3Enable)
-				channel3.play(b, numSamples / 2, 0);
-			if (channel4Enable)
-				channel4.play(b, numSamples / 2, 0);
-			soundLine.write(b, 0, numSamples);
+			if (r != (short) r) {
+				r = r < 0 ? -32768 : 32767;
+			}
+			b[i * 2] = (byte) l;
+			b[i * 2 + 1] = (byte) (l >> 8);
+			b[i * 2 + 2] = (byte) r;
+			b[i * 2 + 3] = (byte) (r >> 8);
 		}
 	}
 
@@ -0,0 +1,148 @@
+package com.pixelutilitys.arcade.emulators.AEPgb;
+
+/** What the four channels have in common: each one plays a
+ *  table of levels over and over, one step of the table at a
+ *  time.
+ *
+ *  The position in the table is a phase accumulator, in steps
+ *  as 16.16 fixed point, that moves on by the same amount
+ *  every sample.  A channel doesn't write every sample, only
+ *  the changes: its level at the start of the frame, then
+ *  the difference at each step where the level changes.
+ *  SoundChip adds them up into the samples afterwards, once
+ *  for all four channels.
+ *
+ *  A change in the middle of a sample is split between that
+ *  sample and the next, so the sample gets the average level
+ *  over its time.  That keeps the edges from aliasing.  When
+ *  the steps are shorter than a sample, each sample gets the
+ *  average of the steps it covers instead, from the sums of
+ *  the table.
+ */
+abstract class SoundGenerator {
+	/** Where in the table the sound is, in steps, 16.16 fixed point */
+	int phase;
+
+	/** How far phase moves each sample, in steps, 16.16 fixed point */
+	int step = 1;
+
+	/** The levels of one period, each 0 to 15 */
+	byte[] levels;
+
+	/** sums[i] is the sum of the first i levels */
+	int[] sums;
+
+	/** Works out sums for levels, into a sums one longer */
+	static int[] sums(byte[] levels, int[] sums) {
+		for (int i = 0; i < levels.length; i++) {
+			sums[i + 1] = sums[i] + levels[i];
+		}
+		return sums;
+	}
+
+	/** Sets step to play the table clock / divider steps per
+	 *  second
+	 */
+	void setClock(long clock, int divider, int sampleRate) {
+		step = (int) Math.max(1, (clock << 16) / ((long) divider * sampleRate));
+	}
+
+	/** Moves on by length samples without playing them */
+	void skip(int length) {
+		long period = (long) levels.length << 16;
+		phase = (int) ((phase + (long) step * length) % period);
+	}
+
+	/** Adds the changes of length samples to deltas, left
+	 *  and right, on the sides channel asks for.  A level
+	 *  plays as level * scale + offset.  deltas has room for
+	 *  one sample more, where the last change may spill over.
+	 */
+	void synth(int[] deltas, int length, int channel, int scale, int offset) {
+		int leftMask = (channel & SquareWaveGenerator.CHAN_LEFT) != 0 ? -1 : 0;
+		int rightMask = (channel & SquareWaveGenerator.CHAN_RIGHT) != 0 ? -1 : 0;
+		int count = levels.length;
+		long period = (long) count << 16;
+		long pos = phase;
+		if (step >= 0x10000) {
+			synthAverages(deltas, length, leftMask, rightMask, scale, offset);
+			return;
+		}
+
+		int k = (int) (pos >>> 16);
+		int level = levels[k];
+		int val = level * scale + offset;
+		deltas[0] += val & leftMask;
+		deltas[1] += val & rightMask;
+
+		// samples a step lasts, and when the first one ends, 16.16
+		long stepTime = (1L << 32) / step;
+		long time = ((((long) (k + 1) << 16) - pos) * stepTime) >> 16;
+		long end = (long) length << 16;
+		while (time < end) {
+			if (++k == count) {
+				k = 0;
+			}
+			int next = levels[k];
+			if (next != level) {
+				int change = (next - level) * scale;
+				// the part of the sample after the change gets it now, the rest next sample
+				int late = (int) ((change * (time & 0xFFFF)) >> 16);
+				int i = (int) (time >>> 16) * 2;
+				deltas[i] += (change - late) & leftMask;
+				deltas[i + 1] += (change - late) & rightMask;
+				deltas[i + 2] += late & leftMask;
+				deltas[i + 3] += late & rightMask;
+				level = next;
+			}
+			time += stepTime;
+		}
+		phase = (int) ((pos + (long) step * length) % period);
+	}
+
+	/** synth() for a step shorter than a sample: each sample
+	 *  is the average of the levels it covers.
+	 */
+	private void synthAverages(int[] deltas, int length, int leftMask, int rightMask, int scale, int offset) {
+		long period = (long) levels.length << 16;
+		long total = (long) sums[levels.length] << 16;
+		// a sample covers some whole periods of the table and the rest of a period
+		long whole = step / period * total;
+		long rest = step % period;
+		// dividing by step, as a multiplication
+		long inverse = (1L << 32) / step;
+		long pos = phase;
+		long from = integral(pos, period);
+		int last = 0;
+		for (int i = 0, end = length * 2; i < end; i += 2) {
+			pos += rest;
+			long to = integral(pos, period);
+			// the average level, 16.16
+			long average = ((whole + to - from) * inverse) >> 16;
+			int val = (int) ((average * scale) >> 16) + offset;
+			deltas[i] += (val - last) & leftMask;
+			deltas[i + 1] += (val - last) & rightMask;
+			last = val;
+			if (pos >= period) {
+				pos -= period;
+				to -= total;
+			}
+			from = to;
+		}
+		phase = (int) pos;
+	}
+
+	/** The sum of the levels from the start of the table up to
+	 *  pos, which may be up to a period past the end, in 16.16
+	 *  fixed point.
+	 */
+	private long integral(long pos, long period) {
+		long sum = 0;
+		if (pos >= period) {
+			sum = sums[levels.length];
+			pos -= period;
+		}
+		int k = (int) (pos >>> 16);
+		return ((sum + sums[k]) << 16) + levels[k] * (pos & 0xFFFF);
+	}
+}
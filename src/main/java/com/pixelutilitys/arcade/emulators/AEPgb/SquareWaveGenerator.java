@@ -23,10 +23,15 @@ Place - Suite 330, Boston, MA 02111-1307, USA.
 
 */
 
+import java.nio.ByteBuffer;
+
 /** This class can mix a square wave signal with a sound buffer.
  *  It supports all features of the Gameboys sound channels 1 and 2.
+ *
+ *  The wave is eight steps long, the duty cycle picks which of
+ *  them are high, see DUTY.
  */
-class SquareWaveGenerator {
+class SquareWaveGenerator extends SoundGenerator {
 	/** Sound is to be played on the left channel of a stereo sound */
 	public static final int CHAN_LEFT = 1;
 
@@ -36,14 +41,23 @@ class SquareWaveGenerator {
 	/** Sound is to be played back in mono */
 	public static final int CHAN_MONO = 4;
 
-	/** Length of the sound (in frames) */
-	int totalLength;
+	/** The eight steps of the wave for each duty cycle, low
+	 *  before the duty cycle and high from it on.
+	 */
+	static final byte[][] DUTY = new byte[8][8];
+	static final int[][] DUTY_SUMS = new int[8][];
 
-	/** Current position in the waveform (in samples) */
-	int cyclePos;
+	static {
+		for (int duty = 0; duty < 8; duty++) {
+			for (int i = duty; i < 8; i++) {
+				DUTY[duty][i] = 1;
+			}
+			DUTY_SUMS[duty] = sums(DUTY[duty], new int[9]);
+		}
+	}
 
-	/** Length of the waveform (in samples) */
-	int cycleLength;
+	/** Length of the sound (in frames) */
+	int totalLength;
 
 	/** Amplitude of the waveform */
 	int amplitude;
@@ -84,78 +98,91 @@ class SquareWaveGenerator {
 	/** Current position in the sweep */
 	int counterSweep;
 
-	/** Create a square wave generator with the supplied parameters */
-	public SquareWaveGenerator(
-		int waveLength,
-		int ampl,
-		int duty,
-		int chan,
-		int rate) {
-		cycleLength = waveLength;
-		amplitude = ampl;
-		cyclePos = 0;
-		dutyCycle = duty;
-		channel = chan;
-		sampleRate = rate;
-	}
-
 	/** Create a square wave generator at the specified sample rate */
 	public SquareWaveGenerator(int rate) {
-		dutyCycle = 4;
-		cyclePos = 0;
 		channel = CHAN_LEFT | CHAN_RIGHT;
-		cycleLength = 2;
 		totalLength = 0;
 		sampleRate = rate;
 		amplitude = 32;
 		counterSweep = 0;
+		setDuty(4);
+		setFrequency(0);
+	}
+
+	/** Write the channel's state for a save state.  The sample rate belongs to the host and is left out */
+	public void saveState(ByteBuffer buf) {
+		buf.putInt(totalLength).putInt(phase).putInt(amplitude);
+		buf.putInt(dutyCycle).putInt(channel).putInt(initialEnvelope).putInt(numStepsEnvelope);
+		buf.putInt(counterEnvelope).putInt(gbFrequency).putInt(timeSweep).putInt(numSweep);
+		buf.putInt(counterSweep);
+		buf.put((byte) ((increaseEnvelope ? 1 : 0) | (decreaseSweep ? 2 : 0)));
+	}
+
+	/** Read what saveState() wrote */
+	public void loadState(ByteBuffer buf) {
+		totalLength = buf.getInt();
+		phase = buf.getInt();
+		amplitude = buf.getInt();
+		setDuty(buf.getInt());
+		channel = buf.getInt();
+		initialEnvelope = buf.getInt();
+		numStepsEnvelope = buf.getInt();
+		counterEnvelope = buf.getInt();
+		gbFrequency = buf.getInt();
+		timeSweep = buf.getInt();
+		numSweep = buf.getInt();
+		counterSweep = buf.getInt();
+		int flags = buf.get();
+		increaseEnvelope = (flags & 1) != 0;
+		decreaseSweep = (flags & 2) != 0;
+		setFrequency(gbFrequency);
 	}
 
+	static final int STATE_SIZE = 12 * 4 + 1;
+
 	/** Set the sound buffer sample rate */
 	public void setSampleRate(int sr) {
 		sampleRate = sr;
+		setFrequency(gbFrequency);
 	}
 
 	/** Set the duty cycle */
 	public void setDutyCycle(int duty) {
 		switch (duty) {
 			case 0 :
-				dutyCycle = 1;
+				setDuty(1);
 				break;
 			case 1 :
-				dutyCycle = 2;
+				setDuty(2);
 				break;
 			case 2 :
-				dutyCycle = 4;
+				setDuty(4);
 				break;
 			case 3 :
-				dutyCycle = 6;
+				setDuty(6);
 				break;
 		}
 		//  System.out.println(dutyCycle);
 	}
 
+	/** Set the duty cycle in eighths */
+	private void setDuty(int eighths) {
+		dutyCycle = eighths & 7;
+		levels = DUTY[dutyCycle];
+		sums = DUTY_SUMS[dutyCycle];
+	}
+
 	/** Set the sound frequency, in internal GB format */
 	public void setFrequency(int gbFrequency) {
-		try {
-			float frequency = 131072 / 2048;
-
-			if (gbFrequency != 2048) {
-				frequency = ((float) 131072 / (float) (2048 - gbFrequency));
-			}
-			//  System.out.println("gbFrequency: " + gbFrequency + "");
-			this.gbFrequency = gbFrequency;
-			if (frequency != 0) {
-				cycleLength = (256 * sampleRate) / (int) frequency;
-			} else {
-				cycleLength = 65535;
-			}
-			if (cycleLength == 0)
-				cycleLength = 1;
-			//  System.out.println("Cycle length : " + cycleLength + " samples");
-		} catch (ArithmeticException e) {
-			// Skip ip
+		int divider = 2048 - gbFrequency;
+		// a sweep can run off the top, which plays as the lowest note
+		if (divider <= 0) {
+			divider = 2048;
 		}
+		//  System.out.println("gbFrequency: " + gbFrequency + "");
+		this.gbFrequency = gbFrequency;
+		// 131072 / divider waves a second, eight steps each
+		setClock(1048576, divider, sampleRate);
 	}
 
 	/** Set the channel for playback */
@@ -218,10 +245,11 @@ class SquareWaveGenerator {
 		//  System.out.println("A:"+volume);
 	}
 
-	/** Output a frame of sound data into the buffer using the supplied frame length and array offset. */
-	public void play(byte[] b, int length, int offset) {
-		int val = 0;
-
+	/** Output a frame of sound data, length samples of it, as
+	 *  changes into deltas, see SoundGenerator.  With no deltas
+	 *  the channel runs as usual but nothing is played.
+	 */
+	public void play(int[] deltas, int length) {
 		if (totalLength != 0) {
 			totalLength--;
 
@@ -250,32 +278,11 @@ class SquareWaveGenerator {
 					}
 				}
 			}
-			for (int r = offset; r < offset + length; r++) {
-
-				if (cycleLength != 0) {
-					if (((8 * cyclePos) / cycleLength) >= dutyCycle) {
-						val = amplitude;
-					} else {
-						val = -amplitude;
-					}
-				}
-
-				/*    if (cyclePos >= (cycleLength / 2)) {
-				     val = amplitude;
-				    } else {
-				     val = -amplitude;
-				    }*/
-
-				if ((channel & CHAN_LEFT) != 0)
-					b[r * 2] += val;
-				if ((channel & CHAN_RIGHT) != 0)
-					b[r * 2 + 1] += val;
-				if ((channel & CHAN_MONO) != 0)
-					b[r] += val;
-
-				//   System.out.print(val + " ");
-
-				cyclePos = (cyclePos + 256) % cycleLength;
+			if (deltas != null) {
+				// low is -amplitude, high is amplitude
+				synth(deltas, length, channel, amplitude * 512, amplitude * -256);
+			} else {
+				skip(length);
 			}
 		}
 	}
@@ -23,15 +23,15 @@ Place - Suite 330, Boston, MA 02111-1307, USA.
 
 */
 
-@SuppressWarnings("SameParameterValue")
-class VoluntaryWaveGenerator {
+import java.nio.ByteBuffer;
+
+class VoluntaryWaveGenerator extends SoundGenerator {
 	public static final int CHAN_LEFT = 1;
 	public static final int CHAN_RIGHT = 2;
 	public static final int CHAN_MONO = 4;
 
 	int totalLength;
-	int cyclePos;
-	int cycleLength;
+	int gbFrequency;
 	int amplitude;
 	int channel;
 	int sampleRate;
@@ -39,40 +39,49 @@ class VoluntaryWaveGenerator {
 
 	byte[] waveform = new byte[32];
 
-	public VoluntaryWaveGenerator(
-		int waveLength,
-		int ampl,
-		int duty,
-		int chan,
-		int rate) {
-		cycleLength = waveLength;
-		amplitude = ampl;
-		cyclePos = 0;
-		channel = chan;
-		sampleRate = rate;
-	}
+	/** levels needs working out again from the waveform */
+	private boolean levelsChanged = true;
 
 	public VoluntaryWaveGenerator(int rate) {
-		cyclePos = 0;
 		channel = CHAN_LEFT | CHAN_RIGHT;
-		cycleLength = 2;
 		totalLength = 0;
 		sampleRate = rate;
 		amplitude = 32;
+		levels = new byte[32];
+		sums = new int[33];
+		setFrequency(0);
 	}
 
+	public void saveState(ByteBuffer buf) {
+		buf.putInt(totalLength).putInt(phase).putInt(gbFrequency).putInt(amplitude);
+		buf.putInt(channel).putInt(volumeShift);
+		buf.put(waveform);
+	}
+
+	public void loadState(ByteBuffer buf) {
+		totalLength = buf.getInt();
+		phase = buf.getInt();
+		gbFrequency = buf.getInt();
+		amplitude = buf.getInt();
+		channel = buf.getInt();
+		volumeShift = buf.getInt();
+		buf.get(waveform);
+		setFrequency(gbFrequency);
+		levelsChanged = true;
+	}
+
+	static final int STATE_SIZE = 6 * 4 + 32;
+
 	public void setSampleRate(int sr) {
 		sampleRate = sr;
+		setFrequency(gbFrequency);
 	}
 
 	public void setFrequency(int gbFrequency) {
-		//  cyclePos = 0;
-		float frequency = (int) ((float) 65536 / (float) (2048 - gbFrequency));
 		//  System.out.println("gbFrequency: " + gbFrequency + "");
-		cycleLength = (int) (256f * sampleRate / frequency);
-		if (cycleLength == 0)
-			cycleLength = 1;
-		//  System.out.println("Cycle length : " + cycleLength + " samples");
+		this.gbFrequency = gbFrequency;
+		// 65536 / (2048 - gbFrequency) waves a second, 32 steps each
+		setClock(2097152, 2048 - gbFrequency, sampleRate);
 	}
 
 	public void setChannel(int chan) {
@@ -94,6 +103,7 @@ class VoluntaryWaveGenerator {
 	public void setSamplePair(int address, int value) {
 		waveform[address * 2] = (byte) ((value & 0xF0) >> 4);
 		waveform[address * 2 + 1] = (byte) ((value & 0x0F));
+		levelsChanged = true;
 	}
 
 	public void setVolume(int volume) {
@@ -111,33 +121,29 @@ class VoluntaryWaveGenerator {
 				volumeShift = 2;
 				break;
 		}
+		levelsChanged = true;
 		//  System.out.println("A:"+volume);
 	}
 
-	public void play(byte[] b, int length, int offset) {
-		int val;
-
+	/** Output a frame of sound data, length samples of it, as
+	 *  changes into deltas, see SoundGenerator.  With no deltas
+	 *  the channel runs as usual but nothing is played.
+	 */
+	public void play(int[] deltas, int length) {
 		if (totalLength != 0) {
 			totalLength--;
 
-			for (int r = offset; r < offset + length; r++) {
-
-				int samplePos = (31 * cyclePos) / cycleLength;
-				val =
-					((waveform[samplePos & 31]) & 0xff)
-						>> volumeShift
-						<< 1;
-				//    System.out.print(" " + val);
-
-				if ((channel & CHAN_LEFT) != 0)
-					b[r * 2] += val;
-				if ((channel & CHAN_RIGHT) != 0)
-					b[r * 2 + 1] += val;
-				if ((channel & CHAN_MONO) != 0)
-					b[r] += val;
-
-				//   System.out.print(val + " ");
-				cyclePos = (cyclePos + 256) % cycleLength;
+			if (deltas != null) {
+				if (levelsChanged) {
+					for (int i = 0; i < 32; i++) {
+						levels[i] = (byte) (waveform[i] >> volumeShift);
+					}
+					sums(levels, sums);
+					levelsChanged = false;
+				}
+				synth(deltas, length, channel, 512, 0);
+			} else {
+				skip(length);
 			}
 		}
 	}
@@ -0,0 +1,16 @@
+package com.pixelutilitys.arcade.interfaces;
+
+/**
+ * A game that reads the keyboard itself instead of the {@link IArcadeGame.KEY}s passed to
+ * {@link IArcadeGame#doGameTick(java.util.List)}, like one that needs every key for typing.<br>
+ * Games tick at a fixed rate, not once per drawn frame, so polling the keyboard in the tick would miss a key tapped
+ * between two ticks. The arcade calls {@link #pollInput()} on every drawn frame instead, and the game should only
+ * remember what it saw there and act on it in its next tick.
+ */
+public interface IArcadeInput {
+
+    /**
+     * Called once per drawn frame, before any ticks that are due.
+     */
+    public void pollInput();
+}
@@ -0,0 +1,38 @@
+package com.pixelutilitys.arcade.interfaces;
+
+import java.nio.IntBuffer;
+
+/**
+ * A game that can hand its picture over as raw pixels instead of as a BufferedImage, so the arcade can put it
+ * straight into a texture.<br>
+ * Games that only have the BufferedImage from {@link IArcadeGame#renderGraphics()} still work, the arcade wraps them
+ * in an adapter.
+ */
+public interface IArcadeScreen {
+
+    /**
+     * @return The width of the picture in pixels.
+     */
+    public int getScreenWidth();
+
+    /**
+     * @return The height of the picture in pixels.
+     */
+    public int getScreenHeight();
+
+    /**
+     * A number that changes every time the picture does. The arcade asks for this once per rendered frame and only
+     * calls {@link #renderPixels(IntBuffer)} when it is different from last time.
+     *
+     * @return The version of the current picture.
+     */
+    public long getFrameVersion();
+
+    /**
+     * Writes the current picture into the given buffer, width * height ARGB pixels, row by row from the top, starting
+     * at the buffer's current position.
+     *
+     * @param pixels Buffer provided by the arcade, with room for at least width * height pixels.
+     */
+    public void renderPixels(IntBuffer pixels);
+}
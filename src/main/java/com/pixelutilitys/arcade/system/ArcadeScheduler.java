@@ -0,0 +1,109 @@
+package com.pixelutilitys.arcade.system;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+
+import com.pixelutilitys.arcade.interfaces.IArcadeGame;
+import com.pixelutilitys.arcade.interfaces.IArcadeGame.KEY;
+import com.pixelutilitys.arcade.interfaces.IArcadeInput;
+import com.pixelutilitys.arcade.interfaces.IArcadeScreen;
+
+/**
+ * Ticks an {@link IArcadeGame} at a fixed rate on its own clock, no matter how often the screen showing it is drawn.<br>
+ * The screen calls {@link #update(long)} once per drawn frame and the scheduler runs however many ticks are due, which
+ * is usually none or one. A screen drawn faster than the tick rate just shows the last picture again, one drawn slower
+ * gets several ticks back to back, up to {@link #MAX_CATCHUP}. Past that the missed ticks are dropped.<br>
+ * <br>
+ * Input is batched: every key seen down by {@link #addInput(Collection)} since the last tick is passed to the next one,
+ * so a key tapped between two ticks is not lost. Games that read the keyboard themselves implement
+ * {@link IArcadeInput} and get to poll it on every frame the same way.
+ */
+public class ArcadeScheduler {
+
+	public static final int TICKS_PER_SECOND = 60;
+	public static final int MAX_CATCHUP = 5;
+
+	private final IArcadeGame game;
+	private final IArcadeScreen screen;
+	private final long tickNanos;
+	private long nextTick;
+	private boolean started;
+
+	private final EnumSet<KEY> pending = EnumSet.noneOf(KEY.class);
+	private final List<KEY> input = new ArrayList<>(KEY.values().length);
+
+	public long ticks;
+	public long ticksDropped;
+
+	public ArcadeScheduler(IArcadeGame game) {
+		this(game, TICKS_PER_SECOND);
+	}
+
+	public ArcadeScheduler(IArcadeGame game, int ticksPerSecond) {
+		this.game = game;
+		this.screen = game instanceof IArcadeScreen ? (IArcadeScreen) game : new ArcadeScreenAdapter(game);
+		this.tickNanos = 1000000000L / ticksPerSecond;
+	}
+
+	/**
+	 * The game's screen, either the game itself or an adapter that only redraws it after a tick.
+	 */
+	public IArcadeScreen getScreen() {
+		return screen;
+	}
+
+	/**
+	 * Adds keys that are down right now to the input for the next tick.
+	 */
+	public void addInput(Collection<KEY> keys) {
+		pending.addAll(keys);
+	}
+
+	/**
+	 * Polls the game's own input, if it has any, then runs the ticks that are due by now, a time from
+	 * {@link System#nanoTime()}.
+	 *
+	 * @return how many ticks ran
+	 */
+	public int update(long now) {
+		if (game instanceof IArcadeInput) {
+			((IArcadeInput) game).pollInput();
+		}
+		if (!started) {
+			nextTick = now;
+			started = true;
+		}
+		int ran = 0;
+		while (now - nextTick >= 0) {
+			if (ran == MAX_CATCHUP) {
+				// too far behind, start again from now
+				ticksDropped += (now - nextTick) / tickNanos + 1;
+				nextTick = now + tickNanos;
+				break;
+			}
+			input.clear();
+			input.addAll(pending);
+			game.doGameTick(input);
+			ticks++;
+			ran++;
+			nextTick += tickNanos;
+		}
+		if (ran > 0) {
+			pending.clear();
+			if (screen instanceof ArcadeScreenAdapter) {
+				((ArcadeScreenAdapter) screen).invalidate();
+			}
+		}
+		return ran;
+	}
+
+	/**
+	 * Forgets the clock and any pending input, for when the game was not shown for a while.
+	 */
+	public void reset() {
+		started = false;
+		pending.clear();
+	}
+}
@@ -0,0 +1,77 @@
+package com.pixelutilitys.arcade.system;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+
+import com.pixelutilitys.arcade.interfaces.IArcadeGame;
+import com.pixelutilitys.arcade.interfaces.IArcadeScreen;
+
+/**
+ * Lets a game that only implements {@link IArcadeGame#renderGraphics()} be shown as an {@link IArcadeScreen}.<br>
+ * There is no telling whether such a game changed its picture, so every frame after a game tick counts as a new one.
+ * Call {@link #invalidate()} after each tick; until then the last picture is kept.
+ */
+public class ArcadeScreenAdapter implements IArcadeScreen {
+
+	private final IArcadeGame game;
+	private BufferedImage image;
+	private long version;
+	private boolean dirty = true;
+
+	public ArcadeScreenAdapter(IArcadeGame game) {
+		this.game = game;
+	}
+
+	@Override
+	public int getScreenWidth() {
+		return image == null ? 0 : image.getWidth();
+	}
+
+	@Override
+	public int getScreenHeight() {
+		return image == null ? 0 : image.getHeight();
+	}
+
+	@Override
+	public long getFrameVersion() {
+		if (dirty || image == null) {
+			image = game.renderGraphics();
+			dirty = false;
+			version++;
+		}
+		return version;
+	}
+
+	/**
+	 * The game has ticked, so its picture may have changed.
+	 */
+	public void invalidate() {
+		dirty = true;
+	}
+
+	@Override
+	public void renderPixels(IntBuffer pixels) {
+		if (image != null) {
+			copy(image, pixels);
+		}
+	}
+
+	/**
+	 * Writes the pixels of an image into a buffer, as ARGB ints. ARGB images are copied straight from their raster.
+	 */
+	public static void copy(BufferedImage image, IntBuffer pixels) {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+			pixels.put(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, w * h);
+		}
+		else {
+			int[] row = new int[w];
+			for (int y = 0; y < h; y++) {
+				image.getRGB(0, y, w, 1, row, 0, w);
+				pixels.put(row);
+			}
+		}
+	}
+}
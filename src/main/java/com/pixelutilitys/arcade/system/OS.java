@@ -9,6 +9,7 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -16,7 +17,9 @@ import java.util.List;
 import java.util.Map;
 
 import com.pixelutilitys.arcade.interfaces.IArcadeGame;
+import com.pixelutilitys.arcade.interfaces.IArcadeInput;
 import com.pixelutilitys.arcade.interfaces.IArcadeMachine;
+import com.pixelutilitys.arcade.interfaces.IArcadeScreen;
 
 import org.lwjgl.input.Keyboard;
 
@@ -24,7 +27,7 @@ import com.pixelutilitys.arcade.system.programs.*;
 import com.pixelutilitys.arcade.system.programs.gb.*;
 
 
-public class OS implements IArcadeGame {
+public class OS implements IArcadeGame, IArcadeScreen, IArcadeInput {
 
 	public final int resX = 256;
 	public final int resY = 224;
@@ -37,11 +40,20 @@ public class OS implements IArcadeGame {
 	public String currentPlayer = null;
 	public boolean imageDirty = false;
 	public HashMap<Integer, Boolean> pressedKeys = new HashMap<>();
+	// key changes polled since the last tick, in order: the key when it went down, ~key when it came up
+	private final List<Integer> keyEvents = new ArrayList<>();
 	private IProgram currentProgram;
 	private int currentSelection = 0;
 	public List<IProgram> programs = new ArrayList<>();
 	public Map<String, List<Integer>> keys = new HashMap<>();
 
+	// what the last frame version was taken from, to tell when the picture changed
+	private Object frameSource;
+	private long sourceVersion;
+	private long frameVersion;
+	private BufferedImage frameImage;
+	private boolean ticked;
+
 	@Override
 	public void initialize() {
 		unload();
@@ -59,6 +71,8 @@ public class OS implements IArcadeGame {
 
 	public void unloadProgram() {
 		currentProgram = null;
+		frameImage = null;
+		imageDirty = true;
 	}
 
 	private Color osBackground = null;
@@ -91,7 +105,7 @@ public class OS implements IArcadeGame {
 		if (currentProgram != null) {
 			return currentProgram.getImage();
 		}
-		//	if (gameIcon == null || imageDirty)
+		if (gameIcon == null || imageDirty)
 		{
 			gameIcon = new BufferedImage(resX, 224, BufferedImage.TYPE_INT_ARGB);
 			Graphics2D g = (Graphics2D)gameIcon.getGraphics();
@@ -184,33 +198,46 @@ public class OS implements IArcadeGame {
 		}
 	}
 
+	/**
+	 * Polls the registered keys on every drawn frame and keeps what changed for the next tick, so a tap shorter than
+	 * a tick still gets through.
+	 */
 	@Override
-	public void doGameTick(List<KEY> input) {
-			List<List<Integer>> keysets = new ArrayList<>(keys.values());
-        for (List<Integer> keyset : keysets) {
-            for (Integer aKeyset : keyset) {
-                int key = aKeyset;
-                if (Keyboard.isKeyDown(key)) {
-                    if (pressedKeys.containsKey(key)) {
-                        if (pressedKeys.get(key)) {
-                            continue;
-                        }
-                    }
-                    onKeyDown(key);
-                    pressedKeys.put(key, true);
-                }
-            }
-        }
-        java.util.Set<Integer> var = pressedKeys.keySet();
-        Integer[] downkeys = var.toArray(new Integer[var.size()]);
-
-        for (Integer downkey : downkeys) {
-            if (!Keyboard.isKeyDown(downkey)) {
-                pressedKeys.put(downkey, false);
-                onKeyUp(downkey);
-            }
-        }
+	public void pollInput() {
+		for (List<Integer> keyset : keys.values()) {
+			for (Integer key : keyset) {
+				if (Keyboard.isKeyDown(key) && !Boolean.TRUE.equals(pressedKeys.get(key))) {
+					pressedKeys.put(key, true);
+					keyEvents.add(key);
+				}
+			}
+		}
+		for (Map.Entry<Integer, Boolean> pressed : pressedKeys.entrySet()) {
+			if (pressed.getValue() && !Keyboard.isKeyDown(pressed.getKey())) {
+				pressed.setValue(false);
+				keyEvents.add(~pressed.getKey());
+			}
+		}
+	}
 
+	/**
+	 * Hands the key changes polled since the last tick to the menu or the program. The {@link KEY}s are not used, the
+	 * programs want the whole keyboard.
+	 */
+	@Override
+	public void doGameTick(List<KEY> input) {
+		// the handlers may register keys or load programs, which don't see these events
+		Integer[] events = keyEvents.toArray(new Integer[keyEvents.size()]);
+		keyEvents.clear();
+		for (int event : events) {
+			if (event >= 0) {
+				onKeyDown(event);
+			}
+			else {
+				onKeyUp(~event);
+			}
+		}
+		ticked = true;
 	}
 
 
@@ -219,8 +246,63 @@ public class OS implements IArcadeGame {
 		return getImage();
 	}
 
+	@Override
+	public int getScreenWidth() {
+		if (currentProgram instanceof IArcadeScreen) {
+			return ((IArcadeScreen) currentProgram).getScreenWidth();
+		}
+		return resX;
+	}
+
+	@Override
+	public int getScreenHeight() {
+		if (currentProgram instanceof IArcadeScreen) {
+			return ((IArcadeScreen) currentProgram).getScreenHeight();
+		}
+		return resY;
+	}
+
+	/**
+	 * Programs with their own screen report their own version. For the others, and the menu, a new image means a
+	 * new picture, since they only redraw when dirty. Nothing changes between ticks, so the image is only asked for
+	 * again after one.
+	 */
+	@Override
+	public long getFrameVersion() {
+		Object source;
+		long version = 0;
+		if (currentProgram instanceof IArcadeScreen) {
+			source = currentProgram;
+			version = ((IArcadeScreen) currentProgram).getFrameVersion();
+		}
+		else {
+			if (ticked || frameImage == null) {
+				frameImage = getImage();
+				ticked = false;
+			}
+			source = frameImage;
+		}
+		if (source != frameSource || version != sourceVersion) {
+			frameSource = source;
+			sourceVersion = version;
+			frameVersion++;
+		}
+		return frameVersion;
+	}
+
+	@Override
+	public void renderPixels(IntBuffer pixels) {
+		if (currentProgram instanceof IArcadeScreen) {
+			((IArcadeScreen) currentProgram).renderPixels(pixels);
+		}
+		else {
+			ArcadeScreenAdapter.copy(frameImage != null ? frameImage : getImage(), pixels);
+		}
+	}
+
 	public void loadProgram(IProgram p) {
 		currentProgram = p;
+		frameImage = null;
 		currentProgram.load();
 		currentProgram.initialize();
 	}
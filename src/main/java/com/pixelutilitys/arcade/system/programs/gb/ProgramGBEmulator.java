@@ -9,19 +9,30 @@ import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.HashMap;
+import java.util.Map;
 
 import com.pixelutilitys.arcade.emulators.AEPgb.*;
+import com.pixelutilitys.arcade.interfaces.IArcadeScreen;
+import com.pixelutilitys.arcade.system.ArcadeScreenAdapter;
 import com.pixelutilitys.arcade.system.OS;
 import com.pixelutilitys.arcade.system.programs.IProgram;
 
 import org.lwjgl.input.Keyboard;
 
 
-public class ProgramGBEmulator implements IProgram {
+public class ProgramGBEmulator implements IProgram, IArcadeScreen {
 
 	public BufferedImage gameIcon;
 	public BufferedImage gameboyOutput = null;
+	public long gameboyFrame = 0;
+	// for getFrameVersion(), which covers both the title screen and the game
+	private long screenVersion = 0;
+	private long screenFrame = -1;
+	private BufferedImage screenIcon;
 	public String gameboyRom;
 	public AEPgb gameboy;
 	public boolean gameboyStarted = false;
@@ -29,6 +40,8 @@ public class ProgramGBEmulator implements IProgram {
 	public int loadDelay = 0;//20
 	public String romTitle;
 	public OS os;
+	// the state each rom was left in, so walking back to the cabinet resumes the game where it was
+	private static final Map<String, ByteBuffer> resumeStates = new HashMap<>();
 	public int[] keyCodes = { Keyboard.KEY_UP, Keyboard.KEY_DOWN, Keyboard.KEY_LEFT, Keyboard.KEY_RIGHT, Keyboard.KEY_Z, Keyboard.KEY_X, Keyboard.KEY_RETURN, Keyboard.KEY_RSHIFT};
 
 
@@ -51,6 +64,7 @@ public class ProgramGBEmulator implements IProgram {
 
 		getOS().registerKey(this, Keyboard.KEY_BACK);
 		getOS().registerKey(this, Keyboard.KEY_W);
+		getOS().registerKey(this, Keyboard.KEY_R);
 	}
 
 	@Override
@@ -62,7 +76,12 @@ public class ProgramGBEmulator implements IProgram {
 	public BufferedImage getImage() {
 
 		if (gameboy != null && gameboyStarted) {
-            return gameboy.vidout.tempGraphics;
+            PgbFrameOutput.Frame frame = ((PgbFrameOutput) gameboy.vidout).getFrame();
+            if (frame.number != gameboyFrame) {
+                scaleFrame(frame.pixels);
+                gameboyFrame = frame.number;
+            }
+            return gameboyOutput;
         }
 		if (gameIcon == null || getOS().imageDirty)
 		{
@@ -86,8 +105,8 @@ public class ProgramGBEmulator implements IProgram {
 					"Z      -  B",
 					"Enter  -  Start",
 					"Shift  -  Select",
+					"R      -  Rewind",
 					"Back   -  Quit Rom",
-					"",
 					"Press 'ENTER' to load",
 			"Press  'BACK' to quit" };
 			for (int i = 0; i < output.length; i++) {
@@ -97,6 +116,67 @@ public class ProgramGBEmulator implements IProgram {
 		return gameIcon;
 	}
 
+	private boolean running() {
+		return gameboy != null && gameboyStarted && gameboy.vidout instanceof PgbFrameOutput;
+	}
+
+	@Override
+	public int getScreenWidth() {
+		return running() ? PgbFrameOutput.WIDTH : getOS().resX;
+	}
+
+	@Override
+	public int getScreenHeight() {
+		return running() ? PgbFrameOutput.HEIGHT : getOS().resY;
+	}
+
+	@Override
+	public long getFrameVersion() {
+		if (running()) {
+			long number = ((PgbFrameOutput) gameboy.vidout).getFrame().number;
+			if (number != screenFrame) {
+				screenFrame = number;
+				screenVersion++;
+			}
+		}
+		else {
+			BufferedImage icon = getImage();
+			if (icon != screenIcon) {
+				screenIcon = icon;
+				screenVersion++;
+			}
+			screenFrame = -1;
+		}
+		return screenVersion;
+	}
+
+	/**
+	 * While a game runs, the frame goes into the buffer in one bulk copy, unscaled.
+	 */
+	@Override
+	public void renderPixels(IntBuffer pixels) {
+		if (running()) {
+			pixels.put(((PgbFrameOutput) gameboy.vidout).getFrame().pixels);
+		}
+		else {
+			ArcadeScreenAdapter.copy(getImage(), pixels);
+		}
+	}
+
+	/**
+	 * Stretches a finished gameboy frame over the 256x256 output
+	 * image, straight into its pixels.
+	 */
+	private void scaleFrame(int[] pixels) {
+		int[] out = ((DataBufferInt) gameboyOutput.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < 256; y++) {
+			int row = y * PgbFrameOutput.HEIGHT / 256 * PgbFrameOutput.WIDTH;
+			for (int x = 0; x < 256; x++) {
+				out[y * 256 + x] = pixels[row + x * PgbFrameOutput.WIDTH / 256];
+			}
+		}
+	}
+
 	@Override
 	public void initialize() {
 
@@ -106,10 +186,22 @@ public class ProgramGBEmulator implements IProgram {
         System.out.println("loadRom()");
 
 		gameboy = new AEPgb();
+        gameboy.headless = true;
+        gameboyOutput = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        gameboyFrame = 0;
         gameboy.curfile = gameboyRom;
         gameboy.go();
         gameboy.frame.setVisible(false);
 
+        ByteBuffer state;
+        synchronized (resumeStates) {
+            state = resumeStates.get(gameboyRom);
+        }
+        if (state != null) {
+            state.rewind();
+            gameboy.loadState(state);
+        }
+
         gameboyStarted = true;
 
 	}
@@ -118,6 +210,12 @@ public class ProgramGBEmulator implements IProgram {
 	public void unload() {
         System.out.println("unload");
         if(gameboy != null) {
+            if (gameboy.cart.loaded()) {
+                ByteBuffer state = gameboy.saveState();
+                synchronized (resumeStates) {
+                    resumeStates.put(gameboyRom, state);
+                }
+            }
             gameboy.shutdown();
             gameboy = null;
         }
@@ -133,7 +231,10 @@ public class ProgramGBEmulator implements IProgram {
 	@Override
 	public void onKeyUp(int key) {
 		if(gameboyStarted){
-			if (key == keyCodes[0]) {
+			if (key == Keyboard.KEY_R) {
+				gameboy.rewinding = false;
+			}
+			else if (key == keyCodes[0]) {
                 gameboy.joy.c_up = false;
 			}
 			else if (key == keyCodes[1]) {
@@ -181,7 +282,10 @@ public class ProgramGBEmulator implements IProgram {
 				unload();
 			}
 
-			if (key == keyCodes[0]) {
+			if (key == Keyboard.KEY_R) {
+				gameboy.rewinding = true;
+			}
+			else if (key == keyCodes[0]) {
                 gameboy.joy.c_up = true;
 			}
 			else if (key == keyCodes[1]) {
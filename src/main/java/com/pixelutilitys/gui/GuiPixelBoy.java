@@ -1,14 +1,18 @@
 package com.pixelutilitys.gui;
 
 import com.pixelutilitys.arcade.interfaces.IArcadeGame;
+import com.pixelutilitys.arcade.interfaces.IArcadeScreen;
+import com.pixelutilitys.arcade.system.ArcadeScheduler;
 import com.pixelutilitys.arcade.system.OS;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiScreen;
-import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.client.renderer.Tessellator;
+import org.lwjgl.BufferUtils;
 
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.EXTFramebufferObject.*;
+import static org.lwjgl.opengl.GL12.*;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,8 +29,16 @@ public class GuiPixelBoy extends GuiScreen {
     private int offsetX;
     private int offsetY;
     private IArcadeGame game;
+    private IArcadeScreen screen;
+    private ArcadeScheduler scheduler;
     private final List<KEY> keysPressedDown = new ArrayList<>(12);
-    DynamicTexture texture;
+
+    // one texture for as long as the screen is open, refilled when the game has a new frame
+    private int textureId = -1;
+    private int textureWidth;
+    private int textureHeight;
+    private long textureVersion;
+    private IntBuffer pixelBuffer;
 
     @Override
     public void initGui()
@@ -40,6 +52,7 @@ public class GuiPixelBoy extends GuiScreen {
     {
         if(game != null)
             game.unload();
+        deleteTexture();
     }
 
 
@@ -69,27 +82,80 @@ public class GuiPixelBoy extends GuiScreen {
         }
 
 
-        // let the game tick
-        game.doGameTick(keysPressedDown);
+        // the game ticks on its own clock, this frame may run none or several ticks
+        scheduler.addInput(keysPressedDown);
+        scheduler.update(System.nanoTime());
 
-        if(game.renderGraphics() == null)
+        // asking for the version first lets the game settle on its size
+        long version = screen.getFrameVersion();
+        int w = screen.getScreenWidth();
+        int h = screen.getScreenHeight();
+        if(w <= 0 || h <= 0)
             return;
 
-        texture = new DynamicTexture(game.renderGraphics());
-        glBindTexture(GL_TEXTURE_2D, texture.getGlTextureId());
+        if(textureId == -1 || w != textureWidth || h != textureHeight)
+        {
+            createTexture(w, h);
+            uploadFrame(version);
+        }
+        else if(version != textureVersion)
+        {
+            uploadFrame(version);
+        }
 
-        glGenerateMipmapEXT(GL_TEXTURE_2D);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        // fit the picture to the 256 pixel wide screen
+        int drawHeight = 256 * h / w;
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glColor4f(1.0F, 1.0F, 1.0F, 1.0F);
+        Tessellator tessellator = Tessellator.instance;
+        tessellator.startDrawingQuads();
+        tessellator.addVertexWithUV(offsetX, offsetY + drawHeight, zLevel, 0, 1);
+        tessellator.addVertexWithUV(offsetX + 256, offsetY + drawHeight, zLevel, 1, 1);
+        tessellator.addVertexWithUV(offsetX + 256, offsetY, zLevel, 1, 0);
+        tessellator.addVertexWithUV(offsetX, offsetY, zLevel, 0, 0);
+        tessellator.draw();
+    }
 
-        float scaler = 1.00f;
-        glScalef(scaler,scaler,scaler);
-        drawTexturedModalRect(offsetX, offsetY, 0, 0, texture.width, texture.height);
+    /**
+     * Creates the screen's texture, the first time or when the
+     * picture changes size.  It is pixel art, so no mipmaps and
+     * no smoothing.
+     */
+    private void createTexture(int w, int h)
+    {
+        deleteTexture();
+        textureId = glGenTextures();
+        textureWidth = w;
+        textureHeight = h;
+        pixelBuffer = BufferUtils.createIntBuffer(w * h);
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, w, h, 0, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, (IntBuffer) null);
+    }
 
-        texture.deleteGlTexture();
-        texture = null;
+    /**
+     * Has the game write its picture straight into the upload
+     * buffer, then hands that to the texture.
+     */
+    private void uploadFrame(long version)
+    {
+        pixelBuffer.clear();
+        screen.renderPixels(pixelBuffer);
+        pixelBuffer.clear();
 
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, textureWidth, textureHeight, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, pixelBuffer);
+        textureVersion = version;
+    }
 
+    private void deleteTexture()
+    {
+        if(textureId != -1)
+        {
+            glDeleteTextures(textureId);
+            textureId = -1;
+        }
     }
 
     @Override
@@ -101,6 +167,8 @@ public class GuiPixelBoy extends GuiScreen {
     {
         game = new OS();
         game.initialize();
+        scheduler = new ArcadeScheduler(game);
+        screen = scheduler.getScreen();
     }
 
     @Override